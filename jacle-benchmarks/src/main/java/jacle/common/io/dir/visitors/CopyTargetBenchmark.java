@@ -0,0 +1,93 @@
+package jacle.common.io.dir.visitors;
+
+import jacle.common.io.FilesExt;
+import jacle.common.io.dir.copy.FileCopyStrategy;
+
+import java.io.IOException;
+import java.nio.file.CopyOption;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the cost of mapping source files to their copy targets, as
+ * {@link CopyDirVisitor} does for every file, against relativizing and
+ * resolving the full path of each file. Run with "-prof gc" to compare
+ * allocation rates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CopyTargetBenchmark {
+
+	private static final int FILE_COUNT = 1000;
+
+	/**
+	 * The depth of the directory holding the files
+	 */
+	@Param({ "2", "10" })
+	public int depth;
+
+	private Path root;
+	private Path fromPath;
+	private Path toPath;
+	private Path[] files;
+	private CopyDirVisitor visitor;
+	private Blackhole blackhole;
+
+	@Setup
+	public void setUp(Blackhole blackhole) throws IOException {
+		this.blackhole = blackhole;
+		root = Files.createTempDirectory("CopyTargetBenchmark");
+		fromPath = root.resolve("from");
+		toPath = root.resolve("to");
+		visitor = new CopyDirVisitor(fromPath, toPath, null, new FileCopyStrategy() {
+			@Override
+			public void copy(Path source, Path target, BasicFileAttributes sourceAttrs, CopyOption... options) {
+				CopyTargetBenchmark.this.blackhole.consume(target);
+			}
+		});
+		Files.createDirectory(toPath);
+		Path dir = fromPath;
+		visitor.preVisitDirectory(dir, null);
+		for (int i = 0; i < depth; i++) {
+			dir = dir.resolve("directory" + i);
+			visitor.preVisitDirectory(dir, null);
+		}
+		files = new Path[FILE_COUNT];
+		for (int i = 0; i < FILE_COUNT; i++) {
+			files[i] = dir.resolve("file" + i + ".dat");
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		FilesExt.deleteRecursively(root.toFile());
+	}
+
+	@Benchmark
+	public void relativizeAndResolve(Blackhole blackhole) {
+		for (Path file : files) {
+			blackhole.consume(toPath.resolve(fromPath.relativize(file)));
+		}
+	}
+
+	@Benchmark
+	public void copyDirVisitor() throws IOException {
+		for (Path file : files) {
+			visitor.visitFile(file, null);
+		}
+	}
+}
@@ -5,6 +5,8 @@ import jacle.commontest.JUnitFiles;
 
 import java.io.File;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import junit.framework.Assert;
 
@@ -192,4 +194,18 @@ public class FilesExtTest {
 			// Success
 		}
 	}
+
+	/**
+	 * Verifies that a symlink that does not resolve is treated like a missing
+	 * directory, and left in place
+	 */
+	@Test
+	public void testDeleteDirectoryContents_DanglingSymlink() throws Exception {
+		File link = files.getFile("link");
+		Path linkPath = link.toPath();
+		Files.createDirectories(linkPath.getParent());
+		Files.createSymbolicLink(linkPath, files.getFile("missing").toPath().toAbsolutePath());
+		FilesExt.deleteDirectoryContents(link);
+		Assert.assertTrue(Files.isSymbolicLink(linkPath));
+	}
 }
@@ -0,0 +1,179 @@
+package jacle.common.io.dir;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import jacle.common.io.dir.manifest.ManifestDiff;
+import jacle.common.io.dir.manifest.ManifestEntry;
+import jacle.common.io.dir.manifest.ManifestReader;
+import jacle.common.io.dir.manifest.ManifestWriter;
+import jacle.commontest.JUnitFiles;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class DirManifestTest {
+
+	private static final JUnitFiles files = new JUnitFiles();
+	private Path root;
+	private Path manifest;
+
+	@Before
+	public void setUp() throws Exception {
+		files.before();
+		root = files.getFile("root").toPath();
+		manifest = files.getFile("root.manifest").toPath();
+		Files.createDirectories(root.resolve("a/b"));
+		Files.createDirectories(root.resolve("a-c"));
+		Files.write(root.resolve("a/file1"), "one".getBytes());
+		Files.write(root.resolve("a/b/file2"), "two".getBytes());
+		Files.write(root.resolve("a-c/file3"), "three".getBytes());
+		Files.write(root.resolve("file4"), "four".getBytes());
+	}
+
+	/**
+	 * Verifies that entries are read back in depth-first order
+	 */
+	@Test
+	public void testWriteRead() throws Exception {
+		DirManifest.I.write(root, manifest, true);
+		List<String> paths = new ArrayList<>();
+		try (ManifestReader reader = DirManifest.I.read(manifest)) {
+			assertThat(reader.hasHashes(), is(true));
+			while (reader.hasNext()) {
+				ManifestEntry entry = reader.next();
+				paths.add(entry.getPath());
+				if (entry.getPath().equals("a-c/file3")) {
+					assertThat(entry.getSize(), is(5L));
+					assertThat(entry.getHash().length, is(32));
+				}
+			}
+		}
+		assertThat(paths, is(Arrays.asList("a", "a/b", "a/b/file2", "a/file1", "a-c", "a-c/file3", "file4")));
+	}
+
+	@Test
+	public void testDiffTree() throws Exception {
+		DirManifest.I.write(root, manifest, false);
+		Files.delete(root.resolve("a/b/file2"));
+		Files.write(root.resolve("a/file1"), "changed".getBytes());
+		Files.write(root.resolve("a/new"), "new".getBytes());
+
+		ManifestDiff diff = new ManifestDiff();
+		DirManifest.I.diffTree(manifest, root, diff);
+		assertThat(paths(diff.getRemoved()), is(Arrays.asList("a/b/file2")));
+		assertThat(paths(diff.getModified()), is(Arrays.asList("a/file1")));
+		assertThat(paths(diff.getAdded()), is(Arrays.asList("a/new")));
+	}
+
+	/**
+	 * Verifies that, with hashes, a file that was only touched is not
+	 * reported
+	 */
+	@Test
+	public void testDiffTree_HashesIgnoreTouch() throws Exception {
+		DirManifest.I.write(root, manifest, true);
+		Path file4 = root.resolve("file4");
+		Files.setLastModifiedTime(file4, FileTime.fromMillis(Files.getLastModifiedTime(file4).toMillis() - 60000));
+		ManifestDiff diff = new ManifestDiff();
+		DirManifest.I.diffTree(manifest, root, diff);
+		assertTrue(diff.isEmpty());
+
+		Files.write(file4, "FOUR".getBytes());
+		Files.setLastModifiedTime(file4, FileTime.fromMillis(Files.getLastModifiedTime(file4).toMillis() - 60000));
+		DirManifest.I.diffTree(manifest, root, diff);
+		assertThat(paths(diff.getModified()), is(Arrays.asList("file4")));
+	}
+
+	@Test
+	public void testDiffManifests() throws Exception {
+		DirManifest.I.write(root, manifest, false);
+		DirUtils.I.delete(root.resolve("a-c"));
+		Path newer = files.getFile("newer.manifest").toPath();
+		DirManifest.I.write(root, newer, false);
+
+		ManifestDiff diff = new ManifestDiff();
+		DirManifest.I.diffManifests(manifest, newer, diff);
+		assertThat(paths(diff.getRemoved()), is(Arrays.asList("a-c", "a-c/file3")));
+		assertThat(diff.getAdded().size(), is(0));
+		assertThat(diff.getModified().size(), is(0));
+	}
+
+	/**
+	 * Verifies that paths sharing the high surrogate of a non-BMP character
+	 * are stored intact
+	 */
+	@Test
+	public void testWriteRead_SurrogatePairs() throws Exception {
+		List<String> written = Arrays.asList("a/\uD83D\uDE00x", "a/\uD83D\uDE01y", "a/\uD83D\uDE01z");
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ManifestWriter writer = new ManifestWriter(bytes, false)) {
+			for (String path : written) {
+				writer.write(new ManifestEntry(path, false, 1, 0, null));
+			}
+		}
+		List<String> read = new ArrayList<>();
+		try (ManifestReader reader = new ManifestReader(new ByteArrayInputStream(bytes.toByteArray()))) {
+			while (reader.hasNext()) {
+				read.add(reader.next().getPath());
+			}
+		}
+		assertThat(read, is(written));
+	}
+
+	/**
+	 * Verifies that a symbolic link is recorded as a special entry without a
+	 * hash, and that an unchanged link is not reported by a hashed diff
+	 */
+	@Test
+	public void testWriteRead_Symlink() throws Exception {
+		Files.createSymbolicLink(root.resolve("a/link"), root.resolve("file4").toAbsolutePath());
+		DirManifest.I.write(root, manifest, true);
+		try (ManifestReader reader = DirManifest.I.read(manifest)) {
+			while (reader.hasNext()) {
+				ManifestEntry entry = reader.next();
+				assertThat(entry.isSpecial(), is(entry.getPath().equals("a/link")));
+				if (entry.isSpecial()) {
+					assertThat(entry.getHash() == null, is(true));
+				}
+			}
+		}
+		ManifestDiff diff = new ManifestDiff();
+		DirManifest.I.diffTree(manifest, root, diff);
+		assertThat(diff.getModified().isEmpty(), is(true));
+	}
+
+	/**
+	 * Verifies that the temporary file is removed when writing fails
+	 */
+	@Test
+	public void testWrite_FailureRemovesTemp() throws Exception {
+		Files.createDirectories(manifest.resolve("not-empty"));
+		try {
+			DirManifest.I.write(root, manifest, false);
+			fail("Expected IOException");
+		} catch (IOException e) {
+			// Success
+		}
+		assertThat(Files.exists(manifest.resolveSibling(manifest.getFileName() + ".tmp")), is(false));
+	}
+
+	private static List<String> paths(List<ManifestEntry> entries) {
+		List<String> paths = new ArrayList<>();
+		for (ManifestEntry entry : entries) {
+			paths.add(entry.getPath());
+		}
+		return paths;
+	}
+}
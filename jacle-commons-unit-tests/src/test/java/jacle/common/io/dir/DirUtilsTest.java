@@ -1,16 +1,33 @@
 package jacle.common.io.dir;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import jacle.common.io.FilesExt;
+import jacle.common.io.dir.copy.CopyJournal;
+import jacle.common.io.dir.copy.FileCopyStrategy;
+import jacle.common.thread.ExecutorsExt;
 import jacle.commontest.JUnitFiles;
 
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.CopyOption;
 import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -72,6 +89,25 @@ public class DirUtilsTest {
         assertAllSourceDirsExistIs(false);
     }
 
+    @Test
+    public void testDirUtilsCleanParallel() throws Exception {
+        DirUtils.I.clean(sourcePath, new DirOptions().setParallelism(4));
+        assertAllSourceFilesExistIs(false);
+        assertAllSourceDirsExistIs(true);
+    }
+
+    @Test
+    public void testDirUtilsDeleteParallel() throws Exception {
+        ExecutorService executor = ExecutorsExt.I.newFixedThreadPool(2, "DirUtilsTest");
+        try {
+            DirUtils.I.delete(sourcePath, new DirOptions().setExecutor(executor));
+        } finally {
+            executor.shutdown();
+        }
+        assertAllSourceFilesExistIs(false);
+        assertAllSourceDirsExistIs(false);
+    }
+
     @Test
     public void testDirUtilsCopy() throws Exception {
         assertAllSourceDirsExistIs(true);
@@ -87,6 +123,72 @@ public class DirUtilsTest {
         assertAllTargetFilesExistIs(true);
     }
 
+    @Test
+    public void testDirUtilsCopyParallel() throws Exception {
+        assertAllTargetDirsExistIs(false);
+        assertAllTargetFilesExistIs(false);
+
+        DirUtils.I.copy(sourcePath, targetPath, new DirOptions().setParallelism(4));
+
+        assertAllSourceDirsExistIs(true);
+        assertAllSourceFilesExistIs(true);
+        assertAllTargetDirsExistIs(true);
+        assertAllTargetFilesExistIs(true);
+        assertThat(Files.size(file2Target), is(Files.size(file2)));
+    }
+
+    @Test
+    public void testDirUtilsCopyJournal() throws Exception {
+        final Set<Path> firstRun = ConcurrentHashMap.newKeySet();
+        try {
+            DirUtils.I.copy(sourcePath, targetPath, new DirOptions().setJournal(true)
+                    .setCopyStrategy(new FileCopyStrategy() {
+                        @Override
+                        public void copy(Path source, Path target, BasicFileAttributes sourceAttrs,
+                                CopyOption... options) throws IOException {
+                            if (source.equals(file3)) {
+                                throw new IOException("mock failure");
+                            }
+                            FileCopyStrategy.DEFAULT.copy(source, target, sourceAttrs, options);
+                            firstRun.add(source);
+                        }
+                    }));
+            fail("Expected exception");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), is("mock failure"));
+        }
+        assertThat(Files.exists(targetPath.resolve(CopyJournal.FILE_NAME)), is(true));
+
+        // Resuming copies only what the first run did not
+        final Set<Path> secondRun = ConcurrentHashMap.newKeySet();
+        DirUtils.I.copy(sourcePath, targetPath, new DirOptions().setJournal(true)
+                .setCopyStrategy(new FileCopyStrategy() {
+                    @Override
+                    public void copy(Path source, Path target, BasicFileAttributes sourceAttrs,
+                            CopyOption... options) throws IOException {
+                        FileCopyStrategy.DEFAULT.copy(source, target, sourceAttrs, options);
+                        secondRun.add(source);
+                    }
+                }));
+        assertThat(secondRun.contains(file3), is(true));
+        for (Path file : firstRun) {
+            assertThat(secondRun.contains(file), is(false));
+        }
+        assertThat(firstRun.size() + secondRun.size(), is(filePaths.length));
+        assertAllTargetFilesExistIs(true);
+        assertThat(Files.exists(targetPath.resolve(CopyJournal.FILE_NAME)), is(false));
+    }
+
+    @Test
+    public void testCopyWithGlob() throws Exception {
+        DirUtils.I.copyWithGlob(sourcePath, targetPath, "foo/*/file[23].txt");
+
+        assertThat(Files.exists(file2Target), is(true));
+        assertThat(Files.exists(file3Target), is(true));
+        assertThat(Files.exists(file1Target), is(false));
+        assertThat(Files.exists(bazPathTarget), is(false));
+    }
+
     @Test
     public void testDirUtilsMove() throws Exception {
         assertAllSourceDirsExistIs(true);
@@ -102,6 +204,86 @@ public class DirUtilsTest {
         assertAllTargetFilesExistIs(true);
     }
 
+    @Test
+    public void testSync() throws Exception {
+        SyncResult result = DirUtils.I.sync(sourcePath, targetPath, new DirOptions());
+        assertThat(result.getCopied().size(), is(4));
+        assertAllTargetFilesExistIs(true);
+
+        result = DirUtils.I.sync(sourcePath, targetPath, new DirOptions());
+        assertThat(result.getCopied().size(), is(0));
+        assertThat(result.getSkippedCount(), is(4L));
+
+        FilesExt.append("more\n", file1.toFile(), StandardCharsets.UTF_8);
+        Path extraneous = bazPathTarget.resolve("extra.txt");
+        Files.write(extraneous, new byte[] { 1 });
+        result = DirUtils.I.sync(sourcePath, targetPath, new DirOptions().setDeleteExtraneous(true));
+        assertThat(result.getCopied().size(), is(1));
+        assertThat(Files.size(file1Target), is(Files.size(file1)));
+        assertThat(result.getSkippedCount(), is(3L));
+        assertThat(result.getDeleted().size(), is(1));
+        assertThat(Files.exists(extraneous), is(false));
+    }
+
+    @Test
+    public void testSyncCompareContents() throws Exception {
+        DirUtils.I.sync(sourcePath, targetPath, new DirOptions());
+        FileTime time = Files.getLastModifiedTime(file4Target);
+        Files.write(file4Target, new byte[(int) Files.size(file4)]);
+        Files.setLastModifiedTime(file4Target, time);
+
+        SyncResult result = DirUtils.I.sync(sourcePath, targetPath, new DirOptions());
+        assertThat(result.getCopied().size(), is(0));
+        result = DirUtils.I.sync(sourcePath, targetPath, new DirOptions().setCompareContents(true));
+        assertThat(result.getCopied().size(), is(1));
+        assertThat(Files.readAllBytes(file4Target), is(Files.readAllBytes(file4)));
+    }
+
+    @Test
+    public void testDirUtilsMoveIntoExisting() throws Exception {
+        Files.createDirectories(barPathTarget);
+        Path existing = barPathTarget.resolve("existing.txt");
+        Files.write(existing, new byte[] { 1 });
+
+        DirUtils.I.move(sourcePath, targetPath);
+
+        assertAllSourceDirsExistIs(false);
+        assertAllTargetDirsExistIs(true);
+        assertAllTargetFilesExistIs(true);
+        assertThat(Files.exists(existing), is(true));
+    }
+
+    @Test
+    public void testDirUtilsMoveOntoFile() throws Exception {
+        Files.createDirectories(barPathTarget.getParent());
+        Files.write(barPathTarget, new byte[] { 1 });
+
+        try {
+            DirUtils.I.move(sourcePath, targetPath);
+            fail("Expected FileAlreadyExistsException");
+        } catch (FileAlreadyExistsException e) {
+            assertThat(e.getFile(), is(barPathTarget.toString()));
+        }
+        assertThat(Files.isRegularFile(barPathTarget), is(true));
+        assertThat(Files.isDirectory(barPath), is(true));
+    }
+
+    @Test
+    public void testStats() throws Exception {
+        Files.write(file4, new byte[0]);
+        Files.write(file3, new byte[100000]);
+        DirStats stats = DirUtils.I.stats(sourcePath, 2, new DirOptions().setParallelism(2));
+        long expectedBytes = Files.size(file1) + Files.size(file2) + 100000;
+        assertThat(stats.getBytes(), is(expectedBytes));
+        assertThat(stats.getFileCount(), is(4L));
+        assertThat(stats.getDirectoryCount(), is(4L));
+        assertThat(stats.getSizeHistogram()[0], is(1L));
+        assertThat(stats.getSizeHistogram()[17], is(1L));
+        assertThat(stats.getLargestFiles().size(), is(2));
+        assertThat(stats.getLargestFiles().get(0).getKey(), is(file3));
+        assertThat(stats.getLargestFiles().get(0).getValue(), is(100000L));
+    }
+
     @Test
     public void testApply() throws Exception {
         final List<String> names = new ArrayList<>();
@@ -120,6 +302,50 @@ public class DirUtilsTest {
         assertThat(names.contains("file4.txt"), is(true));
     }
 
+    @Test
+    public void testApplyAsync() throws Exception {
+        final Set<String> names = ConcurrentHashMap.newKeySet();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        Function<Path, FileVisitResult> function = new Function<Path, FileVisitResult>() {
+            @Override
+            public FileVisitResult apply(Path path) {
+                int now = running.incrementAndGet();
+                maxRunning.set(Math.max(maxRunning.get(), now));
+                names.add(path.getFileName().toString());
+                running.decrementAndGet();
+                return FileVisitResult.CONTINUE;
+            }
+        };
+        ExecutorService executor = ExecutorsExt.I.newFixedThreadPool(4, "DirUtilsTest");
+        try {
+            DirUtils.I.applyAsync(sourcePath, function, executor, 2).get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(names.size(), is(4));
+        assertThat(maxRunning.get() <= 2, is(true));
+    }
+
+    @Test
+    public void testApplyAsync_Failure() throws Exception {
+        Function<Path, FileVisitResult> function = new Function<Path, FileVisitResult>() {
+            @Override
+            public FileVisitResult apply(Path path) {
+                throw new IllegalStateException("mock failure");
+            }
+        };
+        ExecutorService executor = ExecutorsExt.I.newFixedThreadPool(2, "DirUtilsTest");
+        try {
+            DirUtils.I.applyAsync(sourcePath, function, executor, 2).get(10, TimeUnit.SECONDS);
+            fail("Expected exception");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause() instanceof IllegalStateException, is(true));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     @Test
     public void testCopyPredicate() throws Exception {
         Predicate<Path> copyPredicate = new Predicate<Path>() {
@@ -149,6 +375,59 @@ public class DirUtilsTest {
         assertThat(expectedCount, is(fileCount));
     }
 
+    @Test
+    public void testGlobStream() throws Exception {
+        assertThat(DirUtils.I.globStream(sourcePath, "*.txt").count(), is(4L));
+        assertThat(DirUtils.I.globStream(sourcePath, "*.txt").parallel().count(), is(4L));
+        assertThat(DirUtils.I.globStream(sourcePath, "missing/*.txt").count(), is(0L));
+    }
+
+    @Test
+    public void testWalkStream() throws Exception {
+        long expected;
+        try (Stream<Path> walk = Files.walk(sourcePath)) {
+            expected = walk.count();
+        }
+        assertThat(DirUtils.I.walkStream(sourcePath, new DirOptions()).count(), is(expected));
+        Set<Path> parallel = DirUtils.I.walkStream(sourcePath, new DirOptions().setParallelism(4))
+                .collect(Collectors.toSet());
+        assertThat((long) parallel.size(), is(expected));
+        assertThat(parallel.contains(sourcePath), is(true));
+    }
+
+    @Test
+    public void testDirectoryStreamParallel() throws Exception {
+        List<Path> expected = new ArrayList<>();
+        try (DirectoryStream<Path> directoryStream = DirUtils.I.glob(sourcePath, "*.txt")) {
+            for (Path path : directoryStream) {
+                expected.add(path);
+            }
+        }
+        assertThat(expected.size(), is(4));
+
+        List<Path> ordered = new ArrayList<>();
+        try (DirectoryStream<Path> directoryStream = DirUtils.I.glob(sourcePath, "*.txt",
+                new DirOptions().setParallelism(4))) {
+            for (Path path : directoryStream) {
+                ordered.add(path);
+            }
+        }
+        assertThat(ordered, is(expected));
+
+        Set<Path> unordered = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = ExecutorsExt.I.newWorkStealingPool(4, "DirUtilsTest");
+        try (DirectoryStream<Path> directoryStream = DirUtils.I.glob(sourcePath, "*.txt",
+                new DirOptions().setExecutor(executor).setOrdered(false))) {
+            for (Path path : directoryStream) {
+                unordered.add(path);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(unordered.size(), is(4));
+        assertThat(unordered.containsAll(expected), is(true));
+    }
+
 
     //TODO add method to assert all files sizes are same
 
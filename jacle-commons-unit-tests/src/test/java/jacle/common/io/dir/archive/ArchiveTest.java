@@ -0,0 +1,144 @@
+package jacle.common.io.dir.archive;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import jacle.common.io.dir.DirOptions;
+import jacle.common.io.dir.DirUtils;
+import jacle.commontest.JUnitFiles;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ArchiveTest {
+
+	private static final JUnitFiles files = new JUnitFiles();
+	private static final int FILE_COUNT = 200;
+
+	private Path source;
+	private Path target;
+	private Path archive;
+	private byte[] largeData;
+	private String longName;
+
+	@Before
+	public void setUp() throws Exception {
+		files.before();
+		source = files.getFile("source").toPath();
+		target = files.getFile("target").toPath();
+		archive = files.getFile("archive").toPath();
+		Random random = new Random(1);
+		for (int i = 0; i < FILE_COUNT; i++) {
+			Path file = source.resolve("dir" + (i % 7)).resolve("file" + i + ".txt");
+			Files.createDirectories(file.getParent());
+			Files.write(file, ("content of file " + i).getBytes("UTF-8"));
+		}
+		largeData = new byte[ParallelArchiver.SMALL_FILE_SIZE * 2 + 17];
+		random.nextBytes(largeData);
+		Files.write(source.resolve("large.bin"), largeData);
+		StringBuilder name = new StringBuilder();
+		for (int i = 0; i < 20; i++) {
+			name.append("long-directory-name-").append(i).append('/');
+		}
+		longName = name + "file.txt";
+		Files.createDirectories(source.resolve(longName).getParent());
+		Files.write(source.resolve(longName), new byte[] { 1, 2, 3 });
+		Files.createDirectories(source.resolve("empty"));
+		Files.setPosixFilePermissions(source.resolve("dir1/file1.txt"), PosixFilePermissions.fromString("rwxr-x---"));
+		Files.setPosixFilePermissions(source.resolve("dir2"), PosixFilePermissions.fromString("rwx------"));
+	}
+
+	@Test
+	public void testZip() throws Exception {
+		try (OutputStream out = Files.newOutputStream(archive)) {
+			DirUtils.I.archive(source, out);
+		}
+		// Readable by the JDK
+		try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+			assertThat(zipFile.getEntry("dir3/file3.txt") != null, is(true));
+			assertThat(zipFile.getEntry("empty/").isDirectory(), is(true));
+		}
+		DirUtils.I.extract(archive, target);
+		assertSameTree();
+	}
+
+	@Test
+	public void testZipStream() throws Exception {
+		try (OutputStream out = Files.newOutputStream(archive)) {
+			DirUtils.I.archive(source, out, ArchiveFormat.ZIP, new DirOptions());
+		}
+		try (InputStream in = Files.newInputStream(archive)) {
+			DirUtils.I.extract(in, target);
+		}
+		assertSameTree();
+	}
+
+	@Test
+	public void testTar() throws Exception {
+		try (OutputStream out = Files.newOutputStream(archive)) {
+			DirUtils.I.archive(source, out, ArchiveFormat.TAR, new DirOptions().setParallelism(4));
+		}
+		assertThat(ArchiveFormat.detect(archive), is(ArchiveFormat.TAR));
+		DirUtils.I.extract(archive, target, new DirOptions().setParallelism(4));
+		assertSameTree();
+	}
+
+	/**
+	 * Verifies that entries escaping the target directory are rejected
+	 */
+	@Test
+	public void testExtract_OutsideTarget() throws Exception {
+		try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(archive))) {
+			out.putNextEntry(new ZipEntry("../evil.txt"));
+			out.write(1);
+			out.closeEntry();
+		}
+		try {
+			DirUtils.I.extract(archive, target);
+			fail("Expected exception");
+		} catch (IOException e) {
+			assertThat(e.getMessage().startsWith("Entry [../evil.txt] is outside"), is(true));
+		}
+		assertThat(Files.exists(target.resolveSibling("evil.txt")), is(false));
+	}
+
+	@Test
+	public void testExtract_TargetNotADirectory() throws Exception {
+		Files.createFile(target);
+		try (InputStream in = Files.newInputStream(source.resolve("large.bin"))) {
+			DirUtils.I.extract(in, target);
+			fail("Expected exception");
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(), is(target + " is not a directory"));
+		}
+	}
+
+	private void assertSameTree() throws Exception {
+		for (int i = 0; i < FILE_COUNT; i++) {
+			Path file = Paths.get("dir" + (i % 7), "file" + i + ".txt");
+			assertArrayEquals(Files.readAllBytes(source.resolve(file)), Files.readAllBytes(target.resolve(file)));
+		}
+		assertArrayEquals(largeData, Files.readAllBytes(target.resolve("large.bin")));
+		assertArrayEquals(new byte[] { 1, 2, 3 }, Files.readAllBytes(target.resolve(longName)));
+		assertThat(Files.isDirectory(target.resolve("empty")), is(true));
+		for (String path : new String[] { "dir0/file0.txt", "dir1/file1.txt", "dir2", "empty" }) {
+			assertThat(Files.getPosixFilePermissions(target.resolve(path)),
+					is(Files.getPosixFilePermissions(source.resolve(path))));
+		}
+		assertThat(Files.getLastModifiedTime(target.resolve("large.bin")).toMillis() / 2000,
+				is(Files.getLastModifiedTime(source.resolve("large.bin")).toMillis() / 2000));
+	}
+}
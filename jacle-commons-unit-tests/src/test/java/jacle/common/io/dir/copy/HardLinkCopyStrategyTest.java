@@ -0,0 +1,77 @@
+package jacle.common.io.dir.copy;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import jacle.common.io.dir.DirOptions;
+import jacle.common.io.dir.DirUtils;
+import jacle.commontest.JUnitFiles;
+
+import java.nio.file.CopyOption;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class HardLinkCopyStrategyTest {
+
+	private static final JUnitFiles files = new JUnitFiles();
+	private Path sourceDir;
+	private Path targetDir;
+
+	@Before
+	public void setUp() throws Exception {
+		files.before();
+		sourceDir = files.getFile("source").toPath();
+		targetDir = files.getFile("target").toPath();
+		Files.createDirectories(sourceDir.resolve("sub"));
+		Files.write(sourceDir.resolve("sub/file.txt"), "data".getBytes());
+	}
+
+	@Test
+	public void testDirUtilsCopy_LinksFiles() throws Exception {
+		DirUtils.I.copy(sourceDir, targetDir, new DirOptions().setCopyStrategy(new HardLinkCopyStrategy()));
+		assertThat(Files.isSameFile(sourceDir.resolve("sub/file.txt"), targetDir.resolve("sub/file.txt")), is(true));
+
+		// Copying again replaces the existing links
+		DirUtils.I.copy(sourceDir, targetDir, new DirOptions().setCopyStrategy(new HardLinkCopyStrategy()));
+		assertThat(Files.isSameFile(sourceDir.resolve("sub/file.txt"), targetDir.resolve("sub/file.txt")), is(true));
+	}
+
+	/**
+	 * Verifies that a symbolic link to a file (followed by the walk) becomes a
+	 * hard link to the file itself, not a copy of the symbolic link
+	 */
+	@Test
+	public void testDirUtilsCopy_SymlinkedFile() throws Exception {
+		Path outside = files.getFile("outside.txt").toPath();
+		Files.write(outside, "outside".getBytes());
+		// A relative link, which would point elsewhere from the target tree
+		Files.createSymbolicLink(sourceDir.resolve("sub/link.txt"), sourceDir.resolve("sub").relativize(outside));
+		DirUtils.I.copy(sourceDir, targetDir, new DirOptions().setCopyStrategy(new HardLinkCopyStrategy()));
+		Path copied = targetDir.resolve("sub/link.txt");
+		assertThat(Files.isSymbolicLink(copied), is(false));
+		assertThat(Files.isSameFile(outside, copied), is(true));
+	}
+
+	/**
+	 * Verifies that files which cannot be linked are handed to the fallback
+	 */
+	@Test
+	public void testCopy_FallsBack() throws Exception {
+		final AtomicInteger fallbackCount = new AtomicInteger();
+		FileCopyStrategy fallback = new FileCopyStrategy() {
+			@Override
+			public void copy(Path source, Path target, BasicFileAttributes sourceAttrs, CopyOption... options) {
+				fallbackCount.incrementAndGet();
+			}
+		};
+		Path source = sourceDir.resolve("sub/file.txt");
+		Path missingParent = targetDir.resolve("missing/file.txt");
+		new HardLinkCopyStrategy(fallback).copy(source, missingParent,
+				Files.readAttributes(source, BasicFileAttributes.class));
+		assertThat(fallbackCount.get(), is(1));
+	}
+}
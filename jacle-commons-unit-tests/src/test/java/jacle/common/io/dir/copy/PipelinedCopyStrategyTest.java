@@ -0,0 +1,151 @@
+package jacle.common.io.dir.copy;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import jacle.common.io.dir.DirOptions;
+import jacle.common.io.dir.DirUtils;
+import jacle.common.io.dir.metrics.DirListener;
+import jacle.commontest.JUnitFiles;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PipelinedCopyStrategyTest {
+
+	private static final JUnitFiles files = new JUnitFiles();
+	private Path source;
+	private Path target;
+	private byte[] data;
+
+	@Before
+	public void setUp() throws Exception {
+		files.before();
+		source = files.getFile("source.bin").toPath();
+		target = files.getFile("target.bin").toPath();
+		data = new byte[100000];
+		new Random(1).nextBytes(data);
+		Files.write(source, data);
+	}
+
+	/**
+	 * Verifies that a file spanning many buffers is copied intact
+	 */
+	@Test
+	public void testCopy_MultipleBuffers() throws Exception {
+		PipelinedCopyStrategy strategy = new PipelinedCopyStrategy(4096, 4096);
+		strategy.copy(source, target, attrs(source));
+		strategy.await();
+		assertArrayEquals(data, Files.readAllBytes(target));
+	}
+
+	@Test(expected = FileAlreadyExistsException.class)
+	public void testCopy_ExistingTarget() throws Exception {
+		Files.write(target, new byte[] { 1 });
+		new PipelinedCopyStrategy().copy(source, target, attrs(source));
+	}
+
+	@Test
+	public void testCopy_ReplaceExistingAndCopyAttributes() throws Exception {
+		Files.write(target, new byte[200000]);
+		FileTime time = FileTime.fromMillis(1000000000000L);
+		Files.setLastModifiedTime(source, time);
+		PipelinedCopyStrategy strategy = new PipelinedCopyStrategy();
+		strategy.copy(source, target, attrs(source),
+				StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+		strategy.await();
+		assertArrayEquals(data, Files.readAllBytes(target));
+		assertThat(Files.getLastModifiedTime(target), is(time));
+	}
+
+	/**
+	 * Verifies that more files than buffers are copied, with the copy
+	 * operation waiting for all of them
+	 */
+	@Test
+	public void testDirUtilsCopy() throws Exception {
+		Path sourceDir = files.getFile("source-dir").toPath();
+		Path targetDir = files.getFile("target-dir").toPath();
+		Files.createDirectories(sourceDir.resolve("sub"));
+		for (int i = 0; i < 20; i++) {
+			Files.write(sourceDir.resolve("sub/file" + i + ".bin"), data);
+		}
+		DirUtils.I.copy(sourceDir, targetDir,
+				new DirOptions().setCopyStrategy(new PipelinedCopyStrategy(8192, 4 * 8192)).setParallelism(2));
+		for (int i = 0; i < 20; i++) {
+			assertArrayEquals(data, Files.readAllBytes(targetDir.resolve("sub/file" + i + ".bin")));
+		}
+	}
+
+	/**
+	 * Verifies that the listener is told about each file once it has been
+	 * copied, not when the copy is started
+	 */
+	@Test
+	public void testDirUtilsCopy_ListenerOnCompletion() throws Exception {
+		final Path sourceDir = files.getFile("source-dir").toPath();
+		final Path targetDir = files.getFile("target-dir").toPath();
+		Files.createDirectories(sourceDir);
+		for (int i = 0; i < 20; i++) {
+			Files.write(sourceDir.resolve("file" + i + ".bin"), data);
+		}
+		final Map<Path, Long> reported = new ConcurrentHashMap<>();
+		DirListener listener = new DirListener() {
+			@Override
+			public void onFile(Path file, long bytes) {
+				try {
+					reported.put(file, Files.size(targetDir.resolve(sourceDir.relativize(file))));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+
+			@Override
+			public void onDirectory(Path dir) {
+			}
+
+			@Override
+			public void onError(Path path, IOException e) {
+			}
+		};
+		DirUtils.I.copy(sourceDir, targetDir, new DirOptions()
+				.setCopyStrategy(new PipelinedCopyStrategy(4096, 4 * 4096)).setListener(listener));
+		assertThat(reported.size(), is(20));
+		for (long size : reported.values()) {
+			assertThat(size, is((long) data.length));
+		}
+	}
+
+	/**
+	 * Verifies that, like Files.copy(), the target is created with the
+	 * permissions of the source, keeping the exec bits
+	 */
+	@Test
+	public void testCopy_KeepsExecBits() throws Exception {
+		Assume.assumeTrue(source.getFileSystem().supportedFileAttributeViews().contains("posix"));
+		Files.setPosixFilePermissions(source, PosixFilePermissions.fromString("rwxr-xr-x"));
+		PipelinedCopyStrategy strategy = new PipelinedCopyStrategy();
+		strategy.copy(source, target, attrs(source));
+		strategy.await();
+		assertThat(Files.getPosixFilePermissions(target).contains(PosixFilePermission.OWNER_EXECUTE), is(true));
+	}
+
+	private static BasicFileAttributes attrs(Path path) throws Exception {
+		return Files.readAttributes(path, BasicFileAttributes.class);
+	}
+}
@@ -0,0 +1,92 @@
+package jacle.common.io.dir.copy;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import jacle.common.io.dir.DirOptions;
+import jacle.common.io.dir.DirUtils;
+import jacle.commontest.JUnitFiles;
+
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Random;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TransferCopyStrategyTest {
+
+	private static final JUnitFiles files = new JUnitFiles();
+	private Path source;
+	private Path target;
+	private byte[] data;
+
+	@Before
+	public void setUp() throws Exception {
+		files.before();
+		source = files.getFile("source.bin").toPath();
+		target = files.getFile("target.bin").toPath();
+		data = new byte[100000];
+		new Random(1).nextBytes(data);
+		Files.write(source, data);
+	}
+
+	/**
+	 * Verifies that a file spanning many chunks is copied intact
+	 */
+	@Test
+	public void testCopy_MultipleChunks() throws Exception {
+		new TransferCopyStrategy(4096, true).copy(source, target, attrs(source));
+		assertArrayEquals(data, Files.readAllBytes(target));
+	}
+
+	@Test(expected = FileAlreadyExistsException.class)
+	public void testCopy_ExistingTarget() throws Exception {
+		Files.write(target, new byte[] { 1 });
+		new TransferCopyStrategy().copy(source, target, attrs(source));
+	}
+
+	@Test
+	public void testCopy_ReplaceExistingAndCopyAttributes() throws Exception {
+		Files.write(target, new byte[200000]);
+		FileTime time = FileTime.fromMillis(1000000000000L);
+		Files.setLastModifiedTime(source, time);
+		new TransferCopyStrategy().copy(source, target, attrs(source),
+				StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+		assertArrayEquals(data, Files.readAllBytes(target));
+		assertThat(Files.getLastModifiedTime(target), is(time));
+	}
+
+	@Test
+	public void testDirUtilsCopy() throws Exception {
+		Path sourceDir = files.getFile("source-dir").toPath();
+		Path targetDir = files.getFile("target-dir").toPath();
+		Files.createDirectories(sourceDir.resolve("sub"));
+		Files.write(sourceDir.resolve("sub/file.bin"), data);
+		DirUtils.I.copy(sourceDir, targetDir, new DirOptions().setCopyStrategy(new TransferCopyStrategy()));
+		assertArrayEquals(data, Files.readAllBytes(targetDir.resolve("sub/file.bin")));
+	}
+
+	/**
+	 * Verifies that, like Files.copy(), the target is created with the
+	 * permissions of the source, keeping the exec bits
+	 */
+	@Test
+	public void testCopy_KeepsExecBits() throws Exception {
+		Assume.assumeTrue(source.getFileSystem().supportedFileAttributeViews().contains("posix"));
+		Files.setPosixFilePermissions(source, PosixFilePermissions.fromString("rwxr-xr-x"));
+		new TransferCopyStrategy().copy(source, target, attrs(source));
+		assertThat(Files.getPosixFilePermissions(target).contains(PosixFilePermission.OWNER_EXECUTE), is(true));
+	}
+
+	private static BasicFileAttributes attrs(Path path) throws Exception {
+		return Files.readAttributes(path, BasicFileAttributes.class);
+	}
+}
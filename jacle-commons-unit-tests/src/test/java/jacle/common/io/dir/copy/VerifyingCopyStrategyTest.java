@@ -0,0 +1,98 @@
+package jacle.common.io.dir.copy;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import jacle.common.io.dir.DirUtils;
+import jacle.commontest.JUnitFiles;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class VerifyingCopyStrategyTest {
+
+	private static final JUnitFiles files = new JUnitFiles();
+	private Path source;
+	private Path target;
+	private byte[] data;
+
+	@Before
+	public void setUp() throws Exception {
+		files.before();
+		source = files.getFile("source.bin").toPath();
+		target = files.getFile("target.bin").toPath();
+		data = new byte[1000003];
+		new Random(1).nextBytes(data);
+		Files.write(source, data);
+	}
+
+	/**
+	 * Verifies the standard check value of CRC-32C
+	 */
+	@Test
+	public void testCrc32c() {
+		Crc32c crc = new Crc32c();
+		byte[] bytes = "123456789".getBytes(StandardCharsets.US_ASCII);
+		crc.update(bytes, 0, bytes.length);
+		assertThat(crc.getValue(), is(0xE3069283L));
+		crc.reset();
+		for (byte b : bytes) {
+			crc.update(b);
+		}
+		assertThat(crc.getValue(), is(0xE3069283L));
+	}
+
+	@Test
+	public void testCopy() throws Exception {
+		VerifyingCopyStrategy strategy = new VerifyingCopyStrategy();
+		strategy.copy(source, target, Files.readAttributes(source, BasicFileAttributes.class));
+		assertArrayEquals(data, Files.readAllBytes(target));
+		FileVerification verification = strategy.getReport().getFiles().get(0);
+		assertThat(verification.isMatch(), is(true));
+		assertThat(verification.getTargetSize(), is((long) data.length));
+		assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(data), verification.getSourceSha256());
+	}
+
+	@Test
+	public void testMismatch() {
+		FileVerification verification = new FileVerification(source, target,
+				1, 2, new byte[] { 3 }, 1, 2, new byte[] { 4 });
+		assertThat(verification.isMatch(), is(false));
+	}
+
+	@Test
+	public void testDirUtilsCopyAndVerify() throws Exception {
+		Path sourceDir = files.getFile("source-dir").toPath();
+		Path targetDir = files.getFile("target-dir").toPath();
+		for (int i = 0; i < 10; i++) {
+			Files.createDirectories(sourceDir.resolve("sub" + i));
+			Files.write(sourceDir.resolve("sub" + i + "/file.bin"), data);
+		}
+		VerificationReport report = DirUtils.I.copyAndVerify(sourceDir, targetDir);
+		assertThat(report.getFiles().size(), is(10));
+		assertThat(report.isVerified(), is(true));
+		assertArrayEquals(data, Files.readAllBytes(targetDir.resolve("sub9/file.bin")));
+	}
+
+	/**
+	 * Verifies that, like Files.copy(), the target is created with the
+	 * permissions of the source, keeping the exec bits
+	 */
+	@Test
+	public void testCopy_KeepsExecBits() throws Exception {
+		Assume.assumeTrue(source.getFileSystem().supportedFileAttributeViews().contains("posix"));
+		Files.setPosixFilePermissions(source, PosixFilePermissions.fromString("rwxr-xr-x"));
+		new VerifyingCopyStrategy().copy(source, target, Files.readAttributes(source, BasicFileAttributes.class));
+		assertThat(Files.getPosixFilePermissions(target).contains(PosixFilePermission.OWNER_EXECUTE), is(true));
+	}
+}
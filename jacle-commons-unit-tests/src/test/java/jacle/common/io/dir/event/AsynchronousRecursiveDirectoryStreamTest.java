@@ -4,16 +4,24 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 import jacle.common.io.dir.BaseFileTest;
 import jacle.common.io.dir.events.AsynchronousRecursiveDirectoryStream;
+import jacle.common.thread.ExecutorsExt;
 
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Test;
 
 public class AsynchronousRecursiveDirectoryStreamTest extends BaseFileTest {
+    private static final int MANY_FILE_COUNT = 3000;
+
     private int expectedJavaFileCount;
     private int expectedTotalFileCount;
 
@@ -50,6 +58,150 @@ public class AsynchronousRecursiveDirectoryStreamTest extends BaseFileTest {
         assertThat(fileCount, is(expectedJavaFileCount));
     }
 
+    @Test
+    public void testRecursiveDirectoryStreamRelativePattern() throws Exception {
+        int fileCount = 0;
+        try (DirectoryStream<Path> directoryStream = new AsynchronousRecursiveDirectoryStream(basePath, "dir1/*.java")) {
+            for (Path path : directoryStream) {
+                assertThat(path.getParent(), is(dir1Path));
+                fileCount++;
+            }
+        }
+        assertThat(fileCount, is(fakeJavaFiles.length));
+    }
+
+    /**
+     * Verifies that hasNext() does not consume entries, and that next() works
+     * without it
+     */
+    @Test
+    public void testIteratorSemantics() throws Exception {
+        int fileCount = 0;
+        try (DirectoryStream<Path> directoryStream = new AsynchronousRecursiveDirectoryStream(basePath, "*.java")) {
+            Iterator<Path> it = directoryStream.iterator();
+            assertThat(it.next().toString().endsWith(".java"), is(true));
+            fileCount++;
+            while (it.hasNext()) {
+                assertThat(it.hasNext(), is(true));
+                it.next();
+                fileCount++;
+            }
+            assertThat(it.hasNext(), is(false));
+        }
+        assertThat(fileCount, is(expectedJavaFileCount));
+    }
+
+    /**
+     * Verifies that a walk with more matches than the stream buffers is
+     * delivered completely, and that closing the stream early stops it
+     */
+    @Test
+    public void testManyFiles() throws Exception {
+        Path manyPath = basePath.resolve("many");
+        Files.createDirectory(manyPath);
+        for (int i = 0; i < MANY_FILE_COUNT; i++) {
+            Files.createFile(manyPath.resolve("file" + i + ".dat"));
+        }
+        int fileCount = 0;
+        try (DirectoryStream<Path> directoryStream = new AsynchronousRecursiveDirectoryStream(basePath, "many/*.dat")) {
+            for (Path path : directoryStream) {
+                fileCount++;
+            }
+        }
+        assertThat(fileCount, is(MANY_FILE_COUNT));
+
+        try (DirectoryStream<Path> directoryStream = new AsynchronousRecursiveDirectoryStream(basePath, "many/*.dat")) {
+            Iterator<Path> it = directoryStream.iterator();
+            assertThat(it.hasNext(), is(true));
+            it.next();
+        }
+    }
+
+    /**
+     * Verifies that matches are delivered in full chunks (but the last), and
+     * that a partial chunk is delivered once the latency limit passes
+     */
+    @Test
+    public void testBatchIterator() throws Exception {
+        Path manyPath = basePath.resolve("many");
+        Files.createDirectory(manyPath);
+        for (int i = 0; i < MANY_FILE_COUNT; i++) {
+            Files.createFile(manyPath.resolve("file" + i + ".dat"));
+        }
+        int fileCount = 0;
+        try (AsynchronousRecursiveDirectoryStream directoryStream =
+                new AsynchronousRecursiveDirectoryStream(basePath, "many/*.dat")) {
+            Iterator<List<Path>> it = directoryStream.batchIterator(100, 0, TimeUnit.MILLISECONDS);
+            while (it.hasNext()) {
+                List<Path> batch = it.next();
+                assertThat(batch.size(), is(Math.min(100, MANY_FILE_COUNT - fileCount)));
+                fileCount += batch.size();
+            }
+        }
+        assertThat(fileCount, is(MANY_FILE_COUNT));
+
+        // Too few matches to fill a chunk, delivered by latency (or the end)
+        fileCount = 0;
+        try (AsynchronousRecursiveDirectoryStream directoryStream =
+                new AsynchronousRecursiveDirectoryStream(basePath, "*.java")) {
+            Iterator<List<Path>> it = directoryStream.batchIterator(10000, 5, TimeUnit.MILLISECONDS);
+            while (it.hasNext()) {
+                fileCount += it.next().size();
+            }
+        }
+        assertThat(fileCount, is(expectedJavaFileCount));
+    }
+
+    /**
+     * Verifies that small chunks with a short latency limit, where the walk
+     * often fills the queue while the consumer takes a partial chunk, neither
+     * deadlock nor lose or reorder matches
+     */
+    @Test(timeout = 60000)
+    public void testBatchIterator_SmallChunksShortLatency() throws Exception {
+        Path manyPath = basePath.resolve("many");
+        Files.createDirectory(manyPath);
+        for (int i = 0; i < MANY_FILE_COUNT; i++) {
+            Files.createFile(manyPath.resolve("file" + i + ".dat"));
+        }
+        for (int trial = 0; trial < 20; trial++) {
+            Set<Path> seen = new HashSet<>();
+            try (AsynchronousRecursiveDirectoryStream directoryStream =
+                    new AsynchronousRecursiveDirectoryStream(basePath, "many/*.dat")) {
+                Iterator<List<Path>> it = directoryStream.batchIterator(4, 100, TimeUnit.MICROSECONDS);
+                while (it.hasNext()) {
+                    for (Path path : it.next()) {
+                        assertThat(seen.add(path), is(true));
+                    }
+                }
+            }
+            assertThat(seen.size(), is(MANY_FILE_COUNT));
+        }
+    }
+
+    /**
+     * Verifies that walks run on the provided executor, reusing its threads
+     */
+    @Test
+    public void testExecutor() throws Exception {
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) ExecutorsExt.I.newCachedDaemonThreadPool("StreamTest");
+        try {
+            for (int i = 0; i < 3; i++) {
+                int fileCount = 0;
+                try (DirectoryStream<Path> directoryStream = new AsynchronousRecursiveDirectoryStream(basePath, "*.java")
+                        .setExecutor(executor)) {
+                    for (Path path : directoryStream) {
+                        fileCount++;
+                    }
+                }
+                assertThat(fileCount, is(expectedJavaFileCount));
+            }
+            assertThat(executor.getTaskCount(), is(3L));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     @Test (expected = IllegalStateException.class)
     public void testErrorWhenIteratorCalledAfterClose() throws Exception {
             DirectoryStream<Path> directoryStream = new AsynchronousRecursiveDirectoryStream(basePath,"*");
@@ -65,6 +217,14 @@ public class AsynchronousRecursiveDirectoryStreamTest extends BaseFileTest {
         directoryStream.iterator();
     }
 
+    @Test (expected = IllegalStateException.class)
+    public void testErrorWhenIteratedTwiceWhileOpen() throws Exception {
+        try (AsynchronousRecursiveDirectoryStream directoryStream = new AsynchronousRecursiveDirectoryStream(basePath,"*")) {
+            directoryStream.iterator();
+            directoryStream.batchIterator(10, 0, TimeUnit.MILLISECONDS);
+        }
+    }
+
     @Test(expected = UnsupportedOperationException.class)
     public void testErrorOnRemove() throws Exception{
         try(DirectoryStream<Path> directoryStream = new AsynchronousRecursiveDirectoryStream(basePath,"*")){
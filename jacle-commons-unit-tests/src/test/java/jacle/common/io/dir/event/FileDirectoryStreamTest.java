@@ -7,6 +7,8 @@ import jacle.common.io.dir.events.FileDirectoryStream;
 
 import java.io.File;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -53,4 +55,35 @@ public class FileDirectoryStreamTest extends BaseFileTest {
         directoryStream.close();
         assertThat(fileCount, is(expectedJavaFileCount));
     }
+
+    @Test (expected = IllegalStateException.class)
+    public void testErrorWhenGlobCalledTwice() throws Exception {
+        FileDirectoryStream directoryStream = new FileDirectoryStream(".*", basePath.toFile());
+        try {
+            directoryStream.glob();
+            directoryStream.glob();
+        } finally {
+            directoryStream.close();
+        }
+    }
+
+    @Test
+    public void testGlobBatches() throws Exception {
+        File baseDir = basePath.toFile();
+        FileDirectoryStream directoryStream = new FileDirectoryStream(".*\\.java$", baseDir);
+        Iterator<List<File>> batchIterator = directoryStream.globBatches(2, 10, TimeUnit.MILLISECONDS);
+        int fileCount = 0;
+        while (batchIterator.hasNext()) {
+            List<File> batch = batchIterator.next();
+            assertThat(batch.isEmpty(), is(false));
+            assertThat(batch.size() <= 2, is(true));
+            for (File f : batch) {
+                if (f.isFile()) {
+                    fileCount++;
+                }
+            }
+        }
+        directoryStream.close();
+        assertThat(fileCount, is(expectedJavaFileCount));
+    }
 }
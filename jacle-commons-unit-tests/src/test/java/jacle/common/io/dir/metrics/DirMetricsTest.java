@@ -0,0 +1,77 @@
+package jacle.common.io.dir.metrics;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import jacle.common.io.dir.DirOptions;
+import jacle.common.io.dir.DirUtils;
+import jacle.common.time.MockTimeProvider;
+import jacle.commontest.JUnitFiles;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class DirMetricsTest {
+
+	private static final JUnitFiles files = new JUnitFiles();
+	private MockTimeProvider time;
+	private DirMetrics metrics;
+
+	@Before
+	public void setUp() throws Exception {
+		files.before();
+		time = new MockTimeProvider(new Date(1000000000000L));
+		metrics = new DirMetrics(time);
+	}
+
+	@Test
+	public void testTotals() throws Exception {
+		metrics.onFile(Paths.get("a"), 10);
+		metrics.onFile(Paths.get("b"), 20);
+		metrics.onDirectory(Paths.get("c"));
+		metrics.onError(Paths.get("d"), new IOException());
+		time.add(1500, TimeUnit.MILLISECONDS);
+		assertThat(metrics.getFiles(), is(2L));
+		assertThat(metrics.getBytes(), is(30L));
+		assertThat(metrics.getDirectories(), is(1L));
+		assertThat(metrics.getErrors(), is(1L));
+		assertThat(metrics.getElapsedMillis(), is(1500L));
+	}
+
+	/**
+	 * Verifies that the rates only cover the trailing window
+	 */
+	@Test
+	public void testRates() throws Exception {
+		metrics.onFile(Paths.get("old"), 1000000);
+		time.add(DirMetrics.WINDOW_SECONDS + 5, TimeUnit.SECONDS);
+		for (int i = 0; i < 4; i++) {
+			metrics.onFile(Paths.get("new"), 100);
+			time.add(1, TimeUnit.SECONDS);
+		}
+		assertEquals(40.0, metrics.getBytesPerSecond(), 0.001);
+		assertEquals(0.4, metrics.getFilesPerSecond(), 0.001);
+	}
+
+	@Test
+	public void testDirUtilsCopy() throws Exception {
+		Path source = files.getFile("source").toPath();
+		Files.createDirectories(source.resolve("a/b"));
+		Files.write(source.resolve("a/file1"), new byte[10]);
+		Files.write(source.resolve("a/b/file2"), new byte[20]);
+		DirMetrics copyMetrics = new DirMetrics();
+		DirUtils.I.copy(source, files.getFile("target").toPath(),
+				new DirOptions().setParallelism(2).setListener(copyMetrics));
+		assertThat(copyMetrics.getFiles(), is(2L));
+		assertThat(copyMetrics.getBytes(), is(30L));
+		assertThat(copyMetrics.getDirectories(), is(3L));
+		assertThat(copyMetrics.getErrors(), is(0L));
+	}
+}
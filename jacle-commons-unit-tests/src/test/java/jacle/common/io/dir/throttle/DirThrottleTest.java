@@ -0,0 +1,96 @@
+package jacle.common.io.dir.throttle;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import jacle.common.io.dir.DirOptions;
+import jacle.common.io.dir.DirUtils;
+import jacle.common.thread.SleepProvider;
+import jacle.common.time.MockTimeProvider;
+import jacle.commontest.JUnitFiles;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class DirThrottleTest {
+
+	private static final JUnitFiles files = new JUnitFiles();
+	private MockTimeProvider time;
+	private long slept;
+	private SleepProvider sleeper;
+
+	@Before
+	public void setUp() throws Exception {
+		files.before();
+		time = new MockTimeProvider(new Date(1000000000000L));
+		slept = 0;
+		// Sleeping advances the mock time
+		sleeper = new SleepProvider() {
+			@Override
+			public void sleep(long millis) {
+				slept += millis;
+				time.addMillis(millis);
+			}
+		};
+	}
+
+	/**
+	 * Verifies that a one second burst goes through, and the rest is held to
+	 * the rate
+	 */
+	@Test
+	public void testBytes() throws Exception {
+		DirThrottle throttle = new DirThrottle(1000, 0, time, sleeper);
+		throttle.acquire(1000, 1);
+		assertThat(slept, is(0L));
+		throttle.acquire(500, 1);
+		assertThat(slept, is(0L));
+		throttle.acquire(500, 1);
+		assertThat(slept, is(500L));
+		throttle.acquire(1, 1);
+		assertThat(slept, is(1000L));
+	}
+
+	@Test
+	public void testOps() throws Exception {
+		DirThrottle throttle = new DirThrottle(0, 10, time, sleeper);
+		for (int i = 0; i < 30; i++) {
+			throttle.acquire(1000000, 1);
+		}
+		// 10 from the initial burst, then 100ms for each
+		assertThat(slept, is(1900L));
+	}
+
+	@Test
+	public void testChangeRate() throws Exception {
+		DirThrottle throttle = new DirThrottle(100, 0, time, sleeper);
+		throttle.acquire(100, 0);
+		throttle.setBytesPerSecond(0);
+		throttle.acquire(1000000, 0);
+		assertThat(slept, is(0L));
+		throttle.setBytesPerSecond(1000);
+		assertThat(throttle.getBytesPerSecond(), is(1000L));
+		throttle.acquire(1000, 0);
+		throttle.acquire(1000, 0);
+		assertThat(slept, is(0L));
+		throttle.acquire(1, 0);
+		assertThat(slept, is(1000L));
+	}
+
+	@Test
+	public void testDirUtilsCopy() throws Exception {
+		Path source = files.getFile("source").toPath();
+		Path target = files.getFile("target").toPath();
+		Files.createDirectories(source.resolve("sub"));
+		for (int i = 0; i < 3; i++) {
+			Files.write(source.resolve("sub/file" + i), new byte[1000]);
+		}
+		DirUtils.I.copy(source, target, new DirOptions().setThrottle(new DirThrottle(1000, 0, time, sleeper)));
+		// The first file comes from the initial burst, the third waits for the second
+		assertThat(slept, is(1000L));
+		assertThat(Files.size(target.resolve("sub/file2")), is(1000L));
+	}
+}
@@ -0,0 +1,149 @@
+package jacle.common.io.dir.tombstone;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import jacle.common.io.dir.DirOptions;
+import jacle.common.io.dir.DirUtils;
+import jacle.commontest.JUnitFiles;
+
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TombstoneReaperTest {
+
+	private static final JUnitFiles files = new JUnitFiles();
+	private TombstoneReaper reaper;
+	private Path dir;
+
+	@Before
+	public void setUp() throws Exception {
+		files.before();
+		reaper = new TombstoneReaper();
+		dir = files.getFile("dir").toPath();
+		Files.createDirectories(dir.resolve("sub"));
+		Files.write(dir.resolve("sub/file.txt"), new byte[100]);
+	}
+
+	@After
+	public void tearDown() {
+		reaper.shutdown();
+	}
+
+	/**
+	 * Verifies that the tombstone directory is created next to the buried
+	 * path, and removed once the tombstone is deleted
+	 */
+	@Test
+	public void testBury() throws Exception {
+		Future<?> reaped = reaper.bury(dir);
+		assertThat(Files.exists(dir), is(false));
+		reaped.get(10, TimeUnit.SECONDS);
+		assertThat(Files.exists(dir.resolveSibling(TombstoneReaper.TOMBSTONE_DIR_NAME)), is(false));
+	}
+
+	@Test
+	public void testDirUtilsDelete() throws Exception {
+		DirUtils.I.delete(dir, new DirOptions().setReaper(reaper));
+		assertThat(Files.exists(dir), is(false));
+		// Let the background delete finish before the next test cleans up
+		Path tombstoneDir = dir.resolveSibling(TombstoneReaper.TOMBSTONE_DIR_NAME);
+		for (int i = 0; i < 1000 && Files.exists(tombstoneDir); i++) {
+			Thread.sleep(10);
+		}
+		assertThat(Files.exists(tombstoneDir), is(false));
+	}
+
+	/**
+	 * Verifies that a path that cannot be renamed into the tombstone directory
+	 * is deleted in place
+	 */
+	@Test
+	public void testUnusableTombstoneDir() throws Exception {
+		Path notADir = Files.createFile(files.getFile("notADir").toPath());
+		TombstoneReaper unusable = new TombstoneReaper(notADir);
+		try {
+			unusable.bury(dir).get(10, TimeUnit.SECONDS);
+			assertThat(Files.exists(dir), is(false));
+		} finally {
+			unusable.shutdown();
+		}
+	}
+
+	/**
+	 * Verifies that the tombstones left by a reaper that is gone are deleted
+	 * by the next one to use the tombstone directory, but those of a live
+	 * reaper are not
+	 */
+	@Test
+	public void testRecover() throws Exception {
+		Path base = files.getFile("").toPath();
+		Path tombstoneDir = Files.createDirectories(base.resolve(TombstoneReaper.TOMBSTONE_DIR_NAME));
+		Path dead = createGraveyard(tombstoneDir, "reaper-dead");
+		Path live = createGraveyard(tombstoneDir, "reaper-live");
+		try (FileChannel channel = FileChannel.open(tombstoneDir.resolve("reaper-live.lock"),
+				StandardOpenOption.WRITE)) {
+			channel.lock();
+			reaper.recover(base);
+			// The reaper deletes in order, so the recovery is done once this is
+			reaper.bury(Files.createDirectories(files.getFile("other").toPath())).get(10, TimeUnit.SECONDS);
+			assertThat(Files.exists(dead), is(false));
+			assertThat(Files.exists(tombstoneDir.resolve("reaper-dead.lock")), is(false));
+			assertThat(Files.exists(live), is(true));
+		}
+	}
+
+	/**
+	 * Verifies that the recovery a reaper runs when it opens its graveyard
+	 * leaves its own lock file alone: closing a second channel on it would
+	 * release the process's lock, letting another process recover the live
+	 * graveyard. Checked in /proc/locks (Linux only), while the tombstone is
+	 * being deleted.
+	 */
+	@Test
+	public void testRecoverKeepsOwnLock() throws Exception {
+		Path procLocks = Paths.get("/proc/locks");
+		Assume.assumeTrue(Files.isReadable(procLocks));
+		for (int i = 0; i < 20; i++) {
+			Path sub = Files.createDirectories(dir.resolve("sub" + i));
+			for (int j = 0; j < 200; j++) {
+				Files.write(sub.resolve("file" + j + ".txt"), new byte[10]);
+			}
+		}
+		Path tombstoneDir = dir.resolveSibling(TombstoneReaper.TOMBSTONE_DIR_NAME);
+		Future<?> reaped = reaper.bury(dir);
+		Path lockFile;
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(tombstoneDir, "reaper-*.lock")) {
+			lockFile = stream.iterator().next();
+		}
+		Path graveyard = tombstoneDir.resolve(lockFile.getFileName().toString().replace(".lock", ""));
+		String inode = ":" + Files.getAttribute(lockFile, "unix:ino") + " ";
+		while (!reaped.isDone()) {
+			boolean locked = false;
+			for (String line : Files.readAllLines(procLocks, StandardCharsets.US_ASCII)) {
+				locked |= line.contains(inode);
+			}
+			// The graveyard is removed before the lock is released
+			assertThat(locked || !Files.exists(graveyard), is(true));
+		}
+		reaped.get(10, TimeUnit.SECONDS);
+	}
+
+	private static Path createGraveyard(Path tombstoneDir, String name) throws Exception {
+		Files.createFile(tombstoneDir.resolve(name + ".lock"));
+		Path tombstone = Files.createDirectories(tombstoneDir.resolve(name).resolve("1-1-dir"));
+		Files.write(tombstone.resolve("file.txt"), new byte[100]);
+		return tombstoneDir.resolve(name);
+	}
+}
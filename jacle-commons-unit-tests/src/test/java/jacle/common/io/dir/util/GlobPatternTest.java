@@ -0,0 +1,58 @@
+package jacle.common.io.dir.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.nio.file.Paths;
+
+import org.junit.Test;
+
+public class GlobPatternTest {
+
+	@Test
+	public void testPrefixAndDepth() {
+		GlobPattern glob = GlobPattern.compile("src/main/**/*.java");
+		assertThat(glob.getLiteralPrefix(), is(Paths.get("src", "main")));
+		assertThat(glob.getDepth(), is(-1));
+
+		glob = GlobPattern.compile("src/*/Foo.java");
+		assertThat(glob.getLiteralPrefix(), is(Paths.get("src")));
+		assertThat(glob.getDepth(), is(3));
+
+		glob = GlobPattern.compile("*.java");
+		assertThat(glob.getLiteralPrefix(), is(Paths.get("")));
+		assertThat(glob.getDepth(), is(-1));
+	}
+
+	@Test
+	public void testCanMatchBelow() {
+		GlobPattern glob = GlobPattern.compile("src/m*/**/*.java");
+		assertThat(glob.canMatchBelow(Paths.get("")), is(true));
+		assertThat(glob.canMatchBelow(Paths.get("src")), is(true));
+		assertThat(glob.canMatchBelow(Paths.get("src", "main")), is(true));
+		assertThat(glob.canMatchBelow(Paths.get("src", "main", "java", "a")), is(true));
+		assertThat(glob.canMatchBelow(Paths.get("src", "test")), is(false));
+		assertThat(glob.canMatchBelow(Paths.get("target")), is(false));
+
+		glob = GlobPattern.compile("src/*.java");
+		assertThat(glob.canMatchBelow(Paths.get("src")), is(true));
+		assertThat(glob.canMatchBelow(Paths.get("src", "main")), is(false));
+
+		// Separators within groups cannot be split, so nothing is pruned
+		glob = GlobPattern.compile("{a/b,c}/*.java");
+		assertThat(glob.canMatchBelow(Paths.get("x", "y")), is(true));
+		assertThat(glob.matches(Paths.get("a", "b", "X.java")), is(true));
+	}
+
+	@Test
+	public void testMatches() {
+		GlobPattern glob = GlobPattern.compile("src/main/**/*.java");
+		assertThat(glob.matches(Paths.get("src", "main", "java", "Foo.java")), is(true));
+		assertThat(glob.matches(Paths.get("src", "test", "java", "Foo.java")), is(false));
+
+		// Without a separator, only the file name is matched
+		glob = GlobPattern.compile("*.java");
+		assertThat(glob.matches(Paths.get("src", "main", "Foo.java")), is(true));
+		assertThat(glob.matches(Paths.get("src", "main", "Foo.txt")), is(false));
+	}
+}
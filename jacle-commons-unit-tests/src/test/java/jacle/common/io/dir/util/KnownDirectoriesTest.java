@@ -0,0 +1,45 @@
+package jacle.common.io.dir.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import jacle.commontest.JUnitFiles;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class KnownDirectoriesTest {
+
+	private final JUnitFiles files = new JUnitFiles();
+
+	@Before
+	public void setUp() throws Exception {
+		files.before();
+	}
+
+	/**
+	 * Verifies that missing parents are created, and that existing and
+	 * already known directories are accepted
+	 */
+	@Test
+	public void testCreate() throws Exception {
+		Path root = files.getFile("root").toPath();
+		Path dir = root.resolve("a").resolve("b").resolve("c");
+		KnownDirectories known = new KnownDirectories();
+
+		known.create(dir);
+		assertThat(Files.isDirectory(dir), is(true));
+
+		// Known
+		known.create(dir);
+		// Exists, but not known
+		new KnownDirectories().create(dir.getParent());
+
+		Files.delete(dir);
+		// Known, so not recreated
+		known.create(dir);
+		assertThat(Files.exists(dir), is(false));
+	}
+}
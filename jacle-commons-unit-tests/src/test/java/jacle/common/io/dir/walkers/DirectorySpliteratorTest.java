@@ -0,0 +1,81 @@
+package jacle.common.io.dir.walkers;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertThat;
+import jacle.common.io.FilesExt;
+import jacle.commontest.JUnitFiles;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class DirectorySpliteratorTest {
+
+	private final JUnitFiles files = new JUnitFiles();
+	private Path root;
+
+	@Before
+	public void setUp() throws Exception {
+		files.before();
+		root = files.getFile("root").toPath();
+		for (int d = 0; d < 8; d++) {
+			Path dir = root.resolve("dir" + d).resolve("sub");
+			Files.createDirectories(dir);
+			for (int f = 0; f < DirectorySpliterator.MIN_SPLIT_ENTRIES + 10; f++) {
+				FilesExt.write("x", dir.resolve("file" + f).toFile(), StandardCharsets.UTF_8);
+			}
+		}
+	}
+
+	/**
+	 * Verifies that a parallel stream reports the same entries as
+	 * {@link Files#walk}
+	 */
+	@Test
+	public void testParallelStream() throws Exception {
+		Set<Path> expected;
+		try (Stream<Path> walk = Files.walk(root)) {
+			expected = walk.collect(Collectors.toSet());
+		}
+		expected.remove(root);
+		List<Path> actual = StreamSupport.stream(new DirectorySpliterator(root), true).collect(Collectors.toList());
+		assertThat(actual.size(), is(expected.size()));
+		assertThat(new HashSet<>(actual), is(expected));
+	}
+
+	/**
+	 * Verifies splitting at sub-directory boundaries, and of large directories
+	 */
+	@Test
+	public void testTrySplit() throws Exception {
+		Spliterator<Path> first = new DirectorySpliterator(root);
+		Spliterator<Path> second = first.trySplit();
+		assertThat(second, notNullValue());
+
+		final Set<Path> entries = new HashSet<>();
+		Consumer<Path> collect = new Consumer<Path>() {
+			@Override
+			public void accept(Path entry) {
+				entries.add(entry);
+			}
+		};
+		Spliterator<Path> sub = new DirectorySpliterator(root.resolve("dir0").resolve("sub"));
+		Spliterator<Path> subSplit = sub.trySplit();
+		assertThat(subSplit, notNullValue());
+		sub.forEachRemaining(collect);
+		subSplit.forEachRemaining(collect);
+		assertThat(entries.size(), is(DirectorySpliterator.MIN_SPLIT_ENTRIES + 10));
+	}
+}
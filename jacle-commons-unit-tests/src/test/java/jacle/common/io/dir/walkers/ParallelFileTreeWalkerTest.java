@@ -0,0 +1,142 @@
+package jacle.common.io.dir.walkers;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import jacle.common.io.FilesExt;
+import jacle.common.io.dir.DirWalkException;
+import jacle.common.thread.ExecutorsExt;
+import jacle.commontest.JUnitFiles;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelFileTreeWalkerTest {
+
+	private static final JUnitFiles files = new JUnitFiles();
+	private static final int DIR_COUNT = 5;
+	private static final int FILES_PER_DIR = ParallelFileTreeWalker.BATCH_SIZE + 10;
+
+	private ExecutorService executor;
+	private Path root;
+
+	@Before
+	public void setUp() throws Exception {
+		files.before();
+		executor = ExecutorsExt.I.newWorkStealingPool(4, "ParallelFileTreeWalkerTest");
+		root = files.getFile("root").toPath();
+		for (int d = 0; d < DIR_COUNT; d++) {
+			Path dir = root.resolve("dir" + d).resolve("sub");
+			Files.createDirectories(dir);
+			for (int f = 0; f < FILES_PER_DIR; f++) {
+				FilesExt.write("x", dir.resolve("file" + f).toFile(), StandardCharsets.UTF_8);
+			}
+		}
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Verifies that every file is visited, and that directories are
+	 * post-visited only after all of their entries
+	 */
+	@Test
+	public void testWalk_VisitsAllInOrder() throws Exception {
+		final Set<Path> visited = ConcurrentHashMap.newKeySet();
+		final Set<Path> postVisited = ConcurrentHashMap.newKeySet();
+		new ParallelFileTreeWalker(executor, false).walk(root, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+				assertTrue(dir.equals(root) || visited.contains(dir.getParent()));
+				visited.add(dir);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				assertThat(postVisited.contains(file.getParent()), is(false));
+				visited.add(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+				try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+					for (Path entry : stream) {
+						assertTrue(visited.contains(entry));
+						if (Files.isDirectory(entry)) {
+							assertTrue(postVisited.contains(entry));
+						}
+					}
+				}
+				postVisited.add(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		assertThat(visited.size(), is(1 + DIR_COUNT * (2 + FILES_PER_DIR)));
+		assertThat(postVisited.size(), is(1 + DIR_COUNT * 2));
+	}
+
+	/**
+	 * Verifies that visitor failures do not stop the walk, and are reported
+	 * together at the end
+	 */
+	@Test
+	public void testWalk_CollectsFailures() throws Exception {
+		final Set<Path> visited = ConcurrentHashMap.newKeySet();
+		try {
+			new ParallelFileTreeWalker(executor, false).walk(root, new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+					visited.add(file);
+					if (file.getFileName().toString().equals("file0")) {
+						throw new IOException("mock failure");
+					}
+					return FileVisitResult.CONTINUE;
+				}
+			});
+			fail("Expected exception");
+		} catch (DirWalkException e) {
+			assertThat(e.getFailures().size(), is(DIR_COUNT));
+		}
+		assertThat(visited.size(), is(DIR_COUNT * FILES_PER_DIR));
+	}
+
+	/**
+	 * Verifies that skipped sub-trees are not listed
+	 */
+	@Test
+	public void testWalk_SkipSubtree() throws Exception {
+		final Set<Path> visited = ConcurrentHashMap.newKeySet();
+		new ParallelFileTreeWalker(executor, false).walk(root, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+				return dir.getFileName().toString().equals("sub") ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				visited.add(file);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		assertThat(visited.size(), is(0));
+	}
+}
@@ -0,0 +1,130 @@
+package jacle.common.io.dir.walkers;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import jacle.common.io.FilesExt;
+import jacle.common.thread.ExecutorsExt;
+import jacle.commontest.JUnitFiles;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PrefetchingFileTreeWalkerTest {
+
+	private final JUnitFiles files = new JUnitFiles();
+	private ExecutorService executor;
+	private Path root;
+
+	@Before
+	public void setUp() throws Exception {
+		files.before();
+		executor = ExecutorsExt.I.newWorkStealingPool(4, "PrefetchingFileTreeWalkerTest");
+		root = files.getFile("root").toPath();
+		for (int d = 0; d < 10; d++) {
+			for (int s = 0; s < 3; s++) {
+				Path dir = root.resolve("dir" + d).resolve("sub" + s);
+				Files.createDirectories(dir);
+				for (int f = 0; f < 5; f++) {
+					FilesExt.write("x", dir.resolve("file" + f).toFile(), StandardCharsets.UTF_8);
+				}
+			}
+		}
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Verifies that the visitor sees the same calls, in the same order, as
+	 * with the JDK walker, whether or not listings could be prefetched
+	 */
+	@Test
+	public void testWalk_SameAsJdk() throws Exception {
+		List<String> expected = new ArrayList<>();
+		Files.walkFileTree(root, new RecordingVisitor(expected));
+
+		List<String> actual = new ArrayList<>();
+		new PrefetchingFileTreeWalker(executor).walk(root, new RecordingVisitor(actual));
+		assertThat(actual, is(expected));
+
+		actual = new ArrayList<>();
+		new PrefetchingFileTreeWalker(executor, 1).walk(root, new RecordingVisitor(actual));
+		assertThat(actual, is(expected));
+	}
+
+	/**
+	 * Verifies that, with fewer permits than sibling directories, the
+	 * listings of later siblings and their descendants are still prefetched
+	 * as earlier ones are taken
+	 */
+	@Test
+	public void testWalk_SlidingWindow() throws Exception {
+		ThreadPoolExecutor counting = (ThreadPoolExecutor) Executors.newFixedThreadPool(2);
+		try {
+			new PrefetchingFileTreeWalker(counting, 2).walk(root, new SimpleFileVisitor<Path>() {
+			});
+			// Every directory but the root (listed by the visitor thread)
+			assertThat(counting.getTaskCount(), is(40L));
+		} finally {
+			counting.shutdownNow();
+		}
+	}
+
+	/**
+	 * Verifies that the walk stops at TERMINATE
+	 */
+	@Test
+	public void testWalk_Terminate() throws Exception {
+		final List<Path> visited = new ArrayList<>();
+		new PrefetchingFileTreeWalker(executor).walk(root, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				visited.add(file);
+				return (visited.size() == 7) ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+			}
+		});
+		assertThat(visited.size(), is(7));
+	}
+
+	private static class RecordingVisitor extends SimpleFileVisitor<Path> {
+		private final List<String> calls;
+
+		RecordingVisitor(List<String> calls) {
+			this.calls = calls;
+		}
+
+		@Override
+		public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+			calls.add("pre " + dir);
+			return dir.getFileName().toString().equals("sub1") ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+		}
+
+		@Override
+		public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+			calls.add("file " + file);
+			return file.getFileName().toString().equals("file2") ? FileVisitResult.SKIP_SIBLINGS : FileVisitResult.CONTINUE;
+		}
+
+		@Override
+		public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+			calls.add("post " + dir);
+			return FileVisitResult.CONTINUE;
+		}
+	}
+}
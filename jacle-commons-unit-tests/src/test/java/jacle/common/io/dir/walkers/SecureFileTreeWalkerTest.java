@@ -0,0 +1,123 @@
+package jacle.common.io.dir.walkers;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import jacle.common.io.FilesExt;
+import jacle.common.io.dir.DirOptions;
+import jacle.common.io.dir.DirUtils;
+import jacle.commontest.JUnitFiles;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SecureFileTreeWalkerTest {
+
+	private final JUnitFiles files = new JUnitFiles();
+	private Path root;
+	private Path outside;
+
+	@Before
+	public void setUp() throws Exception {
+		files.before();
+		root = files.getFile("root").toPath();
+		outside = files.getFile("outside").toPath();
+		Files.createDirectories(outside);
+		FilesExt.write("keep", outside.resolve("keep.txt").toFile(), StandardCharsets.UTF_8);
+		for (int d = 0; d < 3; d++) {
+			Path dir = root.resolve("dir" + d).resolve("sub");
+			Files.createDirectories(dir);
+			for (int f = 0; f < 5; f++) {
+				FilesExt.write("x", dir.resolve("file" + f).toFile(), StandardCharsets.UTF_8);
+			}
+		}
+		Files.createSymbolicLink(root.resolve("dir0").resolve("link"), outside);
+	}
+
+	/**
+	 * Verifies that the visitor sees the same calls as with the JDK walker
+	 */
+	@Test
+	public void testWalk_SameAsJdk() throws Exception {
+		List<String> expected = new ArrayList<>();
+		Files.walkFileTree(root, new RecordingVisitor(expected));
+		List<String> actual = new ArrayList<>();
+		new SecureFileTreeWalker().walk(root, new RecordingVisitor(actual));
+		assertThat(actual, is(expected));
+	}
+
+	/**
+	 * Verifies that the visitor is given open directory handles where
+	 * supported
+	 */
+	@Test
+	public void testGetParentStream() throws Exception {
+		Assume.assumeTrue(SecureFileTreeWalker.isSupported(root));
+		final List<Path> withHandle = new ArrayList<>();
+		new SecureFileTreeWalker().walk(root, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				if (SecureFileTreeWalker.getParentStream(file) != null) {
+					withHandle.add(file);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		assertThat(withHandle.size(), is(16));
+		assertThat(SecureFileTreeWalker.getParentStream(root.resolve("dir0")) == null, is(true));
+	}
+
+	/**
+	 * Verifies deletes and cleans, and that links are removed rather than
+	 * followed
+	 */
+	@Test
+	public void testDeleteAndClean() throws Exception {
+		DirOptions options = new DirOptions().setSecureWalk(true);
+		DirUtils.I.clean(root, options);
+		assertThat(Files.isDirectory(root.resolve("dir1").resolve("sub")), is(true));
+		assertThat(Files.exists(root.resolve("dir1").resolve("sub").resolve("file0")), is(false));
+		assertThat(Files.exists(root.resolve("dir0").resolve("link"), LinkOption.NOFOLLOW_LINKS), is(false));
+
+		DirUtils.I.delete(root, options);
+		assertThat(Files.exists(root), is(false));
+		assertThat(Files.exists(outside.resolve("keep.txt")), is(true));
+	}
+
+	private static class RecordingVisitor extends SimpleFileVisitor<Path> {
+		private final List<String> calls;
+
+		RecordingVisitor(List<String> calls) {
+			this.calls = calls;
+		}
+
+		@Override
+		public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+			calls.add("pre " + dir);
+			return dir.getFileName().toString().equals("dir2") ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+		}
+
+		@Override
+		public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+			calls.add("file " + file + " " + attrs.isSymbolicLink());
+			return FileVisitResult.CONTINUE;
+		}
+
+		@Override
+		public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+			calls.add("post " + dir);
+			return FileVisitResult.CONTINUE;
+		}
+	}
+}
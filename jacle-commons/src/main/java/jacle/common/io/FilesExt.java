@@ -1,6 +1,8 @@
 package jacle.common.io;
 
+import jacle.common.io.dir.DirOptions;
 import jacle.common.io.dir.DirUtils;
+import jacle.common.io.dir.visitors.DeleteDirVisitor;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -8,8 +10,12 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
 import java.nio.file.FileVisitor;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Set;
 
 import com.google.common.io.Files;
@@ -45,26 +51,31 @@ public class FilesExt {
 	 **/
 	public static void deleteDirectoryContents(File directory) throws RuntimeIOException {
 		try {
-			if (!directory.exists()) {
+			final Path path = directory.toPath();
+			BasicFileAttributes attrs;
+			try {
+				attrs = java.nio.file.Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+			} catch (NoSuchFileException e) {
 				return;
 			}
-			if (!directory.isDirectory()) {
-				throw new RuntimeIOException(String.format("[%s] is not a directory", directory));
-			}
 			// Do not walk into symlinks. Just stop, allowing the caller to
-			// delete the link if desired.
-			if (java.nio.file.Files.isSymbolicLink(directory.toPath())) {
+			// delete the link if desired. A link that does not resolve counts
+			// as a directory that does not exist.
+			if (attrs.isSymbolicLink()
+					&& (java.nio.file.Files.isDirectory(path) || !java.nio.file.Files.exists(path))) {
 				return;
 			}
-			File[] files = directory.listFiles();
-			if (files == null) {
-				throw new RuntimeIOException(String.format("Error listing files for [%s]", directory));
-			}
-			for (File file : files) {
-				deleteRecursively(file);
+			if (!attrs.isDirectory()) {
+				throw new RuntimeIOException(String.format("[%s] is not a directory", directory));
 			}
+			java.nio.file.Files.walkFileTree(path, new DeleteDirVisitor() {
+				@Override
+				public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+					return dir.equals(path) && exc == null ? FileVisitResult.CONTINUE : super.postVisitDirectory(dir, exc);
+				}
+			});
 		} catch (Exception e) {
-			throw new RuntimeIOException(String.format("Failed to delete [%s] recursively", directory));
+			throw new RuntimeIOException(String.format("Failed to delete [%s] recursively", directory), e);
 		}
 	}
 
@@ -92,20 +103,16 @@ public class FilesExt {
 	 * @throws RuntimeIOException
 	 **/
 	public static void deleteRecursively(File file) throws RuntimeIOException {
-		boolean deleted;
 		try {
-			if (!file.exists()) {
-				return;
-			}
-			if (file.isDirectory()) {
-				deleteDirectoryContents(file);
+			// The walker reads each entry's attributes once, without following
+			// links, so links are deleted rather than walked into
+			java.nio.file.Files.walkFileTree(file.toPath(), new DeleteDirVisitor());
+		} catch (NoSuchFileException e) {
+			if (!e.getFile().equals(file.toPath().toString())) {
+				throw new RuntimeIOException(String.format("Failed to delete [%s] recursively", file), e);
 			}
-			deleted = file.delete();
 		} catch (Exception e) {
-			throw new RuntimeIOException(String.format("Failed to delete [%s] recursively", file));
-		}
-		if (!deleted) {
-			throw new RuntimeIOException(String.format("Failed to delete [%s] recursively", file));
+			throw new RuntimeIOException(String.format("Failed to delete [%s] recursively", file), e);
 		}
 	}
 
@@ -308,10 +315,27 @@ public class FilesExt {
 			throw new RuntimeIOException(String.format("Failed to copy dir from [%s] to [%s]", source, destination), e);
 		}
 	}
+
+	/**
+	 * Copies the contents of <code>source</code> to <code>destination</code>,
+	 * applying the provided options (e.g. {@link DirOptions#setJournal(boolean)}
+	 * to make an interrupted copy resumable)
+	 * 
+	 * @throws RuntimeIOException
+	 */
+	public static void copyDir(File source, File destination, DirOptions options) {
+		try {
+			DirUtils.I.copy(source.toPath(), destination.toPath(), options);
+		} catch (Exception e) {
+			throw new RuntimeIOException(String.format("Failed to copy dir from [%s] to [%s]", source, destination), e);
+		}
+	}
 	
 	/**
 	 * Copies the contents of <code>source</code> to <code>destination</code>,
-	 * then deletes the contents of <code>source</code>.
+	 * then deletes the contents of <code>source</code>. When both are on the
+	 * same file store, this is done by renaming rather than copying (see
+	 * {@link DirUtils#move(Path, Path)}).
 	 * 
 	 * @throws RuntimeIOException
 	 */
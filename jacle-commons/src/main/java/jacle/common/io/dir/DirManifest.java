@@ -0,0 +1,121 @@
+package jacle.common.io.dir;
+
+import jacle.common.io.RuntimeIOException;
+import jacle.common.io.dir.manifest.ManifestDiffHandler;
+import jacle.common.io.dir.manifest.ManifestEntry;
+import jacle.common.io.dir.manifest.ManifestMerger;
+import jacle.common.io.dir.manifest.ManifestReader;
+import jacle.common.io.dir.manifest.ManifestWriter;
+import jacle.common.io.dir.manifest.TreeEntryIterator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Snapshots directory trees into manifest files (relative path, size,
+ * modification time and optionally a SHA-256 per entry), and finds what
+ * changed between a manifest and a live tree or another manifest.
+ * <p>
+ * Both sides are read as sorted streams (see
+ * {@link ManifestEntry#PATH_ORDER}) and compared with a single merge pass, so
+ * memory use does not grow with the number of entries.
+ */
+public class DirManifest {
+
+	/**
+	 * Static accessor
+	 */
+	public static final DirManifest I = new DirManifest();
+
+	/**
+	 * Writes a manifest of the tree. The manifest is written to a temporary
+	 * file next to <code>manifest</code> and then moved into place, so an
+	 * existing manifest is only replaced by a complete one.
+	 *
+	 * @param root
+	 *            The directory to snapshot
+	 * @param manifest
+	 *            The file to write
+	 * @param hashes
+	 *            Whether to record the SHA-256 of every file (which means
+	 *            reading every file)
+	 * @throws IOException
+	 */
+	public void write(Path root, Path manifest, boolean hashes) throws IOException {
+		validate(root);
+		Path temp = manifest.resolveSibling(manifest.getFileName() + ".tmp");
+		boolean moved = false;
+		try {
+			try (TreeEntryIterator entries = new TreeEntryIterator(root, hashes);
+					OutputStream out = Files.newOutputStream(temp);
+					ManifestWriter writer = new ManifestWriter(out, hashes)) {
+				while (entries.hasNext()) {
+					writer.write(entries.next());
+				}
+			} catch (RuntimeIOException e) {
+				throw unwrap(e);
+			}
+			Files.move(temp, manifest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			moved = true;
+		} finally {
+			if (!moved) {
+				Files.deleteIfExists(temp);
+			}
+		}
+	}
+
+	/**
+	 * Opens a manifest for reading. The caller must close the returned
+	 * iterator.
+	 */
+	public ManifestReader read(Path manifest) throws IOException {
+		return new ManifestReader(Files.newInputStream(manifest));
+	}
+
+	/**
+	 * Reports what changed from the manifest (older) to the live tree (newer).
+	 * If the manifest has hashes, files whose size matches but whose
+	 * modification time does not are hashed, so that touched but unchanged
+	 * files are not reported.
+	 *
+	 * @throws IOException
+	 */
+	public void diffTree(Path manifest, Path root, ManifestDiffHandler handler) throws IOException {
+		validate(root);
+		try (ManifestReader older = read(manifest);
+				TreeEntryIterator newer = new TreeEntryIterator(root, false)) {
+			ManifestMerger.diff(older, newer, handler, older.hasHashes());
+		} catch (RuntimeIOException e) {
+			throw unwrap(e);
+		}
+	}
+
+	/**
+	 * Reports what changed from one manifest (older) to another (newer)
+	 *
+	 * @throws IOException
+	 */
+	public void diffManifests(Path olderManifest, Path newerManifest, ManifestDiffHandler handler)
+			throws IOException {
+		try (ManifestReader older = read(olderManifest);
+				ManifestReader newer = read(newerManifest)) {
+			ManifestMerger.diff(older, newer, handler, false);
+		} catch (RuntimeIOException e) {
+			throw unwrap(e);
+		}
+	}
+
+	private static IOException unwrap(RuntimeIOException e) {
+		IOException cause = e.getIOException();
+		return (cause != null) ? cause : new IOException(e);
+	}
+
+	private static void validate(Path root) {
+		if (!Files.isDirectory(root)) {
+			throw new IllegalArgumentException(String.format("%s is not a directory", root));
+		}
+	}
+}
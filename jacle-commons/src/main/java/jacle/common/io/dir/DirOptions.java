@@ -0,0 +1,292 @@
+package jacle.common.io.dir;
+
+import jacle.common.io.dir.copy.FileCopyStrategy;
+import jacle.common.io.dir.metrics.DirListener;
+import jacle.common.io.dir.throttle.DirThrottle;
+import jacle.common.io.dir.tombstone.TombstoneReaper;
+
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Optional settings for the {@link DirUtils} operations. The defaults match the
+ * behavior of the {@link DirUtils} methods that take no options.
+ */
+public class DirOptions {
+
+	private int parallelism = 1;
+	private ExecutorService executor;
+	private FileCopyStrategy copyStrategy = FileCopyStrategy.DEFAULT;
+	private boolean compareContents;
+	private boolean deleteExtraneous;
+	private DirListener listener;
+	private boolean journal;
+	private DirThrottle throttle;
+	private TombstoneReaper reaper;
+	private boolean secureWalk;
+	private boolean ordered = true;
+	private ExecutorService streamExecutor;
+
+	/**
+	 * Specifies the number of threads used to walk the directory tree. With a
+	 * value above one, sibling sub-directories are processed concurrently by a
+	 * work-stealing pool, and failures of individual entries no longer abort
+	 * the operation; they are collected and thrown together as a
+	 * {@link DirWalkException} once the walk completes. Defaults to one (walk
+	 * on the calling thread, stopping at the first failure).
+	 *
+	 * @param parallelism
+	 *            The number of threads
+	 *
+	 * @return "this" (fluent setter)
+	 */
+	public DirOptions setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException(String.format("Parallelism must be positive [%d]", parallelism));
+		}
+		this.parallelism = parallelism;
+		return this;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Specifies an existing executor (e.g. one built by
+	 * {@link jacle.common.thread.ExecutorsExt}) to walk the directory tree
+	 * with. This implies a parallel walk, as described in
+	 * {@link #setParallelism(int)}, and takes precedence over the parallelism
+	 * setting. The executor is not shut down by the operation. Defaults to
+	 * null (a pool is created for each operation when parallelism is above
+	 * one).
+	 *
+	 * @param executor
+	 *            The executor to run the walk on, or null
+	 *
+	 * @return "this" (fluent setter)
+	 */
+	public DirOptions setExecutor(ExecutorService executor) {
+		this.executor = executor;
+		return this;
+	}
+
+	public ExecutorService getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Specifies how individual files are copied by the copy operations (e.g.
+	 * {@link jacle.common.io.dir.copy.TransferCopyStrategy}, or
+	 * {@link jacle.common.io.dir.copy.HardLinkCopyStrategy} for hard-linked
+	 * snapshots, or {@link jacle.common.io.dir.copy.PipelinedCopyStrategy} for
+	 * slow storage). Defaults to {@link FileCopyStrategy#DEFAULT}.
+	 *
+	 * @param copyStrategy
+	 *            The strategy to copy files with
+	 *
+	 * @return "this" (fluent setter)
+	 */
+	public DirOptions setCopyStrategy(FileCopyStrategy copyStrategy) {
+		this.copyStrategy = Objects.requireNonNull(copyStrategy);
+		return this;
+	}
+
+	public FileCopyStrategy getCopyStrategy() {
+		return copyStrategy;
+	}
+
+	/**
+	 * Specifies whether {@link DirUtils#sync(java.nio.file.Path,
+	 * java.nio.file.Path, DirOptions)} compares the contents of files whose
+	 * sizes match, rather than their modification times. Defaults to false.
+	 *
+	 * @param compareContents
+	 *            The flag value
+	 *
+	 * @return "this" (fluent setter)
+	 */
+	public DirOptions setCompareContents(boolean compareContents) {
+		this.compareContents = compareContents;
+		return this;
+	}
+
+	public boolean isCompareContents() {
+		return compareContents;
+	}
+
+	/**
+	 * Specifies whether {@link DirUtils#sync(java.nio.file.Path,
+	 * java.nio.file.Path, DirOptions)} deletes destination entries that do not
+	 * exist in the source. Defaults to false.
+	 *
+	 * @param deleteExtraneous
+	 *            The flag value
+	 *
+	 * @return "this" (fluent setter)
+	 */
+	public DirOptions setDeleteExtraneous(boolean deleteExtraneous) {
+		this.deleteExtraneous = deleteExtraneous;
+		return this;
+	}
+
+	public boolean isDeleteExtraneous() {
+		return deleteExtraneous;
+	}
+
+	/**
+	 * Specifies a listener that is told about every file and directory the
+	 * operation processes, and every failure (e.g. a
+	 * {@link jacle.common.io.dir.metrics.DirMetrics}). Defaults to null, in
+	 * which case nothing is reported and nothing is spent on reporting.
+	 *
+	 * @param listener
+	 *            The listener, or null
+	 *
+	 * @return "this" (fluent setter)
+	 */
+	public DirOptions setListener(DirListener listener) {
+		this.listener = listener;
+		return this;
+	}
+
+	public DirListener getListener() {
+		return listener;
+	}
+
+	/**
+	 * Specifies whether {@link DirUtils#copy(java.nio.file.Path,
+	 * java.nio.file.Path, DirOptions)} records its progress in a journal in
+	 * the destination directory (see
+	 * {@link jacle.common.io.dir.copy.CopyJournal}). If the copy is
+	 * interrupted, running it again with the same options resumes it. Completed
+	 * files are skipped unless their size or modification time changed since.
+	 * Completed sub-trees are skipped without being listed, so changes made
+	 * below them in the source since are not copied. The journal is deleted
+	 * once the copy succeeds. Cannot be
+	 * combined with an {@link jacle.common.io.dir.copy.AsyncFileCopyStrategy}.
+	 * Defaults to false.
+	 *
+	 * @param journal
+	 *            The flag value
+	 *
+	 * @return "this" (fluent setter)
+	 */
+	public DirOptions setJournal(boolean journal) {
+		this.journal = journal;
+		return this;
+	}
+
+	public boolean isJournal() {
+		return journal;
+	}
+
+	/**
+	 * Specifies a throttle that limits the rate of files and directories the
+	 * operation processes, and for the copy operations, the rate of bytes
+	 * copied. The same throttle may be given to several operations to share
+	 * its limits between them, and the limits may be changed while they run.
+	 * Defaults to null (no limit).
+	 *
+	 * @param throttle
+	 *            The throttle, or null
+	 *
+	 * @return "this" (fluent setter)
+	 */
+	public DirOptions setThrottle(DirThrottle throttle) {
+		this.throttle = throttle;
+		return this;
+	}
+
+	public DirThrottle getThrottle() {
+		return throttle;
+	}
+
+	/**
+	 * Specifies a reaper (e.g. {@link TombstoneReaper#DEFAULT}) that makes
+	 * {@link DirUtils#delete(java.nio.file.Path, DirOptions)} return as soon
+	 * as the tree has been renamed into a tombstone directory, leaving the
+	 * reaper to delete it in the background. The other options do not apply
+	 * to background deletes. Defaults to null (delete before returning).
+	 *
+	 * @param reaper
+	 *            The reaper, or null
+	 *
+	 * @return "this" (fluent setter)
+	 */
+	public DirOptions setReaper(TombstoneReaper reaper) {
+		this.reaper = reaper;
+		return this;
+	}
+
+	public TombstoneReaper getReaper() {
+		return reaper;
+	}
+
+	/**
+	 * Specifies whether sequential walks that do not follow links work
+	 * relative to open directory handles, using a
+	 * {@link jacle.common.io.dir.walkers.SecureFileTreeWalker}. Where the
+	 * platform supports it (e.g. Linux), deletes and cleans then remove each
+	 * entry relative to its already open directory rather than resolving its
+	 * full path again, and cannot be redirected by a directory that is
+	 * swapped for a symbolic link during the walk. Elsewhere, and for parallel
+	 * walks, this has no effect. Defaults to false.
+	 *
+	 * @param secureWalk
+	 *            The flag value
+	 *
+	 * @return "this" (fluent setter)
+	 */
+	public DirOptions setSecureWalk(boolean secureWalk) {
+		this.secureWalk = secureWalk;
+		return this;
+	}
+
+	public boolean isSecureWalk() {
+		return secureWalk;
+	}
+
+	/**
+	 * Specifies whether a parallel {@link DirUtils#glob(java.nio.file.Path,
+	 * String, DirOptions)} delivers its matches in the order of a sequential
+	 * walk. If not, matches are delivered as soon as any thread finds them,
+	 * which gives the best throughput. Defaults to true.
+	 *
+	 * @param ordered
+	 *            The flag value
+	 *
+	 * @return "this" (fluent setter)
+	 */
+	public DirOptions setOrdered(boolean ordered) {
+		this.ordered = ordered;
+		return this;
+	}
+
+	public boolean isOrdered() {
+		return ordered;
+	}
+
+	/**
+	 * Specifies the executor the walk of
+	 * {@link DirUtils#glob(java.nio.file.Path, String, DirOptions)} runs on
+	 * while the caller iterates (see
+	 * {@link jacle.common.io.dir.events.AsynchronousRecursiveDirectoryStream#setExecutor(ExecutorService)}).
+	 * Unrelated to {@link #setExecutor(ExecutorService)}, which lists the
+	 * directories, and must not be the same executor. Defaults to null
+	 * ({@link jacle.common.io.dir.events.DirectoryStreamExecutor#DEFAULT}).
+	 *
+	 * @param streamExecutor
+	 *            The executor, or null
+	 *
+	 * @return "this" (fluent setter)
+	 */
+	public DirOptions setStreamExecutor(ExecutorService streamExecutor) {
+		this.streamExecutor = streamExecutor;
+		return this;
+	}
+
+	public ExecutorService getStreamExecutor() {
+		return streamExecutor;
+	}
+}
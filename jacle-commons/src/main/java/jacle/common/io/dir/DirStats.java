@@ -0,0 +1,131 @@
+package jacle.common.io.dir;
+
+import jacle.common.lang.KeyValue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The totals returned by {@link DirUtils#stats(Path)}. Safe to update from
+ * multiple threads.
+ */
+public class DirStats {
+
+	/**
+	 * The number of buckets in {@link #getSizeHistogram()}, enough for any
+	 * file size
+	 */
+	public static final int HISTOGRAM_BUCKETS = 64;
+
+	private static final Comparator<KeyValue<Path, Long>> BY_SIZE = new Comparator<KeyValue<Path, Long>>() {
+		@Override
+		public int compare(KeyValue<Path, Long> a, KeyValue<Path, Long> b) {
+			return Long.compare(a.getValue(), b.getValue());
+		}
+	};
+
+	private final LongAdder bytes = new LongAdder();
+	private final LongAdder fileCount = new LongAdder();
+	private final LongAdder directoryCount = new LongAdder();
+	private final AtomicLongArray histogram = new AtomicLongArray(HISTOGRAM_BUCKETS);
+	private final int topCount;
+	/**
+	 * Smallest first, so the head is the one to evict
+	 */
+	private final PriorityQueue<KeyValue<Path, Long>> largest;
+	/**
+	 * The smallest size that can still enter {@link #largest}, so most files
+	 * are rejected without taking the lock
+	 */
+	private volatile long largestThreshold;
+
+	/**
+	 * @param topCount
+	 *            The number of largest files to keep
+	 */
+	public DirStats(int topCount) {
+		this.topCount = topCount;
+		this.largest = new PriorityQueue<>(Math.max(1, topCount), BY_SIZE);
+	}
+
+	public void addFile(Path file, long size) {
+		bytes.add(size);
+		fileCount.increment();
+		histogram.incrementAndGet(bucketOf(size));
+		if (topCount > 0 && size >= largestThreshold) {
+			synchronized (largest) {
+				largest.add(new KeyValue<>(file, size));
+				if (largest.size() > topCount) {
+					largest.poll();
+				}
+				if (largest.size() == topCount) {
+					largestThreshold = largest.peek().getValue();
+				}
+			}
+		}
+	}
+
+	public void addDirectory() {
+		directoryCount.increment();
+	}
+
+	/**
+	 * Returns the total size of all files
+	 */
+	public long getBytes() {
+		return bytes.sum();
+	}
+
+	public long getFileCount() {
+		return fileCount.sum();
+	}
+
+	/**
+	 * Returns the number of directories, including the starting directory
+	 */
+	public long getDirectoryCount() {
+		return directoryCount.sum();
+	}
+
+	/**
+	 * Returns the number of files by size. Bucket zero counts empty files,
+	 * and bucket <code>i</code> counts files of at least
+	 * <code>2<sup>i-1</sup></code> and less than <code>2<sup>i</sup></code>
+	 * bytes.
+	 */
+	public long[] getSizeHistogram() {
+		long[] result = new long[HISTOGRAM_BUCKETS];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = histogram.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the largest files, mapped to their sizes, largest first
+	 */
+	public List<KeyValue<Path, Long>> getLargestFiles() {
+		List<KeyValue<Path, Long>> result;
+		synchronized (largest) {
+			result = new ArrayList<>(largest);
+		}
+		Collections.sort(result, Collections.reverseOrder(BY_SIZE));
+		return result;
+	}
+
+	static int bucketOf(long size) {
+		return HISTOGRAM_BUCKETS - Long.numberOfLeadingZeros(size);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("bytes [%d], files [%d], directories [%d]", getBytes(), getFileCount(),
+				getDirectoryCount());
+	}
+}
@@ -1,21 +1,57 @@
 package jacle.common.io.dir;
 
 import jacle.common.io.FilesExt;
+import jacle.common.io.dir.archive.ArchiveExtractor;
+import jacle.common.io.dir.archive.ArchiveFormat;
+import jacle.common.io.dir.archive.ParallelArchiver;
+import jacle.common.io.dir.copy.AsyncFileCopyStrategy;
+import jacle.common.io.dir.copy.CopyJournal;
+import jacle.common.io.dir.copy.VerificationReport;
+import jacle.common.io.dir.copy.VerifyingCopyStrategy;
 import jacle.common.io.dir.events.AsynchronousRecursiveDirectoryStream;
+import jacle.common.io.dir.metrics.DirListener;
+import jacle.common.io.dir.throttle.DirThrottle;
+import jacle.common.io.dir.tombstone.TombstoneReaper;
+import jacle.common.io.dir.util.GlobPattern;
+import jacle.common.io.dir.visitors.AsyncFunctionVisitor;
 import jacle.common.io.dir.visitors.CleanDirVisitor;
 import jacle.common.io.dir.visitors.CopyDirVisitor;
 import jacle.common.io.dir.visitors.CopyPredicateVisitor;
 import jacle.common.io.dir.visitors.DeleteDirVisitor;
 import jacle.common.io.dir.visitors.FunctionVisitor;
+import jacle.common.io.dir.visitors.JournalingVisitor;
+import jacle.common.io.dir.visitors.ListeningVisitor;
+import jacle.common.io.dir.visitors.MoveDirVisitor;
+import jacle.common.io.dir.visitors.StatsVisitor;
+import jacle.common.io.dir.visitors.SyncDirVisitor;
+import jacle.common.io.dir.visitors.ThrottlingVisitor;
+import jacle.common.io.dir.walkers.DirectorySpliterator;
+import jacle.common.io.dir.walkers.ParallelFileTreeWalker;
+import jacle.common.io.dir.walkers.SecureFileTreeWalker;
+import jacle.common.thread.ExecutorsExt;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.FileVisitOption;
 import java.nio.file.FileVisitResult;
+import java.nio.file.FileVisitor;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.EnumSet;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
@@ -36,6 +72,18 @@ public class DirUtils {
 	 * Static accessor
 	 */
 	public static final DirUtils I = new DirUtils();
+
+	/**
+	 * The number of largest files reported by {@link #stats(Path)}
+	 */
+	public static final int DEFAULT_TOP_COUNT = 10;
+
+	/**
+	 * Runs the walks of {@link #applyAsync}. The threads are daemons, so a
+	 * walk whose future is forgotten does not keep the JVM alive, and idle
+	 * threads are reused by later walks.
+	 */
+	private static final ExecutorService WALKER_EXECUTOR = ExecutorsExt.I.newCachedDaemonThreadPool("DirUtils-walker");
 	
 	/**
 	 * Walks file tree starting at the given path and deletes all files but
@@ -49,6 +97,22 @@ public class DirUtils {
 		Files.walkFileTree(path, new CleanDirVisitor());
 	}
 
+	/**
+	 * Walks file tree starting at the given path and deletes all files but
+	 * leaves the directory structure intact, applying the provided options
+	 * (e.g. {@link DirOptions#setParallelism(int)} to delete sibling
+	 * sub-trees concurrently).
+	 *
+	 * @param path
+	 *            Base path to start from
+	 * @param options
+	 * @throws IOException
+	 */
+	public void clean(Path path, DirOptions options) throws IOException {
+		validate(path);
+		walk(path, EnumSet.noneOf(FileVisitOption.class), new CleanDirVisitor(), options);
+	}
+
 	/**
 	 * Walks file tree starting at the given path and deletes all files but
 	 * leaves the directory structure intact. If the given Path does not exist
@@ -76,6 +140,27 @@ public class DirUtils {
 		Files.walkFileTree(path, new DeleteDirVisitor());
 	}
 
+	/**
+	 * Completely removes given file tree starting at and including the given
+	 * path, applying the provided options (e.g.
+	 * {@link DirOptions#setParallelism(int)} to delete sibling sub-trees
+	 * concurrently). Each directory is removed only after all of its children
+	 * are. With {@link DirOptions#setReaper(TombstoneReaper)}, the tree is
+	 * instead renamed out of the way and deleted in the background.
+	 *
+	 * @param path
+	 * @param options
+	 * @throws IOException
+	 */
+	public void delete(Path path, DirOptions options) throws IOException {
+		validate(path);
+		if (options.getReaper() != null) {
+			options.getReaper().bury(path);
+			return;
+		}
+		walk(path, EnumSet.noneOf(FileVisitOption.class), new DeleteDirVisitor(), options);
+	}
+
 	/**
 	 * If the path exists, completely removes given file tree starting at and
 	 * including the given path.
@@ -98,24 +183,127 @@ public class DirUtils {
 	 * @throws IOException
 	 */
 	public void copy(Path from, Path to) throws IOException {
+		copy(from, to, new DirOptions());
+	}
+
+	/**
+	 * Copies a directory tree, applying the provided options (e.g.
+	 * {@link DirOptions#setParallelism(int)})
+	 *
+	 * @param from
+	 * @param to
+	 * @param options
+	 * @throws IOException
+	 */
+	public void copy(Path from, Path to, DirOptions options) throws IOException {
 		validate(from);
-		Files.walkFileTree(from, EnumSet.of(FileVisitOption.FOLLOW_LINKS),
-				Integer.MAX_VALUE, new CopyDirVisitor(from, to));
+		FileVisitor<Path> visitor =
+				new CopyDirVisitor(from, to, StandardCopyOption.REPLACE_EXISTING, options.getCopyStrategy());
+		if (!options.isJournal()) {
+			copyWalk(from, EnumSet.of(FileVisitOption.FOLLOW_LINKS), visitor, options);
+			return;
+		}
+		if (options.getCopyStrategy() instanceof AsyncFileCopyStrategy) {
+			throw new IllegalArgumentException(String.format(
+					"A journal cannot be kept with an asynchronous copy strategy [%s]", options.getCopyStrategy()));
+		}
+		Files.createDirectories(to);
+		CopyJournal journal = new CopyJournal(to.resolve(CopyJournal.FILE_NAME));
+		try {
+			copyWalk(from, EnumSet.of(FileVisitOption.FOLLOW_LINKS), new JournalingVisitor(from, visitor, journal), options);
+		} catch (IOException | RuntimeException | Error e) {
+			journal.close();
+			throw e;
+		}
+		journal.delete();
+	}
+
+	/**
+	 * Copies a directory tree with a {@link VerifyingCopyStrategy}, reading
+	 * the copied files back in parallel with the copy, with one thread per
+	 * processor
+	 *
+	 * @param from
+	 * @param to
+	 * @return The checksums of every copied file, and whether they match
+	 * @throws IOException
+	 */
+	public VerificationReport copyAndVerify(Path from, Path to) throws IOException {
+		ExecutorService executor = ExecutorsExt.I.newWorkStealingPool(
+				Runtime.getRuntime().availableProcessors(), "DirUtils-verify");
+		try {
+			VerifyingCopyStrategy copyStrategy = new VerifyingCopyStrategy(executor);
+			copy(from, to, new DirOptions().setCopyStrategy(copyStrategy));
+			return copyStrategy.getReport();
+		} finally {
+			executor.shutdownNow();
+		}
 	}
 
 	/**
-	 * Moves one directory tree to another. Not a true move operation in that
-	 * the directory tree is copied, then the original directory tree is
-	 * deleted.
+	 * Brings the <code>to</code> directory tree up to date with
+	 * <code>from</code>, copying only files that are missing or changed (see
+	 * {@link SyncDirVisitor}). Destination-only entries are deleted when
+	 * {@link DirOptions#setDeleteExtraneous(boolean)} is set, and contents are
+	 * compared instead of modification times when
+	 * {@link DirOptions#setCompareContents(boolean)} is set.
+	 *
+	 * @param from
+	 * @param to
+	 * @param options
+	 * @return A summary of what was copied, skipped and deleted
+	 * @throws IOException
+	 */
+	public SyncResult sync(Path from, Path to, DirOptions options) throws IOException {
+		validate(from);
+		SyncResult result = new SyncResult();
+		copyWalk(from, EnumSet.of(FileVisitOption.FOLLOW_LINKS), new SyncDirVisitor(from, to,
+				options.getCopyStrategy(), options.isCompareContents(), options.isDeleteExtraneous(), result),
+				options);
+		return result;
+	}
+
+	/**
+	 * Moves one directory tree to another. If <code>to</code> does not exist
+	 * and is on the same file store, this is a single atomic rename.
+	 * Otherwise the tree is merged into <code>to</code> by a
+	 * {@link MoveDirVisitor}, which still renames whole sub-trees where it can
+	 * and falls back to moving (copy, then delete) file by file across
+	 * devices.
 	 *
 	 * @param from
 	 * @param to
 	 * @throws IOException
 	 */
 	public void move(Path from, Path to) throws IOException {
+		move(from, to, new DirOptions());
+	}
+
+	/**
+	 * Moves one directory tree to another, as described in
+	 * {@link #move(Path, Path)}, applying the provided options. When the move
+	 * is done by a single rename, the listener (if any) is told about
+	 * <code>from</code> as one directory.
+	 *
+	 * @param from
+	 * @param to
+	 * @param options
+	 * @throws IOException
+	 */
+	public void move(Path from, Path to, DirOptions options) throws IOException {
 		validate(from);
-		Files.walkFileTree(from, new CopyDirVisitor(from, to));
-		Files.walkFileTree(from, new DeleteDirVisitor());
+		if (!Files.exists(to, LinkOption.NOFOLLOW_LINKS)) {
+			try {
+				Files.move(from, to, StandardCopyOption.ATOMIC_MOVE);
+				if (options.getListener() != null) {
+					options.getListener().onDirectory(from);
+				}
+				return;
+			} catch (AtomicMoveNotSupportedException e) {
+				// Different file store; move by walking
+			}
+		}
+		walk(from, EnumSet.noneOf(FileVisitOption.class), new MoveDirVisitor(from, to), options);
 	}
 
 	/**
@@ -132,6 +320,59 @@ public class DirUtils {
 		Files.walkFileTree(target, new FunctionVisitor(function));
 	}
 
+	/**
+	 * Traverses the directory structure and applies the given function to each
+	 * file, applying the provided options. With a parallel walk, the function
+	 * is called from several threads at once.
+	 * 
+	 * @param target
+	 * @param function
+	 * @param options
+	 * @throws IOException
+	 */
+	public void apply(Path target,
+			Function<Path, FileVisitResult> function, DirOptions options) throws IOException {
+		validate(target);
+		walk(target, EnumSet.noneOf(FileVisitOption.class), new FunctionVisitor(function), options);
+	}
+
+	/**
+	 * Traverses the directory structure on a shared background (daemon)
+	 * thread, handing each file to the executor to apply the given function.
+	 * At most <code>maxInFlight</code> files are queued or running at once;
+	 * the walk waits for the executor beyond that. See {@link AsyncFunctionVisitor}
+	 * for how the function results are handled.
+	 * 
+	 * @param target
+	 * @param function
+	 *            Called from the executor threads, possibly concurrently
+	 * @param executor
+	 *            Runs the function (not shut down by this method)
+	 * @param maxInFlight
+	 *            The number of files that may be waiting for or running the
+	 *            function at once
+	 * @return A future that completes once every file has been processed, or
+	 *         with the first failure of the walk or the function
+	 */
+	public CompletableFuture<Void> applyAsync(final Path target,
+			Function<Path, FileVisitResult> function, Executor executor, int maxInFlight) {
+		validate(target);
+		final AsyncFunctionVisitor visitor = new AsyncFunctionVisitor(function, executor, maxInFlight);
+		WALKER_EXECUTOR.execute(new Runnable() {
+			@Override
+			public void run() {
+				Throwable failure = null;
+				try {
+					Files.walkFileTree(target, visitor);
+				} catch (Throwable t) {
+					failure = t;
+				}
+				visitor.walkFinished(failure);
+			}
+		});
+		return visitor.getFuture();
+	}
+
 	/**
 	 * Traverses the directory structure and will only copy sub-tree structures
 	 * where the provided predicate is true
@@ -147,9 +388,202 @@ public class DirUtils {
 		Files.walkFileTree(from, new CopyPredicateVisitor(from, to, predicate));
 	}
 
+	/**
+	 * Traverses the directory structure and will only copy sub-tree structures
+	 * where the provided predicate is true, applying the provided options
+	 * (e.g. {@link DirOptions#setCopyStrategy})
+	 * 
+	 * @param from
+	 * @param to
+	 * @param predicate
+	 * @param options
+	 * @throws IOException
+	 */
+	public void copyWithPredicate(Path from, Path to,
+			Predicate<Path> predicate, DirOptions options) throws IOException {
+		validate(from);
+		copyWalk(from, EnumSet.noneOf(FileVisitOption.class),
+				new CopyPredicateVisitor(from, to, predicate, options.getCopyStrategy()), options);
+	}
+
+	/**
+	 * Copies the files matching a glob (see {@link GlobPattern}), relative to
+	 * <code>from</code>. Directories that cannot contain a match are not
+	 * walked; the ones that are walked are created in <code>to</code>.
+	 * 
+	 * @param from
+	 * @param to
+	 * @param pattern
+	 *            e.g. <code>src/main/**&#47;*.java</code>
+	 * @throws IOException
+	 */
+	public void copyWithGlob(Path from, Path to, String pattern) throws IOException {
+		copyWithGlob(from, to, pattern, new DirOptions());
+	}
+
+	/**
+	 * {@link #copyWithGlob(Path, Path, String)}, applying the provided options
+	 * (e.g. {@link DirOptions#setCopyStrategy})
+	 * 
+	 * @param from
+	 * @param to
+	 * @param pattern
+	 * @param options
+	 * @throws IOException
+	 */
+	public void copyWithGlob(Path from, Path to, String pattern, DirOptions options) throws IOException {
+		validate(from);
+		GlobPattern glob = GlobPattern.compile(pattern);
+		copyWalk(from, EnumSet.noneOf(FileVisitOption.class),
+				new CopyPredicateVisitor(from, to, glob.toDirectoryPredicate(from), glob.toFilePredicate(from),
+						options.getCopyStrategy()), options);
+	}
+
+	/**
+	 * Returns the total size, file and directory counts, size histogram and
+	 * the {@link #DEFAULT_TOP_COUNT} largest files of the tree, walking
+	 * sub-trees in parallel with one thread per processor
+	 * 
+	 * @param path
+	 * @return The totals
+	 * @throws IOException
+	 */
+	public DirStats stats(Path path) throws IOException {
+		return stats(path, DEFAULT_TOP_COUNT,
+				new DirOptions().setParallelism(Runtime.getRuntime().availableProcessors()));
+	}
+
+	/**
+	 * Returns the total size, file and directory counts, size histogram and
+	 * the largest files of the tree, applying the provided options. Symbolic
+	 * links are not followed.
+	 * 
+	 * @param path
+	 * @param topCount
+	 *            The number of largest files to report
+	 * @param options
+	 * @return The totals
+	 * @throws IOException
+	 */
+	public DirStats stats(Path path, int topCount, DirOptions options) throws IOException {
+		validate(path);
+		DirStats stats = new DirStats(topCount);
+		walk(path, EnumSet.noneOf(FileVisitOption.class), new StatsVisitor(stats), options);
+		return stats;
+	}
+
+	/**
+	 * Writes the contents of a directory tree to a zip archive, deflating
+	 * files in parallel with one thread per processor
+	 *
+	 * @param from
+	 * @param out
+	 *            Receives the archive. Not closed.
+	 * @throws IOException
+	 */
+	public void archive(Path from, OutputStream out) throws IOException {
+		archive(from, out, ArchiveFormat.ZIP,
+				new DirOptions().setParallelism(Runtime.getRuntime().availableProcessors()));
+	}
+
+	/**
+	 * Writes the contents of a directory tree to an archive (see
+	 * {@link ParallelArchiver}). The tree is walked on the calling thread,
+	 * which writes the entries in order; with an executor or parallelism in
+	 * the options, files are read and compressed concurrently.
+	 *
+	 * @param from
+	 * @param out
+	 *            Receives the archive. Not closed.
+	 * @param format
+	 * @param options
+	 * @throws IOException
+	 */
+	public void archive(Path from, OutputStream out, ArchiveFormat format, DirOptions options)
+			throws IOException {
+		validate(from);
+		try (OperationExecutor executor = new OperationExecutor(options)) {
+			ParallelArchiver archiver = new ParallelArchiver(from, out, format, executor.get());
+			try {
+				Files.walkFileTree(from, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+						decorate(archiver, options, true));
+			} catch (IOException | RuntimeException | Error e) {
+				archiver.cancel();
+				throw e;
+			}
+			archiver.finish();
+		}
+	}
+
+	/**
+	 * Extracts a zip archive into a directory, writing files in parallel with
+	 * one thread per processor
+	 *
+	 * @param in
+	 *            The archive. Not closed.
+	 * @param to
+	 * @throws IOException
+	 */
+	public void extract(InputStream in, Path to) throws IOException {
+		extract(in, to, ArchiveFormat.ZIP,
+				new DirOptions().setParallelism(Runtime.getRuntime().availableProcessors()));
+	}
+
+	/**
+	 * Extracts an archive into a directory (see {@link ArchiveExtractor}).
+	 * With an executor or parallelism in the options, files are written
+	 * concurrently.
+	 *
+	 * @param in
+	 *            The archive. Not closed.
+	 * @param to
+	 * @param format
+	 * @param options
+	 * @throws IOException
+	 */
+	public void extract(InputStream in, Path to, ArchiveFormat format, DirOptions options) throws IOException {
+		Objects.requireNonNull(in);
+		validateTarget(to);
+		try (OperationExecutor executor = new OperationExecutor(options)) {
+			new ArchiveExtractor(to, executor.get()).extract(in, format);
+		}
+	}
+
+	/**
+	 * Extracts an archive file (zip or tar, detected from its content) into a
+	 * directory, with one thread per processor
+	 *
+	 * @param archive
+	 * @param to
+	 * @throws IOException
+	 */
+	public void extract(Path archive, Path to) throws IOException {
+		extract(archive, to, new DirOptions().setParallelism(Runtime.getRuntime().availableProcessors()));
+	}
+
+	/**
+	 * Extracts an archive file (zip or tar, detected from its content) into a
+	 * directory. With an executor or parallelism in the options, zip entries
+	 * are inflated and written concurrently.
+	 *
+	 * @param archive
+	 * @param to
+	 * @param options
+	 * @throws IOException
+	 */
+	public void extract(Path archive, Path to, DirOptions options) throws IOException {
+		Objects.requireNonNull(archive);
+		validateTarget(to);
+		try (OperationExecutor executor = new OperationExecutor(options)) {
+			new ArchiveExtractor(to, executor.get()).extract(archive);
+		}
+	}
+
 	/**
 	 * Returns a DirectoryStream that can iterate over files found recursively
-	 * based on the pattern provided
+	 * based on the pattern provided. Patterns with a separator are matched
+	 * against the path relative to <code>startPath</code>, and sub-trees that
+	 * cannot match are skipped (see {@link GlobPattern}).
 	 * 
 	 * @param startPath
 	 *            the Directory to start from
@@ -164,6 +598,201 @@ public class DirUtils {
 		return new AsynchronousRecursiveDirectoryStream(startPath, pattern);
 	}
 
+	/**
+	 * {@link #glob(Path, String)}, applying the provided options. With an
+	 * executor or parallelism (see {@link DirOptions#setParallelism(int)}),
+	 * directories are listed concurrently, and
+	 * {@link DirOptions#setOrdered(boolean)} tells whether matches keep the
+	 * order of a sequential walk. The walk runs on
+	 * {@link DirOptions#setStreamExecutor(ExecutorService)}, if given. The
+	 * matches may also be taken in chunks (see
+	 * {@link AsynchronousRecursiveDirectoryStream#batchIterator}).
+	 *
+	 * @param startPath
+	 *            the Directory to start from
+	 * @param pattern
+	 *            the glob to match against files
+	 * @param options
+	 * @return DirectoryStream
+	 * @throws IOException
+	 */
+	public AsynchronousRecursiveDirectoryStream glob(Path startPath, String pattern, DirOptions options)
+			throws IOException {
+		validate(startPath);
+		AsynchronousRecursiveDirectoryStream stream;
+		if (options.getExecutor() != null) {
+			stream = new AsynchronousRecursiveDirectoryStream(startPath, pattern,
+					options.getExecutor(), options.isOrdered());
+		} else {
+			stream = new AsynchronousRecursiveDirectoryStream(startPath, pattern,
+					options.getParallelism(), options.isOrdered());
+		}
+		if (options.getStreamExecutor() != null) {
+			stream.setExecutor(options.getStreamExecutor());
+		}
+		return stream;
+	}
+
+	/**
+	 * Returns a stream of the files found recursively that match the pattern,
+	 * as with {@link #glob(Path, String)}, but as a {@link Stream} that may
+	 * take part in parallel pipelines: after {@link Stream#parallel()}, sibling
+	 * sub-trees are listed and processed concurrently (see
+	 * {@link DirectorySpliterator}). Files are reported in no particular order.
+	 *
+	 * @param startPath
+	 *            the Directory to start from
+	 * @param pattern
+	 *            the glob to match against files
+	 * @throws java.io.UncheckedIOException
+	 *             If a directory cannot be read while the stream is consumed
+	 */
+	public Stream<Path> globStream(final Path startPath, String pattern) {
+		validate(startPath);
+		final GlobPattern glob = GlobPattern.compile(pattern);
+		// Start below the directories every match is in
+		Path walkPath = startPath.resolve(glob.getLiteralPrefix());
+		if (!Files.isDirectory(walkPath)) {
+			return Stream.empty();
+		}
+		DirectorySpliterator spliterator = new DirectorySpliterator(walkPath, false,
+				glob.toDirectoryPredicate(startPath));
+		return StreamSupport.stream(spliterator, false).filter(new java.util.function.Predicate<Path>() {
+			@Override
+			public boolean test(Path file) {
+				return glob.matches(startPath.relativize(file));
+			}
+		});
+	}
+
+	/**
+	 * Returns a stream of the start path and every entry below it, like
+	 * {@link Files#walk(Path, FileVisitOption...)}, but split at sub-directory
+	 * boundaries so that parallel pipelines scale (see
+	 * {@link DirectorySpliterator}). The stream is parallel if
+	 * {@link DirOptions#setParallelism(int)} is above one, in which case it
+	 * runs on the common fork-join pool, or on the pool the terminal
+	 * operation is called from. Entries are reported in no particular order,
+	 * symbolic links are not followed, and the stream need not be closed.
+	 *
+	 * @param startPath
+	 *            the Directory to start from
+	 * @param options
+	 * @throws java.io.UncheckedIOException
+	 *             If a directory cannot be read while the stream is consumed
+	 */
+	public Stream<Path> walkStream(Path startPath, DirOptions options) {
+		validate(startPath);
+		boolean parallel = (options.getParallelism() > 1);
+		return Stream.concat(Stream.of(startPath),
+				StreamSupport.stream(new DirectorySpliterator(startPath), parallel));
+	}
+
+	/**
+	 * Walks the tree on the calling thread (relative to open directory
+	 * handles, if asked to), or with a {@link ParallelFileTreeWalker} when the
+	 * options provide an executor or ask for parallelism. Reports to the
+	 * listener, if any.
+	 */
+	private static void walk(Path start, Set<FileVisitOption> visitOptions,
+			FileVisitor<Path> visitor, DirOptions options) throws IOException {
+		walk(start, visitOptions, visitor, options, false);
+	}
+
+	/**
+	 * {@link #walk(Path, Set, FileVisitor, DirOptions)}, where
+	 * <code>copy</code> tells whether file sizes count against the byte limit
+	 * of the throttle, if any
+	 */
+	private static void walk(Path start, Set<FileVisitOption> visitOptions,
+			FileVisitor<Path> visitor, DirOptions options, boolean copy) throws IOException {
+		walkDecorated(start, visitOptions, decorate(visitor, options, copy), options);
+	}
+
+	/**
+	 * {@link #walk(Path, Set, FileVisitor, DirOptions)}, with a visitor that
+	 * already applies the throttle and reports to the listener
+	 */
+	private static void walkDecorated(Path start, Set<FileVisitOption> visitOptions,
+			FileVisitor<Path> visitor, DirOptions options) throws IOException {
+		if (options.getExecutor() == null && options.getParallelism() <= 1) {
+			if (options.isSecureWalk() && visitOptions.isEmpty()) {
+				new SecureFileTreeWalker().walk(start, visitor);
+			} else {
+				Files.walkFileTree(start, visitOptions, Integer.MAX_VALUE, visitor);
+			}
+			return;
+		}
+		try (OperationExecutor executor = new OperationExecutor(options)) {
+			new ParallelFileTreeWalker(executor.get(), visitOptions.contains(FileVisitOption.FOLLOW_LINKS))
+					.walk(start, visitor);
+		}
+	}
+
+	/**
+	 * Wraps the visitor to apply the throttle and report to the listener, if
+	 * any
+	 */
+	private static FileVisitor<Path> decorate(FileVisitor<Path> visitor, DirOptions options, boolean copy) {
+		if (options.getThrottle() != null) {
+			visitor = new ThrottlingVisitor(visitor, options.getThrottle(), copy);
+		}
+		if (options.getListener() != null) {
+			visitor = new ListeningVisitor(visitor, options.getListener());
+		}
+		return visitor;
+	}
+
+	/**
+	 * {@link #walk} for the copy operations, which also waits for an
+	 * {@link AsyncFileCopyStrategy} to complete the copies the walk started.
+	 * The files it copies are reported to the listener and throttle as they
+	 * complete, rather than as they are visited.
+	 */
+	private static void copyWalk(Path start, Set<FileVisitOption> visitOptions,
+			FileVisitor<Path> visitor, DirOptions options) throws IOException {
+		if (!(options.getCopyStrategy() instanceof AsyncFileCopyStrategy)) {
+			walk(start, visitOptions, visitor, options, true);
+			return;
+		}
+		AsyncFileCopyStrategy copyStrategy = (AsyncFileCopyStrategy) options.getCopyStrategy();
+		AsyncCopyReporter reporter = new AsyncCopyReporter(visitor, options.getListener(), options.getThrottle());
+		visitor = reporter;
+		if (options.getThrottle() != null) {
+			visitor = new ThrottlingVisitor(visitor, options.getThrottle(), false);
+		}
+		if (options.getListener() != null) {
+			visitor = new ListeningVisitor(visitor, options.getListener(), false);
+		}
+		copyStrategy.setCompletionListener(reporter);
+		try {
+			try {
+				walkDecorated(start, visitOptions, visitor, options);
+			} catch (IOException | RuntimeException | Error e) {
+				try {
+					copyStrategy.await();
+				} catch (IOException e2) {
+					e.addSuppressed(e2);
+				}
+				throw e;
+			}
+			copyStrategy.await();
+		} finally {
+			copyStrategy.setCompletionListener(null);
+		}
+	}
+
+	/**
+	 * Checks a directory that is created if it does not exist
+	 */
+	private static void validateTarget(Path path) {
+		Objects.requireNonNull(path);
+		if (Files.exists(path) && !Files.isDirectory(path)) {
+			throw new IllegalArgumentException(String.format(
+					"%s is not a directory", path.toString()));
+		}
+	}
+
 	private static void validate(Path... paths) {
 		for (Path path : paths) {
 			Objects.requireNonNull(path);
@@ -173,4 +802,112 @@ public class DirUtils {
 			}
 		}
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Reports the files of a copy with an {@link AsyncFileCopyStrategy} to
+	 * the listener and byte throttle, if any: the ones the strategy copies in
+	 * the background once it completes them, and the others (e.g. those left
+	 * as they are by a sync) once they have been visited
+	 */
+	private static class AsyncCopyReporter
+			implements FileVisitor<Path>, AsyncFileCopyStrategy.CompletionListener {
+		private final FileVisitor<Path> visitor;
+		private final DirListener listener;
+		private final DirThrottle throttle;
+		/**
+		 * Whether the file being visited by the thread is being copied in the
+		 * background
+		 */
+		private final ThreadLocal<Boolean> started = new ThreadLocal<>();
+
+		AsyncCopyReporter(FileVisitor<Path> visitor, DirListener listener, DirThrottle throttle) {
+			this.visitor = visitor;
+			this.listener = listener;
+			this.throttle = throttle;
+		}
+
+		@Override
+		public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+			return visitor.preVisitDirectory(dir, attrs);
+		}
+
+		@Override
+		public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+			started.set(Boolean.FALSE);
+			FileVisitResult result = visitor.visitFile(file, attrs);
+			if (!started.get()) {
+				if (throttle != null) {
+					throttle.acquire(attrs.size(), 0);
+				}
+				if (listener != null) {
+					listener.onFile(file, attrs.size());
+				}
+			}
+			return result;
+		}
+
+		@Override
+		public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+			return visitor.visitFileFailed(file, exc);
+		}
+
+		@Override
+		public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+			return visitor.postVisitDirectory(dir, exc);
+		}
+
+		@Override
+		public void onStarted(Path source) {
+			started.set(Boolean.TRUE);
+		}
+
+		@Override
+		public void onCompleted(Path source, long bytes) {
+			if (throttle != null) {
+				try {
+					throttle.acquire(bytes, 0);
+				} catch (InterruptedIOException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			if (listener != null) {
+				listener.onFile(source, bytes);
+			}
+		}
+
+		@Override
+		public void onFailed(Path source, IOException e) {
+			if (listener != null) {
+				listener.onError(source, e);
+			}
+		}
+	}
+
+	/**
+	 * The executor of an operation: the one given in the options, or a pool
+	 * of {@link DirOptions#getParallelism()} threads created for the
+	 * operation and shut down when it is closed, or none (null) if the
+	 * operation runs on the calling thread
+	 */
+	private static class OperationExecutor implements AutoCloseable {
+		private final ExecutorService executor;
+		private final boolean own;
+
+		OperationExecutor(DirOptions options) {
+			own = (options.getExecutor() == null && options.getParallelism() > 1);
+			executor = own ? ExecutorsExt.I.newWorkStealingPool(options.getParallelism(), "DirUtils")
+					: options.getExecutor();
+		}
+
+		ExecutorService get() {
+			return executor;
+		}
+
+		@Override
+		public void close() {
+			if (own) {
+				executor.shutdownNow();
+			}
+		}
+	}
+}
@@ -0,0 +1,33 @@
+package jacle.common.io.dir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Thrown at the end of a directory operation that kept going after individual
+ * entries failed. The failures are available from {@link #getFailures()}, and
+ * the first of them is the cause of this exception.
+ */
+public class DirWalkException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Map<Path, IOException> failures;
+
+	public DirWalkException(Path start, Map<Path, IOException> failures) {
+		super(String.format("[%d] entries failed while walking [%s]", failures.size(), start),
+				failures.isEmpty() ? null : failures.values().iterator().next());
+		this.failures = Collections.unmodifiableMap(new LinkedHashMap<>(failures));
+	}
+
+	/**
+	 * Returns the failed entries, mapped to the exception raised for each, in
+	 * the order they failed
+	 */
+	public Map<Path, IOException> getFailures() {
+		return failures;
+	}
+}
@@ -0,0 +1,70 @@
+package jacle.common.io.dir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The summary returned by {@link DirUtils#sync(Path, Path, DirOptions)}. Paths
+ * are relative to the synchronized directories. Safe to update from multiple
+ * threads.
+ */
+public class SyncResult {
+
+	private final List<Path> copied = Collections.synchronizedList(new ArrayList<Path>());
+	private final List<Path> deleted = Collections.synchronizedList(new ArrayList<Path>());
+	private final AtomicLong skippedCount = new AtomicLong();
+	private final AtomicLong copiedBytes = new AtomicLong();
+
+	public void addCopied(Path relativePath, long bytes) {
+		copied.add(relativePath);
+		copiedBytes.addAndGet(bytes);
+	}
+
+	public void addSkipped() {
+		skippedCount.incrementAndGet();
+	}
+
+	public void addDeleted(Path relativePath) {
+		deleted.add(relativePath);
+	}
+
+	/**
+	 * Returns the files that were (re)copied because they were missing or
+	 * changed in the destination
+	 */
+	public List<Path> getCopied() {
+		return copied;
+	}
+
+	/**
+	 * Returns the destination-only entries that were deleted. A deleted
+	 * directory is listed once, not per contained file.
+	 */
+	public List<Path> getDeleted() {
+		return deleted;
+	}
+
+	/**
+	 * Returns the number of files left alone because the destination already
+	 * matched
+	 */
+	public long getSkippedCount() {
+		return skippedCount.get();
+	}
+
+	/**
+	 * Returns the total size of the copied files
+	 */
+	public long getCopiedBytes() {
+		return copiedBytes.get();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("copied [%d] files ([%d] bytes), skipped [%d], deleted [%d]",
+				copied.size(), copiedBytes.get(), skippedCount.get(), deleted.size());
+	}
+}
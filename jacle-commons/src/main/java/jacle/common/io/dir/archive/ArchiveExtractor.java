@@ -0,0 +1,337 @@
+package jacle.common.io.dir.archive;
+
+import jacle.common.io.dir.DirWalkException;
+import jacle.common.io.dir.util.KnownDirectories;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * Extracts archives into a directory, writing files concurrently on an
+ * executor. Streams are read on the calling thread, and entries up to
+ * {@link ParallelArchiver#SMALL_FILE_SIZE} are handed off to be written, so
+ * archives of many small files extract in parallel. Zip files are read with
+ * random access, so entries are also inflated in parallel.
+ * <p>
+ * Only regular files and directories are extracted; other entries (e.g.
+ * links) are skipped. Entries that would land outside the target directory
+ * (e.g. <code>../x</code>) fail the extraction before anything is written for
+ * them. Existing files are replaced. Where both the archive and the target
+ * file system have them, the permissions of the entries are restored once
+ * everything has been written.
+ */
+public class ArchiveExtractor {
+
+	private final Path to;
+	private final ExecutorService executor;
+	private final Semaphore inFlight = new Semaphore(ParallelArchiver.MAX_PENDING);
+	private final Map<Path, IOException> failures =
+			Collections.synchronizedMap(new LinkedHashMap<Path, IOException>());
+	private final KnownDirectories knownDirs = new KnownDirectories();
+	/**
+	 * The entries extracted, in archive order, by entry name
+	 */
+	private final Map<String, Path> extracted = new LinkedHashMap<>();
+	/**
+	 * The permission bits of the entries that have them, by entry name
+	 */
+	private final Map<String, Integer> modes = new HashMap<>();
+
+	/**
+	 * @param to
+	 *            The directory to extract into (created if needed)
+	 * @param executor
+	 *            Writes the files, or null to write them on the calling
+	 *            thread. Not shut down.
+	 */
+	public ArchiveExtractor(Path to, ExecutorService executor) {
+		this.to = to.toAbsolutePath().normalize();
+		this.executor = executor;
+	}
+
+	/**
+	 * Extracts an archive read from a stream (which is not closed)
+	 */
+	public void extract(InputStream in, ArchiveFormat format) throws IOException {
+		createDirectories(to);
+		try {
+			if (format == ArchiveFormat.ZIP) {
+				CentralDirectoryZipInputStream zipIn = new CentralDirectoryZipInputStream(in);
+				ZipEntry entry;
+				while ((entry = zipIn.getNextEntry()) != null) {
+					extract(entry.getName(), entry.isDirectory(), entry.getTime(), zipIn);
+				}
+				modes.putAll(zipIn.getModes());
+			} else {
+				TarArchiveReader tarIn = new TarArchiveReader(in);
+				TarArchiveReader.Entry entry;
+				while ((entry = tarIn.next()) != null) {
+					if (entry.isFile() || entry.isDirectory()) {
+						modes.put(entry.name, entry.mode);
+						extract(entry.name, entry.isDirectory(), entry.modifiedMillis, tarIn.content());
+					}
+				}
+			}
+		} finally {
+			await();
+		}
+		applyModes();
+	}
+
+	/**
+	 * Extracts an archive file, whose format is detected from its content
+	 */
+	public void extract(Path archive) throws IOException {
+		ArchiveFormat format = ArchiveFormat.detect(archive);
+		if (format != ArchiveFormat.ZIP || executor == null) {
+			try (InputStream in = Files.newInputStream(archive)) {
+				extract(in, format);
+			}
+			return;
+		}
+		createDirectories(to);
+		modes.putAll(ZipCentralDirectory.readModes(archive));
+		try (final ZipFile zipFile = new ZipFile(archive.toFile(), StandardCharsets.UTF_8)) {
+			try {
+				Enumeration<? extends ZipEntry> entries = zipFile.entries();
+				while (entries.hasMoreElements()) {
+					final ZipEntry entry = entries.nextElement();
+					final Path target = resolve(entry.getName());
+					if (entry.isDirectory()) {
+						createDirectories(target);
+						continue;
+					}
+					createDirectories(target.getParent());
+					submit(target, new FileWrite() {
+						@Override
+						public void write() throws IOException {
+							try (InputStream in = zipFile.getInputStream(entry)) {
+								writeFile(target, null, 0, in, entry.getTime());
+							}
+						}
+					});
+				}
+			} finally {
+				await();
+			}
+		}
+		applyModes();
+	}
+
+	private void extract(String name, boolean directory, long modifiedMillis, InputStream content)
+			throws IOException {
+		final Path target = resolve(name);
+		if (directory) {
+			createDirectories(target);
+			return;
+		}
+		createDirectories(target.getParent());
+		// Read just past the small file size, to tell whether it can be handed off
+		final byte[] buffer = read(content, ParallelArchiver.SMALL_FILE_SIZE + 1);
+		final int length = buffer.length;
+		if (length <= ParallelArchiver.SMALL_FILE_SIZE && executor != null) {
+			final long time = modifiedMillis;
+			submit(target, new FileWrite() {
+				@Override
+				public void write() throws IOException {
+					writeFile(target, buffer, length, null, time);
+				}
+			});
+		} else {
+			writeFile(target, buffer, length, content, modifiedMillis);
+		}
+	}
+
+	private interface FileWrite {
+		void write() throws IOException;
+	}
+
+	private void submit(final Path target, final FileWrite write) throws IOException {
+		try {
+			inFlight.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while extracting");
+		}
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						write.write();
+					} catch (IOException e) {
+						failures.put(target, e);
+					} catch (RuntimeException e) {
+						failures.put(target, new IOException(e));
+					} finally {
+						inFlight.release();
+					}
+				}
+			});
+		} catch (RuntimeException e) {
+			inFlight.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Waits for the files handed off to be written, throwing if any failed
+	 */
+	private void await() throws IOException {
+		try {
+			inFlight.acquire(ParallelArchiver.MAX_PENDING);
+			inFlight.release(ParallelArchiver.MAX_PENDING);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while extracting");
+		}
+		if (failures.size() == 1) {
+			throw failures.values().iterator().next();
+		}
+		if (!failures.isEmpty()) {
+			throw new DirWalkException(to, failures);
+		}
+	}
+
+	/**
+	 * Writes the buffered start of a file, followed by the rest of the
+	 * stream, if any
+	 */
+	private static void writeFile(Path target, byte[] start, int length, InputStream rest, long modifiedMillis)
+			throws IOException {
+		try (OutputStream out = Files.newOutputStream(target)) {
+			if (start != null) {
+				out.write(start, 0, length);
+			}
+			if (rest != null) {
+				byte[] buffer = new byte[64 * 1024];
+				int read;
+				while ((read = rest.read(buffer)) > 0) {
+					out.write(buffer, 0, read);
+				}
+			}
+		}
+		if (modifiedMillis >= 0) {
+			Files.setLastModifiedTime(target, FileTime.fromMillis(modifiedMillis));
+		}
+	}
+
+	private static byte[] read(InputStream in, int limit) throws IOException {
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while (content.size() < limit
+				&& (read = in.read(buffer, 0, Math.min(buffer.length, limit - content.size()))) > 0) {
+			content.write(buffer, 0, read);
+		}
+		return content.toByteArray();
+	}
+
+	/**
+	 * Resolves an entry name against the target directory, rejecting names
+	 * that escape it
+	 */
+	private Path resolve(String name) throws IOException {
+		Path target = to.resolve(name).normalize();
+		if (!target.startsWith(to)) {
+			throw new IOException(String.format("Entry [%s] is outside of [%s]", name, to));
+		}
+		extracted.put(name, target);
+		return target;
+	}
+
+	/**
+	 * Sets the permissions of the extracted entries, deepest first, so a
+	 * directory is only made read-only once its contents are written
+	 */
+	private void applyModes() throws IOException {
+		if (modes.isEmpty() || !FileModes.isSupported(to)) {
+			return;
+		}
+		List<Map.Entry<String, Path>> entries = new ArrayList<>(extracted.entrySet());
+		for (int i = entries.size() - 1; i >= 0; i--) {
+			Integer mode = modes.get(entries.get(i).getKey());
+			if (mode != null) {
+				Files.setPosixFilePermissions(entries.get(i).getValue(), FileModes.toPermissions(mode));
+			}
+		}
+	}
+
+	/**
+	 * A {@link ZipInputStream} that reads the central directory once it
+	 * reaches it, for the modes of the entries, which are not in the local
+	 * headers
+	 */
+	private static class CentralDirectoryZipInputStream extends ZipInputStream {
+
+		private Map<String, Integer> modes = Collections.emptyMap();
+
+		CentralDirectoryZipInputStream(InputStream in) {
+			super(in, StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * Looks ahead for the central directory before reading the next
+		 * local header, which would consume the start of it
+		 */
+		@Override
+		public ZipEntry getNextEntry() throws IOException {
+			closeEntry();
+			// The JDK reads through a pushback stream, to return what it
+			// reads past the end of an entry
+			if (in instanceof PushbackInputStream) {
+				PushbackInputStream pushback = (PushbackInputStream) in;
+				byte[] signature = new byte[4];
+				int length = 0;
+				int read;
+				while (length < signature.length
+						&& (read = pushback.read(signature, length, signature.length - length)) > 0) {
+					length += read;
+				}
+				pushback.unread(signature, 0, length);
+				if (length == signature.length && ByteBuffer.wrap(signature).order(ByteOrder.LITTLE_ENDIAN)
+						.getInt() == ZipArchiveWriter.CENTRAL_HEADER) {
+					modes = ZipCentralDirectory.readModes(ByteBuffer.wrap(ByteStreams.toByteArray(pushback)));
+					return null;
+				}
+			}
+			return super.getNextEntry();
+		}
+
+		/**
+		 * Returns the modes of the entries, once {@link #getNextEntry()}
+		 * returned null
+		 */
+		Map<String, Integer> getModes() {
+			return modes;
+		}
+	}
+
+	private void createDirectories(Path dir) throws IOException {
+		knownDirs.create(dir);
+	}
+}
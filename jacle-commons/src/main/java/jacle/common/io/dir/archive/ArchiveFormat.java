@@ -0,0 +1,58 @@
+package jacle.common.io.dir.archive;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * The archive formats supported by {@link ParallelArchiver} and
+ * {@link ArchiveExtractor}
+ */
+public enum ArchiveFormat {
+
+	/**
+	 * Deflated zip, with Zip64 extensions where sizes or counts need them
+	 */
+	ZIP,
+
+	/**
+	 * Uncompressed POSIX (ustar/pax) tar
+	 */
+	TAR;
+
+	private static final byte[] ZIP_MAGIC = { 'P', 'K', 3, 4 };
+	private static final byte[] EMPTY_ZIP_MAGIC = { 'P', 'K', 5, 6 };
+	private static final byte[] TAR_MAGIC = "ustar".getBytes(StandardCharsets.US_ASCII);
+	private static final int TAR_MAGIC_OFFSET = 257;
+
+	/**
+	 * Works out the format of an archive file from its content
+	 *
+	 * @throws IOException
+	 *             If the file cannot be read, or is in neither format
+	 */
+	public static ArchiveFormat detect(Path archive) throws IOException {
+		byte[] header = new byte[TAR_MAGIC_OFFSET + TAR_MAGIC.length];
+		int length = 0;
+		try (InputStream in = Files.newInputStream(archive)) {
+			int read;
+			while (length < header.length && (read = in.read(header, length, header.length - length)) > 0) {
+				length += read;
+			}
+		}
+		if (length >= ZIP_MAGIC.length) {
+			byte[] magic = Arrays.copyOf(header, ZIP_MAGIC.length);
+			if (Arrays.equals(magic, ZIP_MAGIC) || Arrays.equals(magic, EMPTY_ZIP_MAGIC)) {
+				return ZIP;
+			}
+		}
+		if (length == header.length && Arrays.equals(
+				Arrays.copyOfRange(header, TAR_MAGIC_OFFSET, header.length), TAR_MAGIC)) {
+			return TAR;
+		}
+		throw new IOException(String.format("Unrecognized archive format [%s]", archive));
+	}
+}
@@ -0,0 +1,69 @@
+package jacle.common.io.dir.archive;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Writes the entries of an archive in order. Small files are prepared (read,
+ * and compressed where the format calls for it) by
+ * {@link #prepare(String, Path, BasicFileAttributes)}, which may run on any
+ * thread, and written by {@link #write(PreparedEntry)}. Everything else is
+ * called on the writing thread only.
+ */
+abstract class ArchiveWriter {
+
+	/**
+	 * A file entry, ready to be written
+	 */
+	static class PreparedEntry {
+		final String name;
+		final BasicFileAttributes attrs;
+		/**
+		 * The permission bits (see {@link FileModes})
+		 */
+		final int mode;
+		final byte[] data;
+		final long size;
+		final long crc;
+
+		PreparedEntry(String name, BasicFileAttributes attrs, int mode, byte[] data, long size, long crc) {
+			this.name = name;
+			this.attrs = attrs;
+			this.mode = mode;
+			this.data = data;
+			this.size = size;
+			this.crc = crc;
+		}
+	}
+
+	static ArchiveWriter create(ArchiveFormat format, OutputStream out) {
+		switch (format) {
+		case ZIP:
+			return new ZipArchiveWriter(out);
+		case TAR:
+			return new TarArchiveWriter(out);
+		default:
+			throw new IllegalArgumentException(String.format("Unsupported format [%s]", format));
+		}
+	}
+
+	abstract PreparedEntry prepare(String name, Path file, BasicFileAttributes attrs) throws IOException;
+
+	abstract void write(PreparedEntry entry) throws IOException;
+
+	/**
+	 * Writes a file entry by streaming the file through the writing thread
+	 * (for files too large to prepare in memory)
+	 */
+	abstract void write(String name, Path file, BasicFileAttributes attrs) throws IOException;
+
+	abstract void writeDirectory(String name, Path dir, BasicFileAttributes attrs) throws IOException;
+
+	/**
+	 * Writes the end of the archive. The underlying stream is flushed, not
+	 * closed.
+	 */
+	abstract void finish() throws IOException;
+}
@@ -0,0 +1,80 @@
+package jacle.common.io.dir.archive;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Converts between POSIX file permissions and the mode bits (e.g. 0755) that
+ * archives store
+ */
+final class FileModes {
+
+	/**
+	 * The mode of files archived from a file system without POSIX permissions
+	 */
+	static final int DEFAULT_FILE_MODE = 0644;
+
+	/**
+	 * The mode of directories archived from a file system without POSIX
+	 * permissions
+	 */
+	static final int DEFAULT_DIRECTORY_MODE = 0755;
+
+	private FileModes() {
+	}
+
+	/**
+	 * Returns the permission bits of the file, or the default mode for its
+	 * type if its file system has no POSIX permissions
+	 */
+	static int read(Path path, BasicFileAttributes attrs) throws IOException {
+		if (attrs instanceof PosixFileAttributes) {
+			return toMode(((PosixFileAttributes) attrs).permissions());
+		}
+		PosixFileAttributeView view = Files.getFileAttributeView(path, PosixFileAttributeView.class);
+		if (view == null) {
+			return attrs.isDirectory() ? DEFAULT_DIRECTORY_MODE : DEFAULT_FILE_MODE;
+		}
+		return toMode(view.readAttributes().permissions());
+	}
+
+	/**
+	 * Returns whether permissions can be set on the files of the directory's
+	 * file system
+	 */
+	static boolean isSupported(Path dir) {
+		return Files.getFileAttributeView(dir, PosixFileAttributeView.class) != null;
+	}
+
+	static int toMode(Set<PosixFilePermission> permissions) {
+		int mode = 0;
+		for (PosixFilePermission permission : permissions) {
+			mode |= bit(permission);
+		}
+		return mode;
+	}
+
+	static Set<PosixFilePermission> toPermissions(int mode) {
+		Set<PosixFilePermission> permissions = EnumSet.noneOf(PosixFilePermission.class);
+		for (PosixFilePermission permission : PosixFilePermission.values()) {
+			if ((mode & bit(permission)) != 0) {
+				permissions.add(permission);
+			}
+		}
+		return permissions;
+	}
+
+	/**
+	 * The values run from OWNER_READ (0400) to OTHERS_EXECUTE (01)
+	 */
+	private static int bit(PosixFilePermission permission) {
+		return 1 << (8 - permission.ordinal());
+	}
+}
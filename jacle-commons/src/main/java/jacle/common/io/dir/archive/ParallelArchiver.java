@@ -0,0 +1,199 @@
+package jacle.common.io.dir.archive;
+
+import jacle.common.io.dir.archive.ArchiveWriter.PreparedEntry;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.FileVisitor;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Archives the tree it visits (excluding the root directory itself) into a
+ * stream. Files up to {@link #SMALL_FILE_SIZE} are read and compressed by
+ * tasks on the executor, while the visiting thread writes the finished
+ * entries in the order they were visited. Larger files are streamed through
+ * the visiting thread, so memory use stays bounded.
+ * <p>
+ * Only regular files and directories are archived. Must be walked on a single
+ * thread (e.g. by {@link java.nio.file.Files#walkFileTree}), and
+ * {@link #finish()} called after the walk.
+ */
+public class ParallelArchiver implements FileVisitor<Path> {
+
+	/**
+	 * The largest file compressed off the visiting thread
+	 */
+	public static final int SMALL_FILE_SIZE = 1024 * 1024;
+
+	/**
+	 * The most entries waiting to be written
+	 */
+	static final int MAX_PENDING = 64;
+
+	/**
+	 * An entry waiting to be written
+	 */
+	private interface Pending {
+		void write() throws IOException;
+
+		void cancel();
+	}
+
+	private final Path root;
+	private final ArchiveWriter writer;
+	private final ExecutorService executor;
+	private final Deque<Pending> pending = new ArrayDeque<>();
+
+	/**
+	 * @param root
+	 *            The directory being archived; entries are named relative to
+	 *            it
+	 * @param out
+	 *            Receives the archive. Not closed.
+	 * @param executor
+	 *            Runs the compression tasks, or null to do everything on the
+	 *            visiting thread. Not shut down.
+	 */
+	public ParallelArchiver(Path root, OutputStream out, ArchiveFormat format, ExecutorService executor) {
+		this.root = root;
+		this.writer = ArchiveWriter.create(format, out);
+		this.executor = executor;
+	}
+
+	@Override
+	public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) throws IOException {
+		if (!dir.equals(root)) {
+			final String name = entryName(dir) + "/";
+			add(new Pending() {
+				@Override
+				public void write() throws IOException {
+					writer.writeDirectory(name, dir, attrs);
+				}
+
+				@Override
+				public void cancel() {
+				}
+			});
+		}
+		return FileVisitResult.CONTINUE;
+	}
+
+	@Override
+	public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+		if (!attrs.isRegularFile()) {
+			return FileVisitResult.CONTINUE;
+		}
+		final String name = entryName(file);
+		if (executor == null || attrs.size() > SMALL_FILE_SIZE) {
+			add(new Pending() {
+				@Override
+				public void write() throws IOException {
+					writer.write(name, file, attrs);
+				}
+
+				@Override
+				public void cancel() {
+				}
+			});
+			return FileVisitResult.CONTINUE;
+		}
+		final Future<PreparedEntry> prepared = executor.submit(new Callable<PreparedEntry>() {
+			@Override
+			public PreparedEntry call() throws IOException {
+				return writer.prepare(name, file, attrs);
+			}
+		});
+		add(new Pending() {
+			@Override
+			public void write() throws IOException {
+				writer.write(get(prepared));
+			}
+
+			@Override
+			public void cancel() {
+				prepared.cancel(true);
+			}
+		});
+		return FileVisitResult.CONTINUE;
+	}
+
+	@Override
+	public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+		throw exc;
+	}
+
+	@Override
+	public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+		if (exc != null) {
+			throw exc;
+		}
+		return FileVisitResult.CONTINUE;
+	}
+
+	/**
+	 * Writes the remaining entries and the end of the archive
+	 */
+	public void finish() throws IOException {
+		while (!pending.isEmpty()) {
+			pending.removeFirst().write();
+		}
+		writer.finish();
+	}
+
+	/**
+	 * Cancels the entries not yet written, after a failed walk
+	 */
+	public void cancel() {
+		while (!pending.isEmpty()) {
+			pending.removeFirst().cancel();
+		}
+	}
+
+	private void add(Pending entry) throws IOException {
+		pending.addLast(entry);
+		while (pending.size() > MAX_PENDING) {
+			pending.removeFirst().write();
+		}
+	}
+
+	private String entryName(Path path) {
+		StringBuilder name = new StringBuilder();
+		for (Path part : root.relativize(path)) {
+			if (name.length() > 0) {
+				name.append('/');
+			}
+			name.append(part.toString());
+		}
+		return name.toString();
+	}
+
+	private static <T> T get(Future<T> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while archiving");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+}
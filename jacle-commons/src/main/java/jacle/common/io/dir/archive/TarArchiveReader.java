@@ -0,0 +1,246 @@
+package jacle.common.io.dir.archive;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the entries of a tar archive one at a time. Understands ustar and
+ * pax headers (path and size), GNU long names and base-256 sizes.
+ */
+class TarArchiveReader {
+
+	private static final char TYPE_OLD_FILE = '\0';
+	private static final char TYPE_GLOBAL_PAX = 'g';
+	private static final char TYPE_GNU_LONG_NAME = 'L';
+
+	/**
+	 * The header of an entry
+	 */
+	static class Entry {
+		final String name;
+		final char type;
+		/**
+		 * The permission bits (see {@link FileModes})
+		 */
+		final int mode;
+		final long size;
+		final long modifiedMillis;
+
+		Entry(String name, char type, int mode, long size, long modifiedMillis) {
+			this.name = name;
+			this.type = type;
+			this.mode = mode;
+			this.size = size;
+			this.modifiedMillis = modifiedMillis;
+		}
+
+		boolean isFile() {
+			return type == TarArchiveWriter.TYPE_FILE || type == TYPE_OLD_FILE;
+		}
+
+		boolean isDirectory() {
+			return type == TarArchiveWriter.TYPE_DIRECTORY;
+		}
+	}
+
+	private final InputStream in;
+	private long remaining;
+	private long padding;
+
+	TarArchiveReader(InputStream in) {
+		this.in = in;
+	}
+
+	/**
+	 * Skips the rest of the current entry, and reads the next header
+	 *
+	 * @return The header, or null at the end of the archive
+	 */
+	Entry next() throws IOException {
+		String longName = null;
+		Long paxSize = null;
+		while (true) {
+			skip(remaining + padding);
+			remaining = 0;
+			padding = 0;
+			byte[] header = new byte[TarArchiveWriter.BLOCK_SIZE];
+			if (!readBlock(header)) {
+				return null;
+			}
+			if (isZero(header)) {
+				return null;
+			}
+			long checksum = parseOctal(header, 148, 8);
+			for (int i = 148; i < 156; i++) {
+				header[i] = ' ';
+			}
+			if (checksum != TarArchiveWriter.checksum(header)) {
+				throw new IOException("Corrupt tar header (checksum mismatch)");
+			}
+			char type = (char) header[156];
+			long size = parseSize(header);
+			if (paxSize != null) {
+				size = paxSize;
+			}
+			remaining = size;
+			padding = (TarArchiveWriter.BLOCK_SIZE - size % TarArchiveWriter.BLOCK_SIZE) % TarArchiveWriter.BLOCK_SIZE;
+			if (type == TarArchiveWriter.TYPE_PAX) {
+				for (String record : new String(readContent(), StandardCharsets.UTF_8).split("\n")) {
+					int space = record.indexOf(' ');
+					int equals = record.indexOf('=', space + 1);
+					if (space < 0 || equals < 0) {
+						continue;
+					}
+					String key = record.substring(space + 1, equals);
+					String value = record.substring(equals + 1);
+					if (key.equals("path")) {
+						longName = value;
+					} else if (key.equals("size")) {
+						paxSize = Long.parseLong(value);
+					}
+				}
+				continue;
+			}
+			if (type == TYPE_GNU_LONG_NAME) {
+				String name = new String(readContent(), StandardCharsets.UTF_8);
+				int nul = name.indexOf('\0');
+				longName = nul < 0 ? name : name.substring(0, nul);
+				continue;
+			}
+			if (type == TYPE_GLOBAL_PAX) {
+				continue;
+			}
+			String name = longName != null ? longName : parseName(header);
+			return new Entry(name, type, (int) parseOctal(header, 100, 8) & 0777, size,
+					parseOctal(header, 136, 12) * 1000);
+		}
+	}
+
+	/**
+	 * Returns the content of the entry returned by the last {@link #next()}.
+	 * Only valid until the next call.
+	 */
+	InputStream content() {
+		return new InputStream() {
+			@Override
+			public int read() throws IOException {
+				byte[] b = new byte[1];
+				return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				if (remaining <= 0) {
+					return -1;
+				}
+				int read = in.read(b, off, (int) Math.min(len, remaining));
+				if (read < 0) {
+					throw new EOFException("Truncated tar entry");
+				}
+				remaining -= read;
+				return read;
+			}
+		};
+	}
+
+	private byte[] readContent() throws IOException {
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		InputStream stream = content();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = stream.read(buffer)) > 0) {
+			content.write(buffer, 0, read);
+		}
+		return content.toByteArray();
+	}
+
+	private boolean readBlock(byte[] block) throws IOException {
+		int length = 0;
+		while (length < block.length) {
+			int read = in.read(block, length, block.length - length);
+			if (read < 0) {
+				if (length == 0) {
+					// Tolerate archives missing the end-of-archive blocks
+					return false;
+				}
+				throw new EOFException("Truncated tar header");
+			}
+			length += read;
+		}
+		return true;
+	}
+
+	private void skip(long count) throws IOException {
+		byte[] buffer = null;
+		while (count > 0) {
+			long skipped = in.skip(count);
+			if (skipped <= 0) {
+				if (buffer == null) {
+					buffer = new byte[8192];
+				}
+				int read = in.read(buffer, 0, (int) Math.min(buffer.length, count));
+				if (read < 0) {
+					throw new EOFException("Truncated tar entry");
+				}
+				skipped = read;
+			}
+			count -= skipped;
+		}
+	}
+
+	private static String parseName(byte[] header) {
+		String name = parseString(header, 0, TarArchiveWriter.NAME_LENGTH);
+		if (parseString(header, 257, 5).equals("ustar")) {
+			String prefix = parseString(header, 345, TarArchiveWriter.PREFIX_LENGTH);
+			if (!prefix.isEmpty()) {
+				name = prefix + "/" + name;
+			}
+		}
+		return name;
+	}
+
+	private static String parseString(byte[] header, int offset, int length) {
+		int end = offset;
+		while (end < offset + length && header[end] != 0) {
+			end++;
+		}
+		return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+	}
+
+	private static long parseSize(byte[] header) {
+		if ((header[124] & 0x80) != 0) {
+			// GNU base-256
+			long size = header[124] & 0x7F;
+			for (int i = 125; i < 136; i++) {
+				size = (size << 8) | (header[i] & 0xFF);
+			}
+			return size;
+		}
+		return parseOctal(header, 124, 12);
+	}
+
+	private static long parseOctal(byte[] header, int offset, int length) {
+		long value = 0;
+		for (int i = offset; i < offset + length; i++) {
+			byte b = header[i];
+			if (b >= '0' && b <= '7') {
+				value = (value << 3) + (b - '0');
+			} else if (b == 0 || (b == ' ' && value > 0)) {
+				break;
+			}
+		}
+		return value;
+	}
+
+	private static boolean isZero(byte[] block) {
+		for (byte b : block) {
+			if (b != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,205 @@
+package jacle.common.io.dir.archive;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Writes a POSIX tar archive: ustar headers, preceded by a pax extended
+ * header for names or sizes that do not fit them
+ */
+class TarArchiveWriter extends ArchiveWriter {
+
+	static final int BLOCK_SIZE = 512;
+	static final char TYPE_FILE = '0';
+	static final char TYPE_DIRECTORY = '5';
+	static final char TYPE_PAX = 'x';
+	static final int NAME_LENGTH = 100;
+	static final int PREFIX_LENGTH = 155;
+	/**
+	 * The largest size that fits the 11 octal digits of a ustar header
+	 */
+	static final long MAX_SIZE = 077777777777L;
+
+	private final OutputStream out;
+
+	TarArchiveWriter(OutputStream out) {
+		this.out = new BufferedOutputStream(out, 64 * 1024);
+	}
+
+	@Override
+	PreparedEntry prepare(String name, Path file, BasicFileAttributes attrs) throws IOException {
+		byte[] content = Files.readAllBytes(file);
+		return new PreparedEntry(name, attrs, FileModes.read(file, attrs), content, content.length, 0);
+	}
+
+	@Override
+	void write(PreparedEntry entry) throws IOException {
+		writeHeader(entry.name, TYPE_FILE, entry.mode, entry.size, entry.attrs.lastModifiedTime().toMillis());
+		out.write(entry.data);
+		pad(entry.size);
+	}
+
+	@Override
+	void write(String name, Path file, BasicFileAttributes attrs) throws IOException {
+		// The size goes in the header, so it must not change while the file is written
+		long size = attrs.size();
+		writeHeader(name, TYPE_FILE, FileModes.read(file, attrs), size, attrs.lastModifiedTime().toMillis());
+		long remaining = size;
+		try (InputStream in = Files.newInputStream(file)) {
+			byte[] buffer = new byte[64 * 1024];
+			int read;
+			while (remaining > 0 && (read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) > 0) {
+				out.write(buffer, 0, read);
+				remaining -= read;
+			}
+		}
+		if (remaining > 0) {
+			throw new IOException(String.format("File shrank while archiving [%s]", file));
+		}
+		pad(size);
+	}
+
+	@Override
+	void writeDirectory(String name, Path dir, BasicFileAttributes attrs) throws IOException {
+		writeHeader(name, TYPE_DIRECTORY, FileModes.read(dir, attrs), 0, attrs.lastModifiedTime().toMillis());
+	}
+
+	@Override
+	void finish() throws IOException {
+		out.write(new byte[2 * BLOCK_SIZE]);
+		out.flush();
+	}
+
+	private void writeHeader(String name, char type, int mode, long size, long modifiedMillis) throws IOException {
+		byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+		int split = splitName(nameBytes);
+		if (split < 0 || size > MAX_SIZE) {
+			writePaxHeader(name, size, split < 0);
+			split = 0;
+		}
+		byte[] header = new byte[BLOCK_SIZE];
+		if (split > 0) {
+			put(header, 0, nameBytes, split + 1, nameBytes.length - split - 1, NAME_LENGTH);
+			put(header, 345, nameBytes, 0, split, PREFIX_LENGTH);
+		} else {
+			put(header, 0, nameBytes, 0, nameBytes.length, NAME_LENGTH);
+		}
+		putOctal(header, 100, 8, mode);
+		putOctal(header, 108, 8, 0);
+		putOctal(header, 116, 8, 0);
+		putOctal(header, 124, 12, Math.min(size, MAX_SIZE));
+		putOctal(header, 136, 12, Math.max(0, modifiedMillis / 1000));
+		header[156] = (byte) type;
+		put(header, 257, "ustar\0".getBytes(StandardCharsets.US_ASCII));
+		put(header, 263, "00".getBytes(StandardCharsets.US_ASCII));
+		putChecksum(header);
+		out.write(header);
+	}
+
+	/**
+	 * Writes a pax header carrying the full name and/or size
+	 */
+	private void writePaxHeader(String name, long size, boolean longName) throws IOException {
+		ByteArrayOutputStream records = new ByteArrayOutputStream();
+		if (longName) {
+			records.write(paxRecord("path", name));
+		}
+		if (size > MAX_SIZE) {
+			records.write(paxRecord("size", Long.toString(size)));
+		}
+		byte[] data = records.toByteArray();
+		byte[] header = new byte[BLOCK_SIZE];
+		put(header, 0, "././@PaxHeader".getBytes(StandardCharsets.US_ASCII));
+		putOctal(header, 100, 8, FileModes.DEFAULT_FILE_MODE);
+		putOctal(header, 108, 8, 0);
+		putOctal(header, 116, 8, 0);
+		putOctal(header, 124, 12, data.length);
+		putOctal(header, 136, 12, 0);
+		header[156] = (byte) TYPE_PAX;
+		put(header, 257, "ustar\0".getBytes(StandardCharsets.US_ASCII));
+		put(header, 263, "00".getBytes(StandardCharsets.US_ASCII));
+		putChecksum(header);
+		out.write(header);
+		out.write(data);
+		pad(data.length);
+	}
+
+	/**
+	 * Formats a "length key=value\n" record, where the length includes itself
+	 */
+	private static byte[] paxRecord(String key, String value) {
+		int length = key.length() + value.getBytes(StandardCharsets.UTF_8).length + 3;
+		int total = length + Integer.toString(length).length();
+		if (Integer.toString(total).length() > Integer.toString(length).length()) {
+			total++;
+		}
+		return (total + " " + key + "=" + value + "\n").getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Returns the index of the separator at which the name splits into the
+	 * prefix and name fields, 0 if it fits the name field alone, or -1 if it
+	 * does not fit
+	 */
+	private static int splitName(byte[] name) {
+		if (name.length <= NAME_LENGTH) {
+			return 0;
+		}
+		for (int i = Math.min(PREFIX_LENGTH, name.length - 1); i > 0; i--) {
+			if (name[i] == '/' && name.length - i - 1 <= NAME_LENGTH && name.length - i - 1 > 0) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private void pad(long size) throws IOException {
+		int remainder = (int) (size % BLOCK_SIZE);
+		if (remainder > 0) {
+			out.write(new byte[BLOCK_SIZE - remainder]);
+		}
+	}
+
+	private static void put(byte[] header, int offset, byte[] value) {
+		put(header, offset, value, 0, value.length, value.length);
+	}
+
+	private static void put(byte[] header, int offset, byte[] value, int start, int length, int max) {
+		System.arraycopy(value, start, header, offset, Math.min(length, max));
+	}
+
+	private static void putOctal(byte[] header, int offset, int length, long value) {
+		String octal = Long.toOctalString(value);
+		StringBuilder field = new StringBuilder();
+		for (int i = octal.length(); i < length - 1; i++) {
+			field.append('0');
+		}
+		field.append(octal);
+		put(header, offset, field.toString().getBytes(StandardCharsets.US_ASCII));
+	}
+
+	private static void putChecksum(byte[] header) {
+		for (int i = 148; i < 156; i++) {
+			header[i] = ' ';
+		}
+		long checksum = checksum(header);
+		putOctal(header, 148, 7, checksum);
+		header[154] = 0;
+		header[155] = ' ';
+	}
+
+	static long checksum(byte[] header) {
+		long sum = 0;
+		for (byte b : header) {
+			sum += b & 0xFF;
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,298 @@
+package jacle.common.io.dir.archive;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import com.google.common.io.CountingOutputStream;
+
+/**
+ * Writes a zip archive whose entries may have been deflated ahead of time,
+ * which {@link java.util.zip.ZipOutputStream} does not allow. Entry names are
+ * UTF-8, and Zip64 records are added only where a size, offset or count does
+ * not fit the original format.
+ */
+class ZipArchiveWriter extends ArchiveWriter {
+
+	private static final int LOCAL_HEADER = 0x04034b50;
+	private static final int DATA_DESCRIPTOR = 0x08074b50;
+	static final int CENTRAL_HEADER = 0x02014b50;
+	static final int END = 0x06054b50;
+	private static final int ZIP64_END = 0x06064b50;
+	static final int ZIP64_LOCATOR = 0x07064b50;
+	static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+	private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+	private static final int ZIP64_EXTRA = 0x0001;
+	private static final int VERSION = 20;
+	private static final int VERSION_ZIP64 = 45;
+	/**
+	 * Unix, with the same version
+	 */
+	private static final int VERSION_MADE_BY = (3 << 8) | VERSION_ZIP64;
+	private static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+	private static final int FLAG_UTF8 = 1 << 11;
+	private static final int METHOD_STORED = 0;
+	private static final int METHOD_DEFLATED = 8;
+	private static final int UNIX_FILE = 0100000;
+	private static final int UNIX_DIRECTORY = 040000;
+	private static final int DOS_DIRECTORY = 0x10;
+
+	/**
+	 * What the central directory needs to know about an entry
+	 */
+	private static class CentralEntry {
+		byte[] name;
+		int flags;
+		int method;
+		long dosTime;
+		long crc;
+		long compressedSize;
+		long size;
+		long offset;
+		long externalAttrs;
+	}
+
+	private final CountingOutputStream out;
+	private final List<CentralEntry> entries = new ArrayList<>();
+
+	ZipArchiveWriter(OutputStream out) {
+		this.out = new CountingOutputStream(new BufferedOutputStream(out, 64 * 1024));
+	}
+
+	@Override
+	PreparedEntry prepare(String name, Path file, BasicFileAttributes attrs) throws IOException {
+		byte[] content = Files.readAllBytes(file);
+		CRC32 crc = new CRC32();
+		crc.update(content);
+		ByteArrayOutputStream deflated = new ByteArrayOutputStream(content.length / 2 + 64);
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		try (DeflaterOutputStream deflaterOut = new DeflaterOutputStream(deflated, deflater)) {
+			deflaterOut.write(content);
+		} finally {
+			deflater.end();
+		}
+		return new PreparedEntry(name, attrs, FileModes.read(file, attrs), deflated.toByteArray(), content.length,
+				crc.getValue());
+	}
+
+	@Override
+	void write(PreparedEntry entry) throws IOException {
+		CentralEntry central = newEntry(entry.name, entry.attrs, METHOD_DEFLATED, 0, (UNIX_FILE | entry.mode) << 16);
+		central.crc = entry.crc;
+		central.compressedSize = entry.data.length;
+		central.size = entry.size;
+		writeLocalHeader(central);
+		out.write(entry.data);
+	}
+
+	@Override
+	void write(String name, Path file, BasicFileAttributes attrs) throws IOException {
+		CentralEntry central = newEntry(name, attrs, METHOD_DEFLATED, FLAG_DATA_DESCRIPTOR,
+				(UNIX_FILE | FileModes.read(file, attrs)) << 16);
+		writeLocalHeader(central);
+		long start = out.getCount();
+		CRC32 crc = new CRC32();
+		long size = 0;
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		try (InputStream in = Files.newInputStream(file);
+				DeflaterOutputStream deflaterOut = new DeflaterOutputStream(new FilterOutputStream(out) {
+					@Override
+					public void write(byte[] b, int off, int len) throws IOException {
+						out.write(b, off, len);
+					}
+
+					@Override
+					public void close() {
+						// Leave the archive open
+					}
+				}, deflater, 64 * 1024)) {
+			byte[] buffer = new byte[64 * 1024];
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				crc.update(buffer, 0, read);
+				deflaterOut.write(buffer, 0, read);
+				size += read;
+			}
+		} finally {
+			deflater.end();
+		}
+		central.crc = crc.getValue();
+		central.compressedSize = out.getCount() - start;
+		central.size = size;
+		// Like ZipInputStream, readers expect 8 byte sizes only where needed
+		boolean zip64 = central.size >= ZIP64_MAGIC || central.compressedSize >= ZIP64_MAGIC;
+		ByteBuffer descriptor = buffer(zip64 ? 24 : 16);
+		descriptor.putInt(DATA_DESCRIPTOR);
+		descriptor.putInt((int) central.crc);
+		if (zip64) {
+			descriptor.putLong(central.compressedSize);
+			descriptor.putLong(central.size);
+		} else {
+			descriptor.putInt((int) central.compressedSize);
+			descriptor.putInt((int) central.size);
+		}
+		write(descriptor);
+	}
+
+	@Override
+	void writeDirectory(String name, Path dir, BasicFileAttributes attrs) throws IOException {
+		CentralEntry central = newEntry(name, attrs, METHOD_STORED, 0,
+				((UNIX_DIRECTORY | FileModes.read(dir, attrs)) << 16) | DOS_DIRECTORY);
+		writeLocalHeader(central);
+	}
+
+	@Override
+	void finish() throws IOException {
+		long centralOffset = out.getCount();
+		for (CentralEntry entry : entries) {
+			writeCentralHeader(entry);
+		}
+		long centralSize = out.getCount() - centralOffset;
+		long count = entries.size();
+		if (count >= ZIP64_MAGIC_COUNT || centralOffset >= ZIP64_MAGIC || centralSize >= ZIP64_MAGIC) {
+			long zip64EndOffset = out.getCount();
+			ByteBuffer zip64End = buffer(56);
+			zip64End.putInt(ZIP64_END);
+			zip64End.putLong(44);
+			zip64End.putShort((short) VERSION_MADE_BY);
+			zip64End.putShort((short) VERSION_ZIP64);
+			zip64End.putInt(0);
+			zip64End.putInt(0);
+			zip64End.putLong(count);
+			zip64End.putLong(count);
+			zip64End.putLong(centralSize);
+			zip64End.putLong(centralOffset);
+			write(zip64End);
+			ByteBuffer locator = buffer(20);
+			locator.putInt(ZIP64_LOCATOR);
+			locator.putInt(0);
+			locator.putLong(zip64EndOffset);
+			locator.putInt(1);
+			write(locator);
+		}
+		ByteBuffer end = buffer(22);
+		end.putInt(END);
+		end.putShort((short) 0);
+		end.putShort((short) 0);
+		end.putShort((short) Math.min(count, ZIP64_MAGIC_COUNT));
+		end.putShort((short) Math.min(count, ZIP64_MAGIC_COUNT));
+		end.putInt((int) Math.min(centralSize, ZIP64_MAGIC));
+		end.putInt((int) Math.min(centralOffset, ZIP64_MAGIC));
+		end.putShort((short) 0);
+		write(end);
+		out.flush();
+	}
+
+	private CentralEntry newEntry(String name, BasicFileAttributes attrs, int method, int flags,
+			long externalAttrs) {
+		CentralEntry entry = new CentralEntry();
+		entry.name = name.getBytes(StandardCharsets.UTF_8);
+		entry.flags = flags | FLAG_UTF8;
+		entry.method = method;
+		entry.dosTime = dosTime(attrs.lastModifiedTime().toMillis());
+		entry.offset = out.getCount();
+		entry.externalAttrs = externalAttrs;
+		entries.add(entry);
+		return entry;
+	}
+
+	private void writeLocalHeader(CentralEntry entry) throws IOException {
+		ByteBuffer header = buffer(30 + entry.name.length);
+		header.putInt(LOCAL_HEADER);
+		header.putShort((short) VERSION);
+		header.putShort((short) entry.flags);
+		header.putShort((short) entry.method);
+		header.putInt((int) entry.dosTime);
+		header.putInt((int) entry.crc);
+		header.putInt((int) entry.compressedSize);
+		header.putInt((int) entry.size);
+		header.putShort((short) entry.name.length);
+		header.putShort((short) 0);
+		header.put(entry.name);
+		write(header);
+	}
+
+	private void writeCentralHeader(CentralEntry entry) throws IOException {
+		List<Long> zip64Fields = new ArrayList<>(3);
+		long size = zip64Field(entry.size, zip64Fields);
+		long compressedSize = zip64Field(entry.compressedSize, zip64Fields);
+		long offset = zip64Field(entry.offset, zip64Fields);
+		int extraLength = zip64Fields.isEmpty() ? 0 : 4 + 8 * zip64Fields.size();
+		ByteBuffer header = buffer(46 + entry.name.length + extraLength);
+		header.putInt(CENTRAL_HEADER);
+		header.putShort((short) VERSION_MADE_BY);
+		header.putShort((short) (zip64Fields.isEmpty() ? VERSION : VERSION_ZIP64));
+		header.putShort((short) entry.flags);
+		header.putShort((short) entry.method);
+		header.putInt((int) entry.dosTime);
+		header.putInt((int) entry.crc);
+		header.putInt((int) compressedSize);
+		header.putInt((int) size);
+		header.putShort((short) entry.name.length);
+		header.putShort((short) extraLength);
+		header.putShort((short) 0);
+		header.putShort((short) 0);
+		header.putShort((short) 0);
+		header.putInt((int) entry.externalAttrs);
+		header.putInt((int) offset);
+		header.put(entry.name);
+		if (!zip64Fields.isEmpty()) {
+			header.putShort((short) ZIP64_EXTRA);
+			header.putShort((short) (8 * zip64Fields.size()));
+			for (long field : zip64Fields) {
+				header.putLong(field);
+			}
+		}
+		write(header);
+	}
+
+	/**
+	 * Returns the value to put in the header, moving it to the Zip64 extra
+	 * field if it does not fit
+	 */
+	private static long zip64Field(long value, List<Long> zip64Fields) {
+		if (value < ZIP64_MAGIC) {
+			return value;
+		}
+		zip64Fields.add(value);
+		return ZIP64_MAGIC;
+	}
+
+	private static long dosTime(long millis) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTimeInMillis(millis);
+		int year = calendar.get(Calendar.YEAR);
+		if (year < 1980) {
+			return (1 << 21) | (1 << 16);
+		}
+		return (year - 1980) << 25
+				| (calendar.get(Calendar.MONTH) + 1) << 21
+				| calendar.get(Calendar.DAY_OF_MONTH) << 16
+				| calendar.get(Calendar.HOUR_OF_DAY) << 11
+				| calendar.get(Calendar.MINUTE) << 5
+				| calendar.get(Calendar.SECOND) >> 1;
+	}
+
+	private static ByteBuffer buffer(int size) {
+		return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private void write(ByteBuffer buffer) throws IOException {
+		out.write(buffer.array(), 0, buffer.position());
+	}
+}
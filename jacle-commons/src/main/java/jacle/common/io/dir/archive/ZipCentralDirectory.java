@@ -0,0 +1,104 @@
+package jacle.common.io.dir.archive;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads the file modes from the central directory of a zip archive, which
+ * {@link java.util.zip.ZipEntry} does not expose. Only entries made on Unix
+ * carry a mode.
+ */
+final class ZipCentralDirectory {
+
+	private static final int HEADER_LENGTH = 46;
+	private static final int END_LENGTH = 22;
+	private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+	private static final int ZIP64_LOCATOR_LENGTH = 20;
+	private static final int ZIP64_END_LENGTH = 56;
+	private static final int HOST_UNIX = 3;
+
+	private ZipCentralDirectory() {
+	}
+
+	/**
+	 * Returns the modes of the entries in the central directory at the start
+	 * of the buffer, by entry name
+	 */
+	static Map<String, Integer> readModes(ByteBuffer central) {
+		central.order(ByteOrder.LITTLE_ENDIAN);
+		Map<String, Integer> modes = new HashMap<>();
+		int position = central.position();
+		while (position + HEADER_LENGTH <= central.limit()
+				&& central.getInt(position) == ZipArchiveWriter.CENTRAL_HEADER) {
+			int madeBy = central.getShort(position + 4) & 0xFFFF;
+			int nameLength = central.getShort(position + 28) & 0xFFFF;
+			int extraLength = central.getShort(position + 30) & 0xFFFF;
+			int commentLength = central.getShort(position + 32) & 0xFFFF;
+			int mode = (central.getInt(position + 38) >>> 16) & 0777;
+			if (position + HEADER_LENGTH + nameLength > central.limit()) {
+				break;
+			}
+			if ((madeBy >> 8) == HOST_UNIX && mode != 0) {
+				byte[] name = new byte[nameLength];
+				for (int i = 0; i < nameLength; i++) {
+					name[i] = central.get(position + HEADER_LENGTH + i);
+				}
+				modes.put(new String(name, StandardCharsets.UTF_8), mode);
+			}
+			position += HEADER_LENGTH + nameLength + extraLength + commentLength;
+		}
+		return modes;
+	}
+
+	/**
+	 * Returns the modes of the entries of a zip file, by entry name, locating
+	 * the central directory from the end records
+	 */
+	static Map<String, Integer> readModes(Path archive) throws IOException {
+		try (SeekableByteChannel channel = Files.newByteChannel(archive)) {
+			long size = channel.size();
+			int tailLength = (int) Math.min(size, END_LENGTH + MAX_COMMENT_LENGTH);
+			ByteBuffer tail = read(channel, size - tailLength, tailLength);
+			int end = tailLength - END_LENGTH;
+			while (end >= 0 && tail.getInt(end) != ZipArchiveWriter.END) {
+				end--;
+			}
+			if (end < 0) {
+				throw new IOException(String.format("No end of central directory in [%s]", archive));
+			}
+			long centralSize = tail.getInt(end + 12) & ZipArchiveWriter.ZIP64_MAGIC;
+			long centralOffset = tail.getInt(end + 16) & ZipArchiveWriter.ZIP64_MAGIC;
+			int locator = end - ZIP64_LOCATOR_LENGTH;
+			if ((centralSize == ZipArchiveWriter.ZIP64_MAGIC || centralOffset == ZipArchiveWriter.ZIP64_MAGIC)
+					&& locator >= 0 && tail.getInt(locator) == ZipArchiveWriter.ZIP64_LOCATOR) {
+				ByteBuffer zip64End = read(channel, tail.getLong(locator + 8), ZIP64_END_LENGTH);
+				centralSize = zip64End.getLong(40);
+				centralOffset = zip64End.getLong(48);
+			}
+			if (centralSize > Integer.MAX_VALUE) {
+				throw new IOException(String.format("Central directory too large [%s]", archive));
+			}
+			return readModes(read(channel, centralOffset, (int) centralSize));
+		}
+	}
+
+	private static ByteBuffer read(SeekableByteChannel channel, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		channel.position(position);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				throw new EOFException("Truncated zip archive");
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+}
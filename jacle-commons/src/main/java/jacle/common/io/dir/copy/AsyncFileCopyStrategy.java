@@ -0,0 +1,64 @@
+package jacle.common.io.dir.copy;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * A {@link FileCopyStrategy} whose {@link #copy} may return before the copy
+ * has completed, so that the walk can move on to the next file. The
+ * {@link jacle.common.io.dir.DirUtils} copy operations call {@link #await()}
+ * before returning.
+ * <p>
+ * The copies in flight, their failures and the {@link CompletionListener}
+ * belong to the instance rather than to an operation, so an instance must
+ * not be used by two operations at once: {@link #await()} would wait for, and
+ * report the failures of, the copies of both.
+ */
+public interface AsyncFileCopyStrategy extends FileCopyStrategy {
+
+	/**
+	 * Blocks until every copy started so far has completed
+	 *
+	 * @throws IOException
+	 *             If any of them failed (a
+	 *             {@link jacle.common.io.dir.DirWalkException} if more than
+	 *             one did). The failures are forgotten once reported.
+	 */
+	public void await() throws IOException;
+
+	/**
+	 * Sets the listener told about the copies that {@link #copy} leaves
+	 * running, or null for none. The {@link jacle.common.io.dir.DirUtils}
+	 * copy operations set it for the duration of the operation, to report
+	 * those files to the {@link jacle.common.io.dir.DirOptions} listener and
+	 * throttle once they have actually been copied.
+	 */
+	public void setCompletionListener(CompletionListener listener);
+
+	/**
+	 * Told about the copies that continue after {@link #copy} returns. Copies
+	 * that complete before it returns are not reported.
+	 */
+	public interface CompletionListener {
+
+		/**
+		 * Called by {@link #copy}, on the calling thread, before it returns
+		 * with the copy of the file still running
+		 */
+		public void onStarted(Path source);
+
+		/**
+		 * Called once the copy has completed, before {@link #await()} returns
+		 *
+		 * @param bytes
+		 *            The number of bytes copied
+		 */
+		public void onCompleted(Path source, long bytes);
+
+		/**
+		 * Called once the copy has failed, before {@link #await()} returns
+		 * (and throws the failure)
+		 */
+		public void onFailed(Path source, IOException e);
+	}
+}
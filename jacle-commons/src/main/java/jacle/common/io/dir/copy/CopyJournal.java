@@ -0,0 +1,123 @@
+package jacle.common.io.dir.copy;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An append-only record of the files and directories a copy has completed,
+ * so that an interrupted copy can be resumed (see
+ * {@link jacle.common.io.dir.visitors.JournalingVisitor}). Each record is one
+ * line, written as soon as the entry is done:
+ * <ul>
+ * <li><code>F &lt;size&gt; &lt;modified-millis&gt; &lt;path&gt;</code> for a
+ * copied file</li>
+ * <li><code>D &lt;path&gt;</code> for a directory whose whole sub-tree was
+ * copied</li>
+ * </ul>
+ * Paths are relative to the root of the copy. A torn last line (from a crash
+ * while writing it) is ignored. Records are flushed to the operating system
+ * but not forced to disk, so the journal survives a process crash, not
+ * necessarily a power loss. Thread safe.
+ */
+public class CopyJournal implements Closeable {
+
+	/**
+	 * The name of the journal file kept in the destination directory
+	 */
+	public static final String FILE_NAME = ".jacle-copy.journal";
+
+	private final Path journalFile;
+	private final Set<String> doneFiles = ConcurrentHashMap.newKeySet();
+	private final Set<String> doneDirectories = ConcurrentHashMap.newKeySet();
+	private final Writer writer;
+
+	/**
+	 * Loads the existing records of the journal (if any), and opens it for
+	 * appending
+	 */
+	public CopyJournal(Path journalFile) throws IOException {
+		this.journalFile = journalFile;
+		load();
+		this.writer = Files.newBufferedWriter(journalFile, StandardCharsets.UTF_8,
+				StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+	}
+
+	private void load() throws IOException {
+		String content;
+		try {
+			content = new String(Files.readAllBytes(journalFile), StandardCharsets.UTF_8);
+		} catch (NoSuchFileException e) {
+			return;
+		}
+		int end = content.lastIndexOf('\n');
+		if (end < 0) {
+			return;
+		}
+		try (BufferedReader reader = new BufferedReader(new java.io.StringReader(content.substring(0, end)))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith("F ")) {
+					doneFiles.add(line.substring(2));
+				} else if (line.startsWith("D ")) {
+					doneDirectories.add(line.substring(2));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns whether the file was copied by an earlier run, and has not
+	 * changed (size and modification time) since
+	 */
+	public boolean isFileDone(String relativePath, long size, long modifiedMillis) {
+		return doneFiles.contains(fileKey(relativePath, size, modifiedMillis));
+	}
+
+	/**
+	 * Returns whether the whole sub-tree of the directory was copied by an
+	 * earlier run
+	 */
+	public boolean isDirectoryDone(String relativePath) {
+		return doneDirectories.contains(relativePath);
+	}
+
+	public void fileDone(String relativePath, long size, long modifiedMillis) throws IOException {
+		append("F " + fileKey(relativePath, size, modifiedMillis));
+	}
+
+	public void directoryDone(String relativePath) throws IOException {
+		append("D " + relativePath);
+	}
+
+	private synchronized void append(String record) throws IOException {
+		writer.write(record);
+		writer.write('\n');
+		writer.flush();
+	}
+
+	private static String fileKey(String relativePath, long size, long modifiedMillis) {
+		return size + " " + modifiedMillis + " " + relativePath;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		writer.close();
+	}
+
+	/**
+	 * Closes and deletes the journal, once the copy has completed
+	 */
+	public void delete() throws IOException {
+		close();
+		Files.deleteIfExists(journalFile);
+	}
+}
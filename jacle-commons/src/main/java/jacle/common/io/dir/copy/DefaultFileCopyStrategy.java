@@ -0,0 +1,19 @@
+package jacle.common.io.dir.copy;
+
+import java.io.IOException;
+import java.nio.file.CopyOption;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Copies with {@link Files#copy(Path, Path, CopyOption...)}
+ */
+public class DefaultFileCopyStrategy implements FileCopyStrategy {
+
+	@Override
+	public void copy(Path source, Path target, BasicFileAttributes sourceAttrs, CopyOption... options)
+			throws IOException {
+		Files.copy(source, target, options);
+	}
+}
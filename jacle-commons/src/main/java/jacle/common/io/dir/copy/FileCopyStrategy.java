@@ -0,0 +1,36 @@
+package jacle.common.io.dir.copy;
+
+import java.io.IOException;
+import java.nio.file.CopyOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Copies a single file on behalf of the copy visitors (see
+ * {@link jacle.common.io.dir.visitors.CopyDirVisitor}). Implementations must be
+ * thread safe, as they are shared by all files of a (possibly parallel)
+ * operation.
+ */
+public interface FileCopyStrategy {
+
+	/**
+	 * Copies with {@link java.nio.file.Files#copy(Path, Path, CopyOption...)}
+	 */
+	public static final FileCopyStrategy DEFAULT = new DefaultFileCopyStrategy();
+
+	/**
+	 * Copies <code>source</code> to <code>target</code>
+	 *
+	 * @param source
+	 *            The file to copy
+	 * @param target
+	 *            The file to create
+	 * @param sourceAttrs
+	 *            The attributes of the source, as read by the walker
+	 * @param options
+	 *            The same options accepted by
+	 *            {@link java.nio.file.Files#copy(Path, Path, CopyOption...)}
+	 */
+	public void copy(Path source, Path target, BasicFileAttributes sourceAttrs, CopyOption... options)
+			throws IOException;
+}
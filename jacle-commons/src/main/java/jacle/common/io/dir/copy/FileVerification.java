@@ -0,0 +1,88 @@
+package jacle.common.io.dir.copy;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * The checksums of a copied file, as read from the source during the copy
+ * and read back from the target afterwards (see
+ * {@link VerifyingCopyStrategy})
+ */
+public class FileVerification {
+
+	private final Path source;
+	private final Path target;
+	private final long sourceSize;
+	private final long sourceCrc32c;
+	private final byte[] sourceSha256;
+	private final long targetSize;
+	private final long targetCrc32c;
+	private final byte[] targetSha256;
+
+	public FileVerification(Path source, Path target,
+			long sourceSize, long sourceCrc32c, byte[] sourceSha256,
+			long targetSize, long targetCrc32c, byte[] targetSha256) {
+		this.source = source;
+		this.target = target;
+		this.sourceSize = sourceSize;
+		this.sourceCrc32c = sourceCrc32c;
+		this.sourceSha256 = sourceSha256;
+		this.targetSize = targetSize;
+		this.targetCrc32c = targetCrc32c;
+		this.targetSha256 = targetSha256;
+	}
+
+	/**
+	 * Returns whether the sizes and both checksums match
+	 */
+	public boolean isMatch() {
+		return sourceSize == targetSize && sourceCrc32c == targetCrc32c
+				&& Arrays.equals(sourceSha256, targetSha256);
+	}
+
+	public Path getSource() {
+		return source;
+	}
+
+	public Path getTarget() {
+		return target;
+	}
+
+	public long getSourceSize() {
+		return sourceSize;
+	}
+
+	public long getSourceCrc32c() {
+		return sourceCrc32c;
+	}
+
+	public byte[] getSourceSha256() {
+		return sourceSha256.clone();
+	}
+
+	public long getTargetSize() {
+		return targetSize;
+	}
+
+	public long getTargetCrc32c() {
+		return targetCrc32c;
+	}
+
+	public byte[] getTargetSha256() {
+		return targetSha256.clone();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("[%s] -> [%s] %s (size [%d], crc32c [%08x], sha256 [%s])",
+				source, target, isMatch() ? "verified" : "MISMATCH", sourceSize, sourceCrc32c, hex(sourceSha256));
+	}
+
+	static String hex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+}
@@ -0,0 +1,64 @@
+package jacle.common.io.dir.copy;
+
+import java.io.IOException;
+import java.nio.file.CopyOption;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * "Copies" regular files by creating hard links to them, which takes no time
+ * or space regardless of the file size. Intended for snapshots of immutable
+ * trees: the source and target share their contents, so modifying either file
+ * in place modifies both. When a link cannot be created (e.g. the target is on
+ * another file system, or the file system has no hard links), the file is
+ * copied with the fallback strategy instead.
+ * <p>
+ * A symbolic link to a regular file is replaced by a hard link to that file,
+ * so the target holds the same contents as a regular copy would.
+ */
+public class HardLinkCopyStrategy implements FileCopyStrategy {
+
+	private final FileCopyStrategy fallback;
+	private volatile boolean linksSupported = true;
+
+	/**
+	 * Falls back to {@link FileCopyStrategy#DEFAULT}
+	 */
+	public HardLinkCopyStrategy() {
+		this(FileCopyStrategy.DEFAULT);
+	}
+
+	/**
+	 * @param fallback
+	 *            Copies files that cannot be linked
+	 */
+	public HardLinkCopyStrategy(FileCopyStrategy fallback) {
+		this.fallback = fallback;
+	}
+
+	@Override
+	public void copy(Path source, Path target, BasicFileAttributes sourceAttrs, CopyOption... options)
+			throws IOException {
+		if (linksSupported && sourceAttrs.isRegularFile()) {
+			try {
+				for (CopyOption option : options) {
+					if (option == StandardCopyOption.REPLACE_EXISTING) {
+						Files.deleteIfExists(target);
+					}
+				}
+				// The attributes describe the file a symbolic link points to (the
+				// walk follows links), but createLink() may link the symbolic
+				// link itself, so link the file it resolves to
+				Files.createLink(target, Files.isSymbolicLink(source) ? source.toRealPath() : source);
+				return;
+			} catch (UnsupportedOperationException e) {
+				linksSupported = false;
+			} catch (IOException e) {
+				// Fall back for this file only (e.g. a different file system below a mount point)
+			}
+		}
+		fallback.copy(source, target, sourceAttrs, options);
+	}
+}
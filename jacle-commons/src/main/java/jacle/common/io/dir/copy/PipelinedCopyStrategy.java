@@ -0,0 +1,330 @@
+package jacle.common.io.dir.copy;
+
+import jacle.common.io.dir.DirWalkException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.CopyOption;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Copies regular files with {@link AsynchronousFileChannel}s, overlapping the
+ * reads and writes of different files: {@link #copy} only opens the files and
+ * starts the first read, so the walk moves on to the next file while the
+ * previous ones are still being written. This helps most when the source or
+ * target is slow (e.g. network attached storage).
+ * <p>
+ * Each copy in flight holds one direct buffer from a pool, so the number of
+ * bytes in flight is bounded by the pool. When every buffer is in use,
+ * {@link #copy} blocks until one is released.
+ * <p>
+ * Anything other than a regular file (or a copy that asks for options this
+ * class does not handle) is delegated to {@link FileCopyStrategy#DEFAULT},
+ * synchronously.
+ * <p>
+ * The {@link CompletionListener} is told about each file once its last byte
+ * has been written, before its buffer is released, so a listener that blocks
+ * (e.g. on a throttle) holds back the copies that follow. As with any
+ * {@link AsyncFileCopyStrategy}, an instance must not be used by two
+ * operations at once.
+ */
+public class PipelinedCopyStrategy implements AsyncFileCopyStrategy {
+
+	public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+	public static final long DEFAULT_MAX_IN_FLIGHT_BYTES = 64L * 1024 * 1024;
+
+	private final int bufferSize;
+	private final int bufferCount;
+	private final BlockingQueue<ByteBuffer> buffers;
+	private final AtomicInteger allocated = new AtomicInteger();
+	private final Object lock = new Object();
+	private int pending;
+	private final Map<Path, IOException> failures = new LinkedHashMap<>();
+	private volatile CompletionListener completionListener;
+
+	/**
+	 * Uses buffers of {@link #DEFAULT_BUFFER_SIZE}, up to
+	 * {@link #DEFAULT_MAX_IN_FLIGHT_BYTES} in total
+	 */
+	public PipelinedCopyStrategy() {
+		this(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_IN_FLIGHT_BYTES);
+	}
+
+	/**
+	 * @param bufferSize
+	 *            The size of each direct buffer (the most read or written by a
+	 *            single operation)
+	 * @param maxInFlightBytes
+	 *            The total size of the buffers. At least one buffer is used,
+	 *            and buffers are only allocated as they are needed.
+	 */
+	public PipelinedCopyStrategy(int bufferSize, long maxInFlightBytes) {
+		if (bufferSize < 1) {
+			throw new IllegalArgumentException(String.format("Buffer size must be positive [%d]", bufferSize));
+		}
+		this.bufferSize = bufferSize;
+		this.bufferCount = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxInFlightBytes / bufferSize));
+		this.buffers = new ArrayBlockingQueue<>(bufferCount);
+	}
+
+	@Override
+	public void copy(Path source, Path target, BasicFileAttributes sourceAttrs, CopyOption... options)
+			throws IOException {
+		boolean replaceExisting = false;
+		boolean copyAttributes = false;
+		boolean noFollowLinks = false;
+		for (CopyOption option : options) {
+			if (option == StandardCopyOption.REPLACE_EXISTING) {
+				replaceExisting = true;
+			} else if (option == StandardCopyOption.COPY_ATTRIBUTES) {
+				copyAttributes = true;
+			} else if (option == LinkOption.NOFOLLOW_LINKS) {
+				noFollowLinks = true;
+			} else {
+				FileCopyStrategy.DEFAULT.copy(source, target, sourceAttrs, options);
+				return;
+			}
+		}
+		if (!sourceAttrs.isRegularFile() || (noFollowLinks && Files.isSymbolicLink(source))) {
+			FileCopyStrategy.DEFAULT.copy(source, target, sourceAttrs, options);
+			return;
+		}
+		if (replaceExisting) {
+			// Like Files.copy(), replace the target rather than overwrite it in place
+			Files.deleteIfExists(target);
+		}
+		ByteBuffer buffer = acquire();
+		AsynchronousFileChannel in = null;
+		AsynchronousFileChannel out = null;
+		try {
+			in = AsynchronousFileChannel.open(source, StandardOpenOption.READ);
+			out = AsynchronousFileChannel.open(target, TransferCopyStrategy.CREATE_OPTIONS, null,
+					TransferCopyStrategy.createAttributes(source, target, sourceAttrs));
+		} catch (IOException | RuntimeException e) {
+			closeQuietly(in, e);
+			release(buffer);
+			throw e;
+		}
+		CompletionListener listener = completionListener;
+		if (listener != null) {
+			listener.onStarted(source);
+		}
+		synchronized (lock) {
+			pending++;
+		}
+		new Transfer(source, target, sourceAttrs, copyAttributes, in, out, buffer, listener).start();
+	}
+
+	@Override
+	public void setCompletionListener(CompletionListener listener) {
+		this.completionListener = listener;
+	}
+
+	@Override
+	public void await() throws IOException {
+		Map<Path, IOException> failed;
+		synchronized (lock) {
+			while (pending > 0) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException(String.format("Interrupted with [%d] copies in flight", pending));
+				}
+			}
+			if (failures.isEmpty()) {
+				return;
+			}
+			failed = new LinkedHashMap<>(failures);
+			failures.clear();
+		}
+		if (failed.size() == 1) {
+			throw failed.values().iterator().next();
+		}
+		throw new DirWalkException(failed.keySet().iterator().next().getParent(), failed);
+	}
+
+	private ByteBuffer acquire() throws IOException {
+		ByteBuffer buffer = buffers.poll();
+		if (buffer != null) {
+			return buffer;
+		}
+		if (allocated.incrementAndGet() <= bufferCount) {
+			return ByteBuffer.allocateDirect(bufferSize);
+		}
+		allocated.decrementAndGet();
+		try {
+			return buffers.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for a copy buffer");
+		}
+	}
+
+	private void release(ByteBuffer buffer) {
+		buffer.clear();
+		buffers.offer(buffer);
+	}
+
+	private void finished(Path target, IOException failure) {
+		synchronized (lock) {
+			if (failure != null) {
+				failures.put(target, failure);
+			}
+			pending--;
+			lock.notifyAll();
+		}
+	}
+
+	private static void closeQuietly(AsynchronousFileChannel channel, Exception failure) {
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				failure.addSuppressed(e);
+			}
+		}
+	}
+
+	/**
+	 * The state of a single file copy: reads into the buffer, writes it out,
+	 * and repeats until the end of the source
+	 */
+	private class Transfer implements CompletionHandler<Integer, Void> {
+
+		private final Path source;
+		private final Path target;
+		private final BasicFileAttributes sourceAttrs;
+		private final boolean copyAttributes;
+		private final AsynchronousFileChannel in;
+		private final AsynchronousFileChannel out;
+		private final ByteBuffer buffer;
+		private final CompletionListener listener;
+		private long position;
+		private boolean reading;
+
+		Transfer(Path source, Path target, BasicFileAttributes sourceAttrs, boolean copyAttributes,
+				AsynchronousFileChannel in, AsynchronousFileChannel out, ByteBuffer buffer,
+				CompletionListener listener) {
+			this.source = source;
+			this.target = target;
+			this.sourceAttrs = sourceAttrs;
+			this.copyAttributes = copyAttributes;
+			this.in = in;
+			this.out = out;
+			this.buffer = buffer;
+			this.listener = listener;
+		}
+
+		void start() {
+			try {
+				read();
+			} catch (RuntimeException e) {
+				failed(e, null);
+			}
+		}
+
+		private void read() {
+			reading = true;
+			buffer.clear();
+			in.read(buffer, position, null, this);
+		}
+
+		@Override
+		public void completed(Integer result, Void attachment) {
+			try {
+				if (reading) {
+					if (result < 0) {
+						finish();
+						return;
+					}
+					reading = false;
+					buffer.flip();
+					out.write(buffer, position, null, this);
+				} else {
+					position += result;
+					if (buffer.hasRemaining()) {
+						out.write(buffer, position, null, this);
+					} else {
+						read();
+					}
+				}
+			} catch (RuntimeException e) {
+				failed(e, null);
+			}
+		}
+
+		@Override
+		public void failed(Throwable exc, Void attachment) {
+			IOException failure = exc instanceof IOException ? (IOException) exc
+					: new IOException(String.format("Failed to copy [%s] to [%s]", source, target), exc);
+			closeQuietly(in, failure);
+			closeQuietly(out, failure);
+			try {
+				Files.deleteIfExists(target);
+			} catch (IOException e) {
+				failure.addSuppressed(e);
+			}
+			failure = report(failure);
+			release(buffer);
+			finished(target, failure);
+		}
+
+		private void finish() {
+			IOException failure = null;
+			try {
+				try {
+					in.close();
+				} finally {
+					out.close();
+				}
+				if (copyAttributes) {
+					TransferCopyStrategy.copyAttributes(source, target, sourceAttrs);
+				}
+			} catch (IOException e) {
+				failure = e;
+			}
+			failure = report(failure);
+			release(buffer);
+			finished(target, failure);
+		}
+
+		/**
+		 * Tells the listener, if any, how the copy ended, returning the
+		 * failure to record (one thrown by the listener, if the copy did not
+		 * fail)
+		 */
+		private IOException report(IOException failure) {
+			if (listener == null) {
+				return failure;
+			}
+			try {
+				if (failure == null) {
+					listener.onCompleted(source, position);
+				} else {
+					listener.onFailed(source, failure);
+				}
+			} catch (RuntimeException e) {
+				if (failure == null) {
+					return new IOException(String.format("Listener failed for [%s]", source), e);
+				}
+				failure.addSuppressed(e);
+			}
+			return failure;
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package jacle.common.io.dir.copy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.CopyOption;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Copies regular files with {@link FileChannel#transferTo(long, long,
+ * java.nio.channels.WritableByteChannel)}, which lets the operating system
+ * move the bytes directly between the files (e.g. sendfile/copy_file_range on
+ * Linux) instead of passing them through heap buffers.
+ * <p>
+ * Anything other than a regular file (or a copy that asks for options this
+ * class does not handle) is delegated to {@link FileCopyStrategy#DEFAULT}.
+ */
+public class TransferCopyStrategy implements FileCopyStrategy {
+
+	public static final long DEFAULT_CHUNK_SIZE = 64L * 1024 * 1024;
+
+	static final Set<OpenOption> CREATE_OPTIONS = Collections.unmodifiableSet(new HashSet<OpenOption>(
+			Arrays.asList(StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)));
+	private static final FileAttribute<?>[] NO_ATTRIBUTES = new FileAttribute<?>[0];
+
+	private final long chunkSize;
+	private final boolean preallocate;
+
+	/**
+	 * Transfers in chunks of {@link #DEFAULT_CHUNK_SIZE}, without
+	 * preallocation
+	 */
+	public TransferCopyStrategy() {
+		this(DEFAULT_CHUNK_SIZE, false);
+	}
+
+	/**
+	 * @param chunkSize
+	 *            The maximum number of bytes handed to a single
+	 *            {@link FileChannel#transferTo} call
+	 * @param preallocate
+	 *            Whether the target is extended to the length of the source
+	 *            before the transfer starts. This avoids growing the file (and
+	 *            updating its metadata) chunk by chunk; how much space is
+	 *            actually reserved up front depends on the file system.
+	 */
+	public TransferCopyStrategy(long chunkSize, boolean preallocate) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException(String.format("Chunk size must be positive [%d]", chunkSize));
+		}
+		this.chunkSize = chunkSize;
+		this.preallocate = preallocate;
+	}
+
+	@Override
+	public void copy(Path source, Path target, BasicFileAttributes sourceAttrs, CopyOption... options)
+			throws IOException {
+		boolean replaceExisting = false;
+		boolean copyAttributes = false;
+		boolean noFollowLinks = false;
+		for (CopyOption option : options) {
+			if (option == StandardCopyOption.REPLACE_EXISTING) {
+				replaceExisting = true;
+			} else if (option == StandardCopyOption.COPY_ATTRIBUTES) {
+				copyAttributes = true;
+			} else if (option == LinkOption.NOFOLLOW_LINKS) {
+				noFollowLinks = true;
+			} else {
+				FileCopyStrategy.DEFAULT.copy(source, target, sourceAttrs, options);
+				return;
+			}
+		}
+		if (!sourceAttrs.isRegularFile() || (noFollowLinks && Files.isSymbolicLink(source))) {
+			FileCopyStrategy.DEFAULT.copy(source, target, sourceAttrs, options);
+			return;
+		}
+		if (replaceExisting) {
+			// Like Files.copy(), replace the target rather than overwrite it in place
+			Files.deleteIfExists(target);
+		}
+		try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(target, CREATE_OPTIONS, createAttributes(source, target, sourceAttrs))) {
+			long size = in.size();
+			if (preallocate && size > 0) {
+				out.write(ByteBuffer.allocate(1), size - 1);
+			}
+			long position = 0;
+			while (position < size) {
+				long transferred = in.transferTo(position, Math.min(chunkSize, size - position), out);
+				if (transferred <= 0) {
+					// Source shrank while copying
+					break;
+				}
+				position += transferred;
+			}
+			if (position < out.size()) {
+				out.truncate(position);
+			}
+		}
+		if (copyAttributes) {
+			copyAttributes(source, target, sourceAttrs);
+		}
+	}
+
+	/**
+	 * Returns the attributes to create the target with: the permissions of
+	 * the source if both file systems have POSIX permissions, so that (as with
+	 * {@link Files#copy(Path, Path, CopyOption...)}) the umask is the only
+	 * thing that can drop bits, even without COPY_ATTRIBUTES
+	 */
+	static FileAttribute<?>[] createAttributes(Path source, Path target, BasicFileAttributes sourceAttrs)
+			throws IOException {
+		if (!target.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+			return NO_ATTRIBUTES;
+		}
+		Set<PosixFilePermission> permissions;
+		if (sourceAttrs instanceof PosixFileAttributes) {
+			permissions = ((PosixFileAttributes) sourceAttrs).permissions();
+		} else if (Files.getFileAttributeView(source, PosixFileAttributeView.class) != null) {
+			permissions = Files.readAttributes(source, PosixFileAttributes.class).permissions();
+		} else {
+			return NO_ATTRIBUTES;
+		}
+		return new FileAttribute<?>[] { PosixFilePermissions.asFileAttribute(permissions) };
+	}
+
+	static void copyAttributes(Path source, Path target, BasicFileAttributes sourceAttrs)
+			throws IOException {
+		PosixFileAttributeView targetPosix = Files.getFileAttributeView(target, PosixFileAttributeView.class);
+		if (targetPosix != null) {
+			PosixFileAttributes sourcePosix = Files.readAttributes(source, PosixFileAttributes.class);
+			targetPosix.setPermissions(sourcePosix.permissions());
+		}
+		Files.getFileAttributeView(target, BasicFileAttributeView.class).setTimes(
+				sourceAttrs.lastModifiedTime(), sourceAttrs.lastAccessTime(), sourceAttrs.creationTime());
+	}
+}
@@ -0,0 +1,48 @@
+package jacle.common.io.dir.copy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The per-file results of a {@link VerifyingCopyStrategy}. Thread safe.
+ */
+public class VerificationReport {
+
+	private final List<FileVerification> files =
+			Collections.synchronizedList(new ArrayList<FileVerification>());
+
+	void add(FileVerification file) {
+		files.add(file);
+	}
+
+	/**
+	 * Returns a snapshot of every file verified so far, in the order their
+	 * verification completed
+	 */
+	public List<FileVerification> getFiles() {
+		synchronized (files) {
+			return new ArrayList<>(files);
+		}
+	}
+
+	/**
+	 * Returns the files whose target does not match the source
+	 */
+	public List<FileVerification> getMismatches() {
+		List<FileVerification> mismatches = new ArrayList<>();
+		for (FileVerification file : getFiles()) {
+			if (!file.isMatch()) {
+				mismatches.add(file);
+			}
+		}
+		return mismatches;
+	}
+
+	/**
+	 * Returns whether every file verified so far matches
+	 */
+	public boolean isVerified() {
+		return getMismatches().isEmpty();
+	}
+}
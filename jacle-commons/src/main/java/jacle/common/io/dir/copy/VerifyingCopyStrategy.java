@@ -0,0 +1,217 @@
+package jacle.common.io.dir.copy;
+
+import jacle.common.io.dir.DirWalkException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.CopyOption;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Copies regular files while computing their CRC-32C and SHA-256 from the
+ * bytes read for the copy, then reads each target back and checksums it
+ * again, adding the outcome to a {@link VerificationReport}. The source is
+ * only read once.
+ * <p>
+ * With an executor, targets are read back by tasks, which overlap with the
+ * copying of the files that follow; {@link #await()} (called by the
+ * {@link jacle.common.io.dir.DirUtils} copy operations) waits for them.
+ * Without one, each target is read back before {@link #copy} returns.
+ * <p>
+ * Anything other than a regular file (or a copy that asks for options this
+ * class does not handle) is delegated to {@link FileCopyStrategy#DEFAULT}
+ * and not verified.
+ */
+public class VerifyingCopyStrategy implements AsyncFileCopyStrategy {
+
+	private static final int BUFFER_SIZE = 256 * 1024;
+	private static final int MAX_PENDING = 64;
+
+	private static final ThreadLocal<byte[]> BUFFERS = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[BUFFER_SIZE];
+		}
+	};
+
+	private final ExecutorService executor;
+	private final VerificationReport report = new VerificationReport();
+	private final Semaphore pending = new Semaphore(MAX_PENDING);
+	private final Map<Path, IOException> failures =
+			Collections.synchronizedMap(new LinkedHashMap<Path, IOException>());
+
+	/**
+	 * Verifies each file before {@link #copy} returns
+	 */
+	public VerifyingCopyStrategy() {
+		this(null);
+	}
+
+	/**
+	 * @param executor
+	 *            Reads the targets back, or null to do it before
+	 *            {@link #copy} returns. Not shut down.
+	 */
+	public VerifyingCopyStrategy(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	public VerificationReport getReport() {
+		return report;
+	}
+
+	@Override
+	public void copy(Path source, Path target, BasicFileAttributes sourceAttrs, CopyOption... options)
+			throws IOException {
+		boolean replaceExisting = false;
+		boolean copyAttributes = false;
+		boolean noFollowLinks = false;
+		for (CopyOption option : options) {
+			if (option == StandardCopyOption.REPLACE_EXISTING) {
+				replaceExisting = true;
+			} else if (option == StandardCopyOption.COPY_ATTRIBUTES) {
+				copyAttributes = true;
+			} else if (option == LinkOption.NOFOLLOW_LINKS) {
+				noFollowLinks = true;
+			} else {
+				FileCopyStrategy.DEFAULT.copy(source, target, sourceAttrs, options);
+				return;
+			}
+		}
+		if (!sourceAttrs.isRegularFile() || (noFollowLinks && Files.isSymbolicLink(source))) {
+			FileCopyStrategy.DEFAULT.copy(source, target, sourceAttrs, options);
+			return;
+		}
+		if (replaceExisting) {
+			// Like Files.copy(), replace the target rather than overwrite it in place
+			Files.deleteIfExists(target);
+		}
+		Crc32c crc = new Crc32c();
+		MessageDigest sha256 = sha256();
+		long size = 0;
+		byte[] buffer = BUFFERS.get();
+		try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(target, TransferCopyStrategy.CREATE_OPTIONS,
+						TransferCopyStrategy.createAttributes(source, target, sourceAttrs))) {
+			int read;
+			while ((read = in.read(ByteBuffer.wrap(buffer))) > 0) {
+				crc.update(buffer, 0, read);
+				sha256.update(buffer, 0, read);
+				ByteBuffer written = ByteBuffer.wrap(buffer, 0, read);
+				while (written.hasRemaining()) {
+					out.write(written);
+				}
+				size += read;
+			}
+		}
+		if (copyAttributes) {
+			TransferCopyStrategy.copyAttributes(source, target, sourceAttrs);
+		}
+		verifyLater(source, target, size, crc.getValue(), sha256.digest());
+	}
+
+	@Override
+	public void await() throws IOException {
+		try {
+			pending.acquire(MAX_PENDING);
+			pending.release(MAX_PENDING);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while verifying");
+		}
+		Map<Path, IOException> failed;
+		synchronized (failures) {
+			if (failures.isEmpty()) {
+				return;
+			}
+			failed = new LinkedHashMap<>(failures);
+			failures.clear();
+		}
+		if (failed.size() == 1) {
+			throw failed.values().iterator().next();
+		}
+		throw new DirWalkException(failed.keySet().iterator().next().getParent(), failed);
+	}
+
+	/**
+	 * Does nothing: the copies complete before {@link #copy} returns (only
+	 * the reading back may continue)
+	 */
+	@Override
+	public void setCompletionListener(CompletionListener listener) {
+	}
+
+	private void verifyLater(final Path source, final Path target,
+			final long size, final long crc, final byte[] sha256) throws IOException {
+		if (executor == null) {
+			verify(source, target, size, crc, sha256);
+			return;
+		}
+		try {
+			pending.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while verifying");
+		}
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						verify(source, target, size, crc, sha256);
+					} catch (IOException e) {
+						failures.put(target, e);
+					} catch (RuntimeException e) {
+						failures.put(target, new IOException(e));
+					} finally {
+						pending.release();
+					}
+				}
+			});
+		} catch (RuntimeException e) {
+			pending.release();
+			throw e;
+		}
+	}
+
+	private void verify(Path source, Path target, long size, long crc, byte[] sha256) throws IOException {
+		Crc32c targetCrc = new Crc32c();
+		MessageDigest targetSha256 = sha256();
+		long targetSize = 0;
+		byte[] buffer = BUFFERS.get();
+		try (InputStream in = Files.newInputStream(target)) {
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				targetCrc.update(buffer, 0, read);
+				targetSha256.update(buffer, 0, read);
+				targetSize += read;
+			}
+		}
+		report.add(new FileVerification(source, target, size, crc, sha256,
+				targetSize, targetCrc.getValue(), targetSha256.digest()));
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -1,90 +1,192 @@
 package jacle.common.io.dir.events;
 
-import jacle.common.io.dir.util.FilterBuilder;
+import jacle.common.io.dir.util.GlobPattern;
 import jacle.common.io.dir.visitors.FunctionVisitor;
+import jacle.common.io.dir.walkers.ParallelFileTreeWalker;
+import jacle.common.io.dir.walkers.PrefetchingFileTreeWalker;
+import jacle.common.thread.ExecutorsExt;
 
 import java.io.IOException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.FileVisitResult;
+import java.nio.file.FileVisitor;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.FutureTask;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 import com.google.common.base.Function;
 
+/**
+ * Iterates over the files below a directory that match a glob, walking the
+ * tree on a background thread (see {@link #setExecutor(ExecutorService)}), and optionally listing its directories
+ * concurrently on a thread pool. Sub-trees that cannot match (see
+ * {@link GlobPattern}) are not walked. The walk gets at most
+ * {@link BlockingHandoff#CAPACITY} matches ahead of the iterator before it
+ * waits for it.
+ */
 public class AsynchronousRecursiveDirectoryStream implements DirectoryStream<Path> {
 
-    private LinkedBlockingQueue<Path> pathsBlockingQueue = new LinkedBlockingQueue<>();
+    private BlockingHandoff<Path> paths;
     private boolean closed = false;
     private FutureTask<Void> pathTask;
     private Path startPath;
-    private Filter<Path> filter;
+    private GlobPattern glob;
+    private ExecutorService executor = DirectoryStreamExecutor.DEFAULT;
+    private ExecutorService walkExecutor;
+    private int parallelism = 1;
+    private boolean ordered = true;
 
     public AsynchronousRecursiveDirectoryStream(Path startPath, String pattern) throws IOException {
-        this.filter = FilterBuilder.buildGlobFilter(Objects.requireNonNull(pattern));
+        this.glob = GlobPattern.compile(Objects.requireNonNull(pattern));
         this.startPath = Objects.requireNonNull(startPath);
     }
 
+    /**
+     * Lists directories concurrently on the provided executor (e.g. a
+     * work-stealing pool from
+     * {@link jacle.common.thread.ExecutorsExt#newWorkStealingPool(int, String)}).
+     *
+     * @param walkExecutor
+     *            Lists the directories. Not shut down by this class.
+     * @param ordered
+     *            Whether matches are delivered in the order of a sequential
+     *            walk (see {@link PrefetchingFileTreeWalker}), rather than as
+     *            soon as they are found (see {@link ParallelFileTreeWalker}),
+     *            which gives the best throughput
+     */
+    public AsynchronousRecursiveDirectoryStream(Path startPath, String pattern,
+            ExecutorService walkExecutor, boolean ordered) throws IOException {
+        this(startPath, pattern);
+        this.walkExecutor = Objects.requireNonNull(walkExecutor);
+        this.ordered = ordered;
+    }
+
+    /**
+     * Lists directories concurrently on a work-stealing pool of the provided
+     * size, created for each walk
+     *
+     * @param parallelism
+     *            The number of threads listing directories
+     * @param ordered
+     *            Whether matches are delivered in the order of a sequential
+     *            walk, rather than as soon as they are found, which gives the
+     *            best throughput
+     */
+    public AsynchronousRecursiveDirectoryStream(Path startPath, String pattern,
+            int parallelism, boolean ordered) throws IOException {
+        this(startPath, pattern);
+        if (parallelism < 1) {
+            throw new IllegalArgumentException(String.format("Parallelism must be positive [%d]", parallelism));
+        }
+        this.parallelism = parallelism;
+        this.ordered = ordered;
+    }
+
+    /**
+     * Specifies the executor the walk runs on (e.g. a pool from
+     * {@link ExecutorsExt}, or a virtual thread executor on newer JDKs). The
+     * walk holds one of its threads until it completes or the stream is
+     * closed, so the executor must not limit the number of threads below the
+     * number of streams open at once, and must not be the executor that
+     * lists directories for the walk. Defaults to
+     * {@link DirectoryStreamExecutor#DEFAULT}.
+     *
+     * @return "this" (fluent setter)
+     */
+    public AsynchronousRecursiveDirectoryStream setExecutor(ExecutorService executor) {
+        this.executor = Objects.requireNonNull(executor);
+        return this;
+    }
+
+    /**
+     * @throws IllegalStateException
+     *             If the stream is closed, or was already iterated (by this
+     *             or {@link #batchIterator})
+     */
     @Override
     public Iterator<Path> iterator() {
         confirmNotClosed();
-        findFiles(startPath, filter);
-        return new Iterator<Path>() {
-            Path path;
-            @Override
-            public boolean hasNext() {
-                try {
-                    path = pathsBlockingQueue.poll();
-                    while (!pathTask.isDone() && path == null) {
-                        path = pathsBlockingQueue.poll(5, TimeUnit.MILLISECONDS);
-                    }
-                    return (path != null);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
-                return false;
-            }
-
-            @Override
-            public Path next() {
-                return path;
-            }
+        confirmNotIterated();
+        paths = new BlockingHandoff<>();
+        findFiles(startPath, glob);
+        return paths.iterator();
+    }
 
-            @Override
-            public void remove() {
-                throw new UnsupportedOperationException("Removal not supported");
-            }
-        };
+    /**
+     * An alternative to {@link #iterator()} that hands over the matches in
+     * chunks, so that consumers processing them in groups synchronize with the
+     * walk once per chunk rather than once per match. A chunk is delivered
+     * once it holds <code>batchSize</code> matches, or once the iterator has
+     * waited <code>maxLatency</code> for it (if above zero) and some matches
+     * were found, whichever comes first.
+     *
+     * @throws IllegalStateException
+     *             If the stream is closed, or was already iterated
+     */
+    public Iterator<List<Path>> batchIterator(int batchSize, long maxLatency, TimeUnit unit) {
+        confirmNotClosed();
+        confirmNotIterated();
+        paths = new BlockingHandoff<>(batchSize, maxLatency, unit);
+        findFiles(startPath, glob);
+        return paths.batchIterator();
     }
 
-    private void findFiles(final Path startPath, final Filter<Path>  filter) {
+    private void findFiles(final Path startPath, final GlobPattern glob) {
         pathTask = new FutureTask<>(new Callable<Void>() {
             @Override
             public Void call() throws Exception {
-                Files.walkFileTree(startPath, new FunctionVisitor(getFunction(filter)));
+                ExecutorService listExecutor = walkExecutor;
+                boolean ownExecutor = (listExecutor == null && parallelism > 1);
+                if (ownExecutor) {
+                    listExecutor = ExecutorsExt.I.newWorkStealingPool(parallelism, "DirUtils-glob");
+                }
+                try {
+                    // Start below the directories every match is in
+                    Path walkPath = startPath.resolve(glob.getLiteralPrefix());
+                    if (Files.isDirectory(walkPath)) {
+                        FileVisitor<Path> visitor = new FunctionVisitor(getFunction(glob)) {
+                            @Override
+                            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                                return glob.canMatchBelow(startPath.relativize(dir))
+                                        ? FileVisitResult.CONTINUE : FileVisitResult.SKIP_SUBTREE;
+                            }
+                        };
+                        if (listExecutor == null) {
+                            Files.walkFileTree(walkPath, visitor);
+                        } else if (ordered) {
+                            new PrefetchingFileTreeWalker(listExecutor).walk(walkPath, visitor);
+                        } else {
+                            new ParallelFileTreeWalker(listExecutor, false).walk(walkPath, visitor);
+                        }
+                    }
+                } finally {
+                    if (ownExecutor) {
+                        listExecutor.shutdownNow();
+                    }
+                    paths.end();
+                }
                 return null;
             }
         });
         start(pathTask);
     }
 
-    private Function<Path, FileVisitResult> getFunction(final Filter<Path> filter) {
+    private Function<Path, FileVisitResult> getFunction(final GlobPattern glob) {
         return new Function<Path, FileVisitResult>() {
             @Override
             public FileVisitResult apply(Path input) {
-                try {
-                    if (filter.accept(input.getFileName())) {
-                        pathsBlockingQueue.offer(input);
-                    }
-                } catch (IOException e) {
-                    throw new RuntimeException(e.getMessage());
+                if (glob.matches(startPath.relativize(input)) && !paths.put(input)) {
+                    return FileVisitResult.TERMINATE;
                 }
-                return (pathTask.isCancelled()) ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+                FutureTask<Void> task = pathTask;
+                return (task == null || task.isCancelled()) ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
             }
         };
     }
@@ -95,15 +197,16 @@ public class AsynchronousRecursiveDirectoryStream implements DirectoryStream<Pat
         if(pathTask !=null){
             pathTask.cancel(true);
         }
-        pathsBlockingQueue.clear();
-        pathsBlockingQueue = null;
+        if (paths != null) {
+            paths.close();
+        }
         pathTask = null;
-        filter = null;
+        glob = null;
         closed = true;
     }
 
     private void start(FutureTask<Void> futureTask) {
-        new Thread(futureTask).start();
+        executor.execute(futureTask);
     }
 
     private void confirmNotClosed() {
@@ -112,4 +215,14 @@ public class AsynchronousRecursiveDirectoryStream implements DirectoryStream<Pat
         }
     }
 
+    /**
+     * A second walk would share the fields of the first, so like any
+     * {@link DirectoryStream}, the stream can only be iterated once
+     */
+    private void confirmNotIterated() {
+        if (paths != null) {
+            throw new IllegalStateException("DirectoryStream has already been iterated");
+        }
+    }
+
 }
@@ -0,0 +1,243 @@
+package jacle.common.io.dir.events;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands the entries found by a background walk to the iterator of a stream.
+ * The queue is bounded, so the walk blocks while the consumer is behind, and
+ * the end of the walk is marked by a sentinel, so the consumer blocks exactly
+ * until the next entry (or the end) arrives.
+ * <p>
+ * In batch mode (see {@link #BlockingHandoff(int, long, TimeUnit)}), entries
+ * are handed over in chunks, so the queue is only synchronized with once per
+ * chunk on the consumer side. A chunk is handed over when it is full, or when
+ * the consumer has waited for the maximum latency, whichever comes first.
+ */
+class BlockingHandoff<T> {
+
+    /**
+     * The number of entries the walk may get ahead of the consumer
+     */
+    static final int CAPACITY = 1024;
+
+    private static final Object END = new Object();
+
+    private final BlockingQueue<Object> queue;
+    private final int batchSize;
+    private final long maxLatencyNanos;
+    /**
+     * The chunk being filled (batch mode only), guarded by "this"
+     */
+    private List<T> pending;
+    /**
+     * The number of chunks taken from {@link #pending} that are not in the
+     * queue yet, guarded by "this". The consumer only takes a partial chunk
+     * when there are none, so it never overtakes a full one.
+     */
+    private int handingOver;
+    private volatile boolean closed;
+
+    /**
+     * Hands over entries one by one
+     */
+    BlockingHandoff() {
+        this.queue = new ArrayBlockingQueue<>(CAPACITY);
+        this.batchSize = 1;
+        this.maxLatencyNanos = 0;
+    }
+
+    /**
+     * Hands over entries in chunks
+     *
+     * @param batchSize
+     *            The number of entries per chunk
+     * @param maxLatency
+     *            How long the consumer waits for a full chunk before it takes
+     *            the entries found so far, or zero to always wait for full
+     *            chunks (or the end)
+     */
+    BlockingHandoff(int batchSize, long maxLatency, TimeUnit unit) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException(String.format("Batch size must be positive [%d]", batchSize));
+        }
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, CAPACITY / batchSize));
+        this.batchSize = batchSize;
+        this.maxLatencyNanos = unit.toNanos(maxLatency);
+        this.pending = new ArrayList<>(batchSize);
+    }
+
+    /**
+     * Called by the walk for each entry, blocking while the queue is full.
+     * Thread safe. Returns false if the stream was closed or the walk was
+     * interrupted, in which case it should stop.
+     */
+    boolean put(T entry) {
+        if (closed) {
+            return false;
+        }
+        if (pending == null) {
+            return enqueue(entry);
+        }
+        List<T> chunk;
+        synchronized (this) {
+            pending.add(entry);
+            if (pending.size() < batchSize) {
+                return true;
+            }
+            chunk = takePending();
+            handingOver++;
+        }
+        // Never block on the queue holding the lock, which the consumer needs
+        // to take a partial chunk
+        return handOver(chunk);
+    }
+
+    /**
+     * Called by the walk once it is done, whether it completed or not
+     */
+    void end() {
+        if (closed) {
+            return;
+        }
+        if (pending != null) {
+            List<T> chunk = null;
+            synchronized (this) {
+                if (!pending.isEmpty()) {
+                    chunk = takePending();
+                    handingOver++;
+                }
+            }
+            if (chunk != null && !handOver(chunk)) {
+                return;
+            }
+        }
+        enqueue(END);
+    }
+
+    /**
+     * Queues a chunk counted in {@link #handingOver}
+     */
+    private boolean handOver(List<T> chunk) {
+        try {
+            return enqueue(chunk);
+        } finally {
+            synchronized (this) {
+                handingOver--;
+            }
+        }
+    }
+
+    private boolean enqueue(Object entry) {
+        try {
+            queue.put(entry);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private List<T> takePending() {
+        List<T> chunk = pending;
+        pending = new ArrayList<>(batchSize);
+        return chunk;
+    }
+
+    /**
+     * Ends iteration, unblocking the consumer. The walk must be interrupted
+     * separately.
+     */
+    void close() {
+        closed = true;
+        queue.clear();
+        queue.offer(END);
+    }
+
+    /**
+     * Returns the next queued item (an entry, a chunk, or {@link #END}),
+     * blocking until there is one. In batch mode, returns the entries found
+     * so far once the maximum latency has passed.
+     */
+    private Object take() throws InterruptedException {
+        if (maxLatencyNanos <= 0) {
+            return queue.take();
+        }
+        while (true) {
+            Object item = queue.poll(maxLatencyNanos, TimeUnit.NANOSECONDS);
+            if (item != null) {
+                return item;
+            }
+            synchronized (this) {
+                // A chunk being handed over goes first; it is about to be
+                // queued, so poll again
+                if (handingOver == 0 && !pending.isEmpty()) {
+                    return takePending();
+                }
+            }
+        }
+    }
+
+    /**
+     * Iterates over the entries (only without batch mode)
+     */
+    Iterator<T> iterator() {
+        return new HandoffIterator<T>();
+    }
+
+    /**
+     * Iterates over the chunks (only in batch mode)
+     */
+    Iterator<List<T>> batchIterator() {
+        return new HandoffIterator<List<T>>();
+    }
+
+    private class HandoffIterator<E> implements Iterator<E> {
+        private E next;
+        private boolean ended;
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            if (ended || closed) {
+                return false;
+            }
+            Object item;
+            try {
+                item = take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            if (item == END) {
+                ended = true;
+                return false;
+            }
+            next = (E) item;
+            return true;
+        }
+
+        @Override
+        public E next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            E item = next;
+            next = null;
+            return item;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Remove not supported");
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package jacle.common.io.dir.events;
+
+import jacle.common.thread.ExecutorsExt;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Holds the executor the directory streams (see
+ * {@link AsynchronousRecursiveDirectoryStream} and {@link FileDirectoryStream})
+ * run their walks on, unless given another one.
+ */
+public class DirectoryStreamExecutor {
+
+    /**
+     * A cached pool of daemon threads named "DirectoryStream", shared by all
+     * streams. Each walk holds a thread until it completes or its stream is
+     * closed, and idle threads are reused by later walks.
+     */
+    public static final ExecutorService DEFAULT = ExecutorsExt.I.newCachedDaemonThreadPool("DirectoryStream");
+
+    private DirectoryStreamExecutor() {
+    }
+}
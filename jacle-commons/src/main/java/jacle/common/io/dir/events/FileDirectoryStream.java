@@ -1,109 +1,152 @@
 package jacle.common.io.dir.events;
 
 import java.io.File;
-import java.io.FilenameFilter;
 import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.EnumSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.FutureTask;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 public class FileDirectoryStream {
     File startDirectory;
     String pattern;
-    private LinkedBlockingQueue<File> fileLinkedBlockingQueue = new LinkedBlockingQueue<>();
+    private BlockingHandoff<File> files;
+    private ExecutorService executor = DirectoryStreamExecutor.DEFAULT;
     private boolean closed = false;
     private FutureTask<Void> fileTask;
-    private FilenameFilter filenameFilter;
+    private Pattern regexPattern;
 
 
     public FileDirectoryStream(String pattern, File startDirectory) {
         this.pattern = pattern;
         this.startDirectory = startDirectory;
-        this.filenameFilter = getFileNameFilter(pattern);
+        this.regexPattern = Pattern.compile(pattern);
     }
 
+    /**
+     * Specifies the executor the search runs on (e.g. a pool from
+     * {@link jacle.common.thread.ExecutorsExt}, or a virtual thread executor
+     * on newer JDKs). The search holds one of its threads until it completes
+     * or the stream is closed, so the executor must not limit the number of
+     * threads below the number of streams open at once. Defaults to
+     * {@link DirectoryStreamExecutor#DEFAULT}.
+     *
+     * @return "this" (fluent setter)
+     */
+    public FileDirectoryStream setExecutor(ExecutorService executor) {
+        this.executor = Objects.requireNonNull(executor);
+        return this;
+    }
+
+    /**
+     * @throws IllegalStateException
+     *             If the stream is closed, or was already searched (by this
+     *             or {@link #globBatches})
+     */
     public Iterator<File> glob() throws IOException {
         confirmNotClosed();
-        startFileSearch(startDirectory, filenameFilter);
-        return new Iterator<File>() {
-            File file = null;
-
-            @Override
-            public boolean hasNext() {
-                try {
-                    file = fileLinkedBlockingQueue.poll();
-                    while (!fileTask.isDone() && file == null) {
-                        file = fileLinkedBlockingQueue.poll(5, TimeUnit.MILLISECONDS);
-                    }
-                    return file != null;
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
-                return false;
-            }
-
-            @Override
-            public File next() {
-                return file;
-            }
+        confirmNotSearched();
+        files = new BlockingHandoff<>();
+        startFileSearch(startDirectory, regexPattern);
+        return files.iterator();
+    }
 
-            @Override
-            public void remove() {
-                throw new UnsupportedOperationException("Remove not supported");
-            }
-        };
+    /**
+     * An alternative to {@link #glob()} that hands over the files in chunks,
+     * so that consumers processing them in groups synchronize with the search
+     * once per chunk rather than once per file. A chunk is delivered once it
+     * holds <code>batchSize</code> files, or once the iterator has waited
+     * <code>maxLatency</code> for it (if above zero) and some files were
+     * found, whichever comes first.
+     *
+     * @throws IllegalStateException
+     *             If the stream is closed, or was already searched
+     */
+    public Iterator<List<File>> globBatches(int batchSize, long maxLatency, TimeUnit unit) throws IOException {
+        confirmNotClosed();
+        confirmNotSearched();
+        files = new BlockingHandoff<>(batchSize, maxLatency, unit);
+        startFileSearch(startDirectory, regexPattern);
+        return files.batchIterator();
     }
 
-    private void startFileSearch(final File startDirectory, final FilenameFilter filenameFilter) {
+    private void startFileSearch(final File startDirectory, final Pattern pattern) {
         fileTask = new FutureTask<Void>(new Callable<Void>() {
             @Override
             public Void call() throws Exception {
-                findFiles(startDirectory, filenameFilter);
+                try {
+                    findFiles(startDirectory, pattern);
+                } finally {
+                    files.end();
+                }
                 return null;
             }
         });
         start(fileTask);
     }
 
-    private void findFiles(final File startDirectory, final FilenameFilter filenameFilter) {
-        File[] files = startDirectory.listFiles(filenameFilter);
-        for (File file : files) {
-            if (!fileTask.isCancelled()) {
-                if (file.isDirectory()) {
-                    findFiles(file, filenameFilter);
+    /**
+     * Walks with {@link Files#walkFileTree}, so each entry is stat'ed once and
+     * its attributes reused, rather than asking {@link File#isDirectory()}
+     * once in the filter and again while recursing
+     */
+    private void findFiles(final File startDirectory, final Pattern pattern) throws IOException {
+        final Path start = startDirectory.toPath();
+        Files.walkFileTree(start, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (fileTask.isCancelled()) {
+                    return FileVisitResult.TERMINATE;
                 }
-                fileLinkedBlockingQueue.offer(file);
+                if (pattern.matcher(file.getFileName().toString()).matches() && !files.put(file.toFile())) {
+                    return FileVisitResult.TERMINATE;
+                }
+                return FileVisitResult.CONTINUE;
             }
-        }
-    }
 
-    private FilenameFilter getFileNameFilter(final String pattern) {
-        return new FilenameFilter() {
-            Pattern regexPattern = Pattern.compile(pattern);
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                // Unreadable entries (and link loops) are left out
+                return FileVisitResult.CONTINUE;
+            }
 
             @Override
-            public boolean accept(File dir, String name) {
-                return new File(dir, name).isDirectory() || regexPattern.matcher(name).matches();
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+                if (fileTask.isCancelled()) {
+                    return FileVisitResult.TERMINATE;
+                }
+                if (!dir.equals(start) && !files.put(dir.toFile())) {
+                    return FileVisitResult.TERMINATE;
+                }
+                return FileVisitResult.CONTINUE;
             }
-        };
+        });
     }
 
-
     public void close() throws IOException {
         if (fileTask != null) {
             fileTask.cancel(true);
         }
-        fileLinkedBlockingQueue.clear();
-        fileLinkedBlockingQueue = null;
+        if (files != null) {
+            files.close();
+        }
         fileTask = null;
         closed = true;
     }
 
     private void start(FutureTask<Void> futureTask) {
-        new Thread(futureTask).start();
+        executor.execute(futureTask);
     }
 
     private void confirmNotClosed() {
@@ -112,5 +155,15 @@ public class FileDirectoryStream {
         }
     }
 
+    /**
+     * A second search would share the fields of the first, so the stream can
+     * only be searched once
+     */
+    private void confirmNotSearched() {
+        if (files != null) {
+            throw new IllegalStateException("File Iterator has already been created");
+        }
+    }
+
 
 }
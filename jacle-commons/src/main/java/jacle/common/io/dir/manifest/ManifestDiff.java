@@ -0,0 +1,55 @@
+package jacle.common.io.dir.manifest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link ManifestDiffHandler} that collects the differences in memory. Use
+ * a custom handler to process very large differences as they are found.
+ */
+public class ManifestDiff implements ManifestDiffHandler {
+
+	private final List<ManifestEntry> added = new ArrayList<>();
+	private final List<ManifestEntry> removed = new ArrayList<>();
+	private final List<ManifestEntry> modified = new ArrayList<>();
+
+	@Override
+	public void added(ManifestEntry entry) {
+		added.add(entry);
+	}
+
+	@Override
+	public void removed(ManifestEntry entry) {
+		removed.add(entry);
+	}
+
+	/**
+	 * Keeps the newer entry
+	 */
+	@Override
+	public void modified(ManifestEntry older, ManifestEntry newer) {
+		modified.add(newer);
+	}
+
+	public List<ManifestEntry> getAdded() {
+		return added;
+	}
+
+	public List<ManifestEntry> getRemoved() {
+		return removed;
+	}
+
+	public List<ManifestEntry> getModified() {
+		return modified;
+	}
+
+	public boolean isEmpty() {
+		return added.isEmpty() && removed.isEmpty() && modified.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("added [%d], removed [%d], modified [%d]", added.size(), removed.size(),
+				modified.size());
+	}
+}
@@ -0,0 +1,23 @@
+package jacle.common.io.dir.manifest;
+
+/**
+ * Receives the differences between two manifests (or a manifest and a live
+ * tree) as they are found, in {@link ManifestEntry#PATH_ORDER}
+ */
+public interface ManifestDiffHandler {
+
+	/**
+	 * Called for an entry that only exists in the newer tree
+	 */
+	public void added(ManifestEntry entry);
+
+	/**
+	 * Called for an entry that only exists in the older tree
+	 */
+	public void removed(ManifestEntry entry);
+
+	/**
+	 * Called for an entry that exists in both trees, but differs
+	 */
+	public void modified(ManifestEntry older, ManifestEntry newer);
+}
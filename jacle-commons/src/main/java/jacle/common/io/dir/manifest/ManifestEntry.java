@@ -0,0 +1,132 @@
+package jacle.common.io.dir.manifest;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * One file or directory of a manifest. Paths are relative to the root of the
+ * tree and always use "/" as the separator.
+ */
+public class ManifestEntry {
+
+	/**
+	 * Orders relative paths the way a depth-first walk with sorted directory
+	 * listings produces them: a directory comes right before its contents,
+	 * which come before its next sibling. This is plain string order, except
+	 * that "/" sorts before every other character.
+	 */
+	public static final Comparator<String> PATH_ORDER = new Comparator<String>() {
+		@Override
+		public int compare(String a, String b) {
+			int length = Math.min(a.length(), b.length());
+			for (int i = 0; i < length; i++) {
+				char ca = a.charAt(i);
+				char cb = b.charAt(i);
+				if (ca != cb) {
+					if (ca == '/') {
+						return -1;
+					}
+					if (cb == '/') {
+						return 1;
+					}
+					return ca - cb;
+				}
+			}
+			return a.length() - b.length();
+		}
+	};
+
+	private final String path;
+	private final boolean directory;
+	private final boolean special;
+	private final long size;
+	private final long lastModifiedMillis;
+	private final byte[] hash;
+	/**
+	 * The file on disk, for entries read from a live tree (otherwise null)
+	 */
+	private final Path file;
+
+	public ManifestEntry(String path, boolean directory, long size, long lastModifiedMillis, byte[] hash) {
+		this(path, directory, false, size, lastModifiedMillis, hash, null);
+	}
+
+	ManifestEntry(String path, boolean directory, boolean special, long size, long lastModifiedMillis, byte[] hash,
+			Path file) {
+		this.path = path;
+		this.directory = directory;
+		this.special = special;
+		this.size = size;
+		this.lastModifiedMillis = lastModifiedMillis;
+		this.hash = hash;
+		this.file = file;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public boolean isDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Returns whether the entry is neither a directory nor a regular file
+	 * (e.g. a symbolic link). Such entries never have a hash.
+	 */
+	public boolean isSpecial() {
+		return special;
+	}
+
+	/**
+	 * Returns the size of the file (zero for directories)
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	public long getLastModifiedMillis() {
+		return lastModifiedMillis;
+	}
+
+	/**
+	 * Returns the SHA-256 of the file contents, or null if the manifest was
+	 * written without hashes (always null for directories and special
+	 * entries)
+	 */
+	public byte[] getHash() {
+		return hash;
+	}
+
+	Path getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns whether the other entry, at the same path, describes different
+	 * content. Directories are never modified (their times change with their
+	 * contents, which are compared separately). Files differ if their sizes
+	 * differ, then by hash if both have one, otherwise by modification time.
+	 */
+	public boolean isModified(ManifestEntry other) {
+		if (directory != other.directory || special != other.special) {
+			return true;
+		}
+		if (directory) {
+			return false;
+		}
+		if (size != other.size) {
+			return true;
+		}
+		if (hash != null && other.hash != null) {
+			return !Arrays.equals(hash, other.hash);
+		}
+		return lastModifiedMillis != other.lastModifiedMillis;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s%s (%d bytes, modified %d)", path, directory ? "/" : "", size, lastModifiedMillis);
+	}
+}
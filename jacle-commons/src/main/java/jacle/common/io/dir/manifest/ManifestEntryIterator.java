@@ -0,0 +1,11 @@
+package jacle.common.io.dir.manifest;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * Iterates manifest entries in {@link ManifestEntry#PATH_ORDER}. Failures to
+ * read are thrown as {@link jacle.common.io.RuntimeIOException}.
+ */
+public interface ManifestEntryIterator extends Iterator<ManifestEntry>, Closeable {
+}
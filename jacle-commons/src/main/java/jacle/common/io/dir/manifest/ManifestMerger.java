@@ -0,0 +1,50 @@
+package jacle.common.io.dir.manifest;
+
+import java.io.IOException;
+
+/**
+ * Compares two entry streams that are both in
+ * {@link ManifestEntry#PATH_ORDER} with a single merge pass
+ */
+public class ManifestMerger {
+
+	private ManifestMerger() {}
+
+	/**
+	 * Reports every difference between the streams to the handler
+	 *
+	 * @param hashNewer
+	 *            Whether to hash files of the newer stream (which must come
+	 *            from a live tree) when their size matches the older entry but
+	 *            their modification time does not, so that touched but
+	 *            unchanged files are not reported. Only useful if the older
+	 *            entries have hashes.
+	 */
+	public static void diff(ManifestEntryIterator older, ManifestEntryIterator newer,
+			ManifestDiffHandler handler, boolean hashNewer) throws IOException {
+		ManifestEntry a = older.hasNext() ? older.next() : null;
+		ManifestEntry b = newer.hasNext() ? newer.next() : null;
+		while (a != null || b != null) {
+			int order = (a == null) ? 1 : (b == null) ? -1 : ManifestEntry.PATH_ORDER.compare(a.getPath(), b.getPath());
+			if (order < 0) {
+				handler.removed(a);
+				a = older.hasNext() ? older.next() : null;
+			} else if (order > 0) {
+				handler.added(b);
+				b = newer.hasNext() ? newer.next() : null;
+			} else {
+				if (hashNewer && b.getFile() != null && b.getHash() == null && a.getHash() != null
+						&& !b.isDirectory() && !b.isSpecial()
+						&& a.getSize() == b.getSize() && a.getLastModifiedMillis() != b.getLastModifiedMillis()) {
+					b = new ManifestEntry(b.getPath(), false, false, b.getSize(), b.getLastModifiedMillis(),
+							TreeEntryIterator.sha256(b.getFile()), b.getFile());
+				}
+				if (a.isModified(b)) {
+					handler.modified(a, b);
+				}
+				a = older.hasNext() ? older.next() : null;
+				b = newer.hasNext() ? newer.next() : null;
+			}
+		}
+	}
+}
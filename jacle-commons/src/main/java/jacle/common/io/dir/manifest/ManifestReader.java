@@ -0,0 +1,116 @@
+package jacle.common.io.dir.manifest;
+
+import jacle.common.io.RuntimeIOException;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the entries written by a {@link ManifestWriter}, one at a time
+ */
+public class ManifestReader implements ManifestEntryIterator {
+
+	private final DataInputStream in;
+	private final boolean hashes;
+	private String previousPath = "";
+	private long previousModified;
+	private ManifestEntry next;
+	private boolean ended;
+
+	/**
+	 * @param in
+	 *            The stream to read from (closed by {@link #close()})
+	 */
+	public ManifestReader(InputStream in) throws IOException {
+		this.in = new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+		if (this.in.readInt() != ManifestWriter.MAGIC) {
+			throw new IOException("Not a directory manifest");
+		}
+		this.hashes = (this.in.readByte() & ManifestWriter.FLAG_HASHES) != 0;
+	}
+
+	/**
+	 * Returns whether the file entries carry hashes
+	 */
+	public boolean hasHashes() {
+		return hashes;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (next == null && !ended) {
+			try {
+				next = readEntry();
+			} catch (IOException e) {
+				throw new RuntimeIOException("Failed to read manifest", e);
+			}
+			ended = (next == null);
+		}
+		return next != null;
+	}
+
+	@Override
+	public ManifestEntry next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		ManifestEntry result = next;
+		next = null;
+		return result;
+	}
+
+	private ManifestEntry readEntry() throws IOException {
+		int type = in.readUnsignedByte();
+		if (type == ManifestWriter.TYPE_END) {
+			return null;
+		}
+		if (type != ManifestWriter.TYPE_FILE && type != ManifestWriter.TYPE_DIRECTORY
+				&& type != ManifestWriter.TYPE_SPECIAL) {
+			throw new IOException(String.format("Corrupt manifest entry type [%d]", type));
+		}
+		int shared = (int) readVarLong(in);
+		byte[] suffix = new byte[(int) readVarLong(in)];
+		in.readFully(suffix);
+		String path = previousPath.substring(0, shared) + new String(suffix, StandardCharsets.UTF_8);
+		long modified = previousModified + unZigZag(readVarLong(in));
+		boolean directory = (type == ManifestWriter.TYPE_DIRECTORY);
+		boolean special = (type == ManifestWriter.TYPE_SPECIAL);
+		long size = 0;
+		byte[] hash = null;
+		if (!directory) {
+			size = readVarLong(in);
+			if (hashes && !special) {
+				hash = new byte[ManifestWriter.HASH_LENGTH];
+				in.readFully(hash);
+			}
+		}
+		previousPath = path;
+		previousModified = modified;
+		return new ManifestEntry(path, directory, special, size, modified, hash, null);
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	static long readVarLong(DataInputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Corrupt manifest number");
+	}
+
+	static long unZigZag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+}
@@ -0,0 +1,108 @@
+package jacle.common.io.dir.manifest;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes manifest entries in a compact binary form. Each path is stored as
+ * the number of characters it shares with the previous path plus the
+ * remaining characters, and numbers are stored as variable-length integers,
+ * so a typical entry takes a few tens of bytes. Entries must be written in
+ * {@link ManifestEntry#PATH_ORDER}.
+ */
+public class ManifestWriter implements Closeable {
+
+	static final int MAGIC = 0x4a444d31; // "JDM1"
+	static final int FLAG_HASHES = 1;
+	static final int TYPE_END = 0;
+	static final int TYPE_FILE = 1;
+	static final int TYPE_DIRECTORY = 2;
+	/**
+	 * Neither a directory nor a regular file (e.g. a symbolic link): stored
+	 * like a file, but never with a hash
+	 */
+	static final int TYPE_SPECIAL = 3;
+	static final int HASH_LENGTH = 32;
+
+	private final DataOutputStream out;
+	private final boolean hashes;
+	private String previousPath = "";
+	private long previousModified;
+
+	/**
+	 * @param out
+	 *            The stream to write to (closed by {@link #close()})
+	 * @param hashes
+	 *            Whether file entries carry a hash
+	 */
+	public ManifestWriter(OutputStream out, boolean hashes) throws IOException {
+		this.out = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+		this.hashes = hashes;
+		this.out.writeInt(MAGIC);
+		this.out.writeByte(hashes ? FLAG_HASHES : 0);
+	}
+
+	public void write(ManifestEntry entry) throws IOException {
+		String path = entry.getPath();
+		if (ManifestEntry.PATH_ORDER.compare(previousPath, path) >= 0 && !previousPath.isEmpty()) {
+			throw new IllegalArgumentException(String.format("Entry [%s] is out of order after [%s]", path,
+					previousPath));
+		}
+		int shared = 0;
+		int max = Math.min(previousPath.length(), path.length());
+		while (shared < max && previousPath.charAt(shared) == path.charAt(shared)) {
+			shared++;
+		}
+		if (shared > 0 && Character.isHighSurrogate(path.charAt(shared - 1))) {
+			// Do not split a surrogate pair, which UTF-8 cannot encode in halves
+			shared--;
+		}
+		byte[] suffix = path.substring(shared).getBytes(StandardCharsets.UTF_8);
+		out.writeByte(entry.isDirectory() ? TYPE_DIRECTORY : entry.isSpecial() ? TYPE_SPECIAL : TYPE_FILE);
+		writeVarLong(out, shared);
+		writeVarLong(out, suffix.length);
+		out.write(suffix);
+		// Neighbouring entries tend to have close times, so store the difference
+		writeVarLong(out, zigZag(entry.getLastModifiedMillis() - previousModified));
+		if (!entry.isDirectory()) {
+			writeVarLong(out, entry.getSize());
+			if (hashes && !entry.isSpecial()) {
+				byte[] hash = entry.getHash();
+				if (hash == null || hash.length != HASH_LENGTH) {
+					throw new IllegalArgumentException(String.format("Entry [%s] has no SHA-256 hash", path));
+				}
+				out.write(hash);
+			}
+		}
+		previousPath = path;
+		previousModified = entry.getLastModifiedMillis();
+	}
+
+	/**
+	 * Writes the end marker and closes the stream
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			out.writeByte(TYPE_END);
+		} finally {
+			out.close();
+		}
+	}
+
+	static void writeVarLong(DataOutputStream out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	static long zigZag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+}
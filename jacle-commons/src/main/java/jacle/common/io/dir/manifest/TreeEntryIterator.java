@@ -0,0 +1,155 @@
+package jacle.common.io.dir.manifest;
+
+import jacle.common.io.RuntimeIOException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates the entries of a live directory tree (excluding the root itself)
+ * in {@link ManifestEntry#PATH_ORDER}. Only the sorted names of the
+ * directories on the current path are held in memory. Symbolic links are not
+ * followed.
+ */
+public class TreeEntryIterator implements ManifestEntryIterator {
+
+	private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
+	private final boolean hash;
+	private final Deque<Level> stack = new ArrayDeque<>();
+	private ManifestEntry next;
+
+	/**
+	 * A directory being iterated
+	 */
+	private static class Level {
+		final Path dir;
+		final String prefix;
+		final List<String> names;
+		int index;
+
+		Level(Path dir, String prefix, List<String> names) {
+			this.dir = dir;
+			this.prefix = prefix;
+			this.names = names;
+		}
+	}
+
+	/**
+	 * @param root
+	 *            The directory to iterate
+	 * @param hash
+	 *            Whether to compute the SHA-256 of every file
+	 */
+	public TreeEntryIterator(Path root, boolean hash) throws IOException {
+		this.hash = hash;
+		stack.push(new Level(root, "", list(root)));
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (next == null) {
+			try {
+				next = computeNext();
+			} catch (IOException e) {
+				throw new RuntimeIOException("Failed to read directory tree", e);
+			}
+		}
+		return next != null;
+	}
+
+	@Override
+	public ManifestEntry next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		ManifestEntry result = next;
+		next = null;
+		return result;
+	}
+
+	private ManifestEntry computeNext() throws IOException {
+		while (!stack.isEmpty()) {
+			Level level = stack.peek();
+			if (level.index >= level.names.size()) {
+				stack.pop();
+				continue;
+			}
+			String name = level.names.get(level.index++);
+			Path file = level.dir.resolve(name);
+			BasicFileAttributes attrs;
+			try {
+				attrs = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+			} catch (NoSuchFileException e) {
+				// Deleted since the directory was listed
+				continue;
+			}
+			String path = level.prefix + name;
+			if (attrs.isDirectory()) {
+				List<String> names;
+				try {
+					names = list(file);
+				} catch (NoSuchFileException e) {
+					continue;
+				}
+				stack.push(new Level(file, path + "/", names));
+				return new ManifestEntry(path, true, false, 0, attrs.lastModifiedTime().toMillis(), null, file);
+			}
+			boolean special = !attrs.isRegularFile();
+			byte[] digest = (hash && !special) ? sha256(file) : null;
+			return new ManifestEntry(path, false, special, attrs.size(), attrs.lastModifiedTime().toMillis(), digest,
+					file);
+		}
+		return null;
+	}
+
+	@Override
+	public void close() {
+		stack.clear();
+	}
+
+	private static List<String> list(Path dir) throws IOException {
+		List<String> names = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+			for (Path entry : stream) {
+				names.add(entry.getFileName().toString());
+			}
+		}
+		Collections.sort(names);
+		return names;
+	}
+
+	/**
+	 * Returns the SHA-256 of the file contents
+	 */
+	static byte[] sha256(Path file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+		byte[] buffer = new byte[HASH_BUFFER_SIZE];
+		try (InputStream in = Files.newInputStream(file)) {
+			int read;
+			while ((read = in.read(buffer)) >= 0) {
+				digest.update(buffer, 0, read);
+			}
+		}
+		return digest.digest();
+	}
+}
@@ -0,0 +1,35 @@
+package jacle.common.io.dir.metrics;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Receives progress reports from the {@link jacle.common.io.dir.DirUtils}
+ * operations (see
+ * {@link jacle.common.io.dir.DirOptions#setListener(DirListener)}). Calls may
+ * come from several threads at once during a parallel walk, so implementations
+ * must be thread safe, and should be quick, as they run on the walking
+ * threads.
+ */
+public interface DirListener {
+
+	/**
+	 * Called after a file has been processed (copied, deleted, etc)
+	 *
+	 * @param file
+	 *            The file, as seen in the source tree
+	 * @param bytes
+	 *            The size of the file
+	 */
+	public void onFile(Path file, long bytes);
+
+	/**
+	 * Called after a directory and all of its contents have been processed
+	 */
+	public void onDirectory(Path dir);
+
+	/**
+	 * Called when processing an entry fails
+	 */
+	public void onError(Path path, IOException e);
+}
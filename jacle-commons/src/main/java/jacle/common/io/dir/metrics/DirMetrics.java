@@ -0,0 +1,143 @@
+package jacle.common.io.dir.metrics;
+
+import jacle.common.time.TimeProvider;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link DirListener} that counts what an operation has processed, and how
+ * fast. Totals are exact; the per-second rates are computed over the last
+ * {@link #WINDOW_SECONDS} seconds and are approximate, as counts recorded
+ * while a one-second bucket rolls over may be dropped.
+ * <p>
+ * A single instance may be polled from a monitoring thread while the
+ * operation runs.
+ */
+public class DirMetrics implements DirListener {
+
+	public static final int WINDOW_SECONDS = 10;
+
+	private final TimeProvider timeProvider;
+	private final long startMillis;
+	private final LongAdder files = new LongAdder();
+	private final LongAdder bytes = new LongAdder();
+	private final LongAdder directories = new LongAdder();
+	private final LongAdder errors = new LongAdder();
+	/**
+	 * One slot per second of the window (plus one, so the current partial
+	 * second is never counted). Each slot holds the second it counts for.
+	 */
+	private final AtomicLongArray bucketSeconds = new AtomicLongArray(WINDOW_SECONDS + 1);
+	private final AtomicLongArray bucketFiles = new AtomicLongArray(WINDOW_SECONDS + 1);
+	private final AtomicLongArray bucketBytes = new AtomicLongArray(WINDOW_SECONDS + 1);
+
+	public DirMetrics() {
+		this(TimeProvider.DEFAULT);
+	}
+
+	public DirMetrics(TimeProvider timeProvider) {
+		this.timeProvider = timeProvider;
+		this.startMillis = now();
+		for (int i = 0; i < bucketSeconds.length(); i++) {
+			bucketSeconds.set(i, -1);
+		}
+	}
+
+	@Override
+	public void onFile(Path file, long size) {
+		files.increment();
+		bytes.add(size);
+		long second = now() / 1000;
+		int index = (int) (second % bucketSeconds.length());
+		long bucketSecond = bucketSeconds.get(index);
+		if (bucketSecond != second && bucketSeconds.compareAndSet(index, bucketSecond, second)) {
+			bucketFiles.set(index, 0);
+			bucketBytes.set(index, 0);
+		}
+		bucketFiles.incrementAndGet(index);
+		bucketBytes.addAndGet(index, size);
+	}
+
+	@Override
+	public void onDirectory(Path dir) {
+		directories.increment();
+	}
+
+	@Override
+	public void onError(Path path, IOException e) {
+		errors.increment();
+	}
+
+	public long getFiles() {
+		return files.sum();
+	}
+
+	public long getBytes() {
+		return bytes.sum();
+	}
+
+	public long getDirectories() {
+		return directories.sum();
+	}
+
+	public long getErrors() {
+		return errors.sum();
+	}
+
+	/**
+	 * Returns the time since this object was created
+	 */
+	public long getElapsedMillis() {
+		return now() - startMillis;
+	}
+
+	/**
+	 * Returns the number of bytes processed per second over the last
+	 * {@link #WINDOW_SECONDS} complete seconds (or since creation, if
+	 * shorter)
+	 */
+	public double getBytesPerSecond() {
+		return windowRate(bucketBytes);
+	}
+
+	/**
+	 * Returns the number of files processed per second over the last
+	 * {@link #WINDOW_SECONDS} complete seconds (or since creation, if
+	 * shorter)
+	 */
+	public double getFilesPerSecond() {
+		return windowRate(bucketFiles);
+	}
+
+	private double windowRate(AtomicLongArray buckets) {
+		long nowMillis = now();
+		long currentSecond = nowMillis / 1000;
+		long firstSecond = Math.max(currentSecond - WINDOW_SECONDS, startMillis / 1000);
+		long seconds = currentSecond - firstSecond;
+		if (seconds < 1) {
+			return 0;
+		}
+		long total = 0;
+		for (int i = 0; i < buckets.length(); i++) {
+			long second = bucketSeconds.get(i);
+			if (second >= firstSecond && second < currentSecond) {
+				total += buckets.get(i);
+			}
+		}
+		return total / (double) seconds;
+	}
+
+	private long now() {
+		return timeProvider.getTime().getTime();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("files [%d], bytes [%d], directories [%d], errors [%d], elapsed [%d] ms, "
+				+ "[%.1f] bytes/sec, [%.1f] files/sec", getFiles(), getBytes(), getDirectories(), getErrors(),
+				getElapsedMillis(), getBytesPerSecond(), getFilesPerSecond());
+	}
+}
@@ -0,0 +1,150 @@
+package jacle.common.io.dir.throttle;
+
+import jacle.common.thread.SleepProvider;
+import jacle.common.time.TimeProvider;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Limits the rate of bytes and operations (files and directories) of
+ * {@link jacle.common.io.dir.DirUtils} operations (see
+ * {@link jacle.common.io.dir.DirOptions#setThrottle(DirThrottle)}), so that
+ * background jobs do not starve other users of the disk.
+ * <p>
+ * Each limit is a token bucket that holds up to one second's worth of
+ * tokens, so short bursts go through at full speed while the average rate is
+ * held to the limit. A request larger than the bucket (e.g. a big file) is let
+ * through, and the requests that follow wait until it has been paid for.
+ * <p>
+ * The limits can be changed at any time, including while operations are
+ * running. A single instance may be shared by any number of threads and
+ * operations, which then share the limits.
+ */
+public class DirThrottle {
+
+	private final TimeProvider timeProvider;
+	private final SleepProvider sleepProvider;
+	private final Bucket bytes = new Bucket();
+	private final Bucket ops = new Bucket();
+
+	/**
+	 * @param bytesPerSecond
+	 *            The limit on bytes copied per second, or zero for no limit
+	 * @param opsPerSecond
+	 *            The limit on files and directories processed per second, or
+	 *            zero for no limit
+	 */
+	public DirThrottle(long bytesPerSecond, long opsPerSecond) {
+		this(bytesPerSecond, opsPerSecond, TimeProvider.DEFAULT, SleepProvider.DEFAULT);
+	}
+
+	public DirThrottle(long bytesPerSecond, long opsPerSecond,
+			TimeProvider timeProvider, SleepProvider sleepProvider) {
+		this.timeProvider = timeProvider;
+		this.sleepProvider = sleepProvider;
+		setBytesPerSecond(bytesPerSecond);
+		setOpsPerSecond(opsPerSecond);
+	}
+
+	/**
+	 * Changes the limit on bytes per second, or zero for no limit
+	 */
+	public void setBytesPerSecond(long bytesPerSecond) {
+		bytes.setRate(checkRate(bytesPerSecond), now());
+	}
+
+	public long getBytesPerSecond() {
+		return bytes.getRate();
+	}
+
+	/**
+	 * Changes the limit on operations per second, or zero for no limit
+	 */
+	public void setOpsPerSecond(long opsPerSecond) {
+		ops.setRate(checkRate(opsPerSecond), now());
+	}
+
+	public long getOpsPerSecond() {
+		return ops.getRate();
+	}
+
+	/**
+	 * Blocks until the byte and operation counts may proceed within the limits
+	 *
+	 * @throws InterruptedIOException
+	 *             If interrupted while waiting
+	 */
+	public void acquire(long byteCount, long opCount) throws InterruptedIOException {
+		long now = now();
+		long wait = Math.max(bytes.reserve(byteCount, now), ops.reserve(opCount, now));
+		if (wait <= 0) {
+			return;
+		}
+		try {
+			sleepProvider.sleep(wait);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while throttled");
+		}
+	}
+
+	private long now() {
+		return timeProvider.getTime().getTime();
+	}
+
+	private static long checkRate(long rate) {
+		if (rate < 0) {
+			throw new IllegalArgumentException(String.format("Rate must not be negative [%d]", rate));
+		}
+		return rate;
+	}
+
+	/**
+	 * A token bucket, where requests may go into debt: a request that finds
+	 * too few tokens proceeds once any earlier debt is paid, and pushes the
+	 * time the next request may proceed further out
+	 */
+	private static class Bucket {
+
+		private long perSecond;
+		private double stored;
+		/**
+		 * The time (millis) at which earlier requests are paid for
+		 */
+		private double nextFree;
+
+		synchronized long getRate() {
+			return perSecond;
+		}
+
+		synchronized void setRate(long perSecond, long now) {
+			refill(now);
+			// Starting to limit starts with a full bucket
+			stored = this.perSecond == 0 ? perSecond : Math.min(stored, perSecond);
+			this.perSecond = perSecond;
+		}
+
+		/**
+		 * Takes the tokens, returning how long (millis) to wait before
+		 * proceeding
+		 */
+		synchronized long reserve(long count, long now) {
+			if (perSecond == 0 || count <= 0) {
+				return 0;
+			}
+			refill(now);
+			double wait = nextFree - now;
+			double fromStore = Math.min(count, stored);
+			stored -= fromStore;
+			nextFree += (count - fromStore) * 1000.0 / perSecond;
+			return (long) Math.ceil(Math.max(0, wait));
+		}
+
+		private void refill(long now) {
+			if (now > nextFree) {
+				stored = Math.min(perSecond, stored + (now - nextFree) * perSecond / 1000.0);
+				nextFree = now;
+			}
+		}
+	}
+}
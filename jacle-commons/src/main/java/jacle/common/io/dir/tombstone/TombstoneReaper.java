@@ -0,0 +1,431 @@
+package jacle.common.io.dir.tombstone;
+
+import jacle.common.io.dir.DirUtils;
+import jacle.common.thread.NamedThreadFactory;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.nio.file.FileAlreadyExistsException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Deletes directory trees in the background. {@link #bury(Path)} renames the
+ * tree into a tombstone directory, which is a single atomic operation, and a
+ * background thread then deletes the tombstone. To the caller, the tree is
+ * gone as soon as {@link #bury(Path)} returns.
+ * <p>
+ * By default, the tombstone directory ({@link #TOMBSTONE_DIR_NAME}) is created
+ * next to the path being buried, so nothing is written outside of the
+ * directory that already contains it, and it is removed again once it is
+ * empty. A fixed tombstone directory can be provided instead; paths that
+ * cannot be renamed into it (e.g. on another file system) are deleted before
+ * {@link #bury(Path)} returns.
+ * <p>
+ * Inside a tombstone directory, each reaper keeps its tombstones in a
+ * directory of its own, next to a lock file that it holds locked for as long
+ * as the directory exists. When a reaper starts using a tombstone directory,
+ * the directories whose lock files are not locked (i.e. left by a process
+ * that crashed or exited before its reaper caught up) are queued for deletion
+ * too, while those of live reapers are left alone. {@link #recover(Path)}
+ * does the same up front, for applications that want to clean up at startup.
+ * <p>
+ * The reaper thread is a daemon, so pending deletes do not keep the JVM
+ * alive; whatever is left is recovered the next time.
+ */
+public class TombstoneReaper {
+
+	private static final Logger LOGGER = Logger.getLogger(TombstoneReaper.class.getName());
+
+	/**
+	 * A reaper shared by the whole process
+	 */
+	public static final TombstoneReaper DEFAULT = new TombstoneReaper();
+
+	/**
+	 * The name of the tombstone directory created next to the paths buried
+	 */
+	public static final String TOMBSTONE_DIR_NAME = ".jacle-tombstones";
+
+	private static final String GRAVEYARD_PREFIX = "reaper-";
+	private static final String LOCK_SUFFIX = ".lock";
+
+	private static final AtomicLong TOMBSTONE_NUMBER = new AtomicLong();
+
+	/**
+	 * The lock files held by the reapers of this process, guarded by itself.
+	 * Closing any channel on a lock file releases the process's lock on it, so
+	 * recovery must never open one of these.
+	 */
+	private static final Set<Path> OWNED_LOCK_FILES = new HashSet<>();
+
+	private final Path tombstoneDir;
+	private final ExecutorService executor;
+	/**
+	 * The graveyards in use, by tombstone directory, guarded by "this"
+	 */
+	private final Map<Path, Graveyard> graveyards = new HashMap<>();
+
+	/**
+	 * Creates the tombstone directory next to each path buried
+	 */
+	public TombstoneReaper() {
+		this(null);
+	}
+
+	/**
+	 * @param tombstoneDir
+	 *            The tombstone directory for all paths buried, which should be
+	 *            on the same file system as them, or null to create one next
+	 *            to each path
+	 */
+	public TombstoneReaper(Path tombstoneDir) {
+		this.tombstoneDir = (tombstoneDir == null) ? null : tombstoneDir.toAbsolutePath();
+		this.executor = Executors.newSingleThreadExecutor(new NamedThreadFactory("TombstoneReaper", true));
+	}
+
+	/**
+	 * Renames the file or directory tree into the tombstone directory, and
+	 * queues it for deletion. If it cannot be renamed (e.g. it is the root of
+	 * its file system, or the tombstone directory cannot be written to), it is
+	 * deleted before returning.
+	 *
+	 * @return Completes once the tombstone has been deleted
+	 * @throws IOException
+	 *             If the path cannot be renamed or deleted
+	 */
+	public Future<?> bury(Path path) throws IOException {
+		Path absolute = path.toAbsolutePath();
+		BasicFileAttributes attrs = Files.readAttributes(absolute, BasicFileAttributes.class,
+				LinkOption.NOFOLLOW_LINKS);
+		Path dir = absolute.getParent() == null ? null : getTombstoneDir(absolute.getParent());
+		if (dir != null && !dir.startsWith(absolute)) {
+			Graveyard graveyard = null;
+			try {
+				graveyard = open(dir);
+				Path tombstone = graveyard.dir.resolve(
+						System.currentTimeMillis() + "-" + TOMBSTONE_NUMBER.incrementAndGet() + "-" + absolute.getFileName());
+				Files.move(absolute, tombstone, StandardCopyOption.ATOMIC_MOVE);
+				return reap(graveyard, tombstone);
+			} catch (IOException e) {
+				// E.g. another file system, or a tombstone directory that
+				// cannot be written to; fall through to deleting in place
+				if (graveyard != null) {
+					release(graveyard);
+				}
+			}
+		}
+		deleteTree(absolute, attrs.isDirectory());
+		return CompletableFuture.completedFuture(null);
+	}
+
+	/**
+	 * Queues the tombstones left by reapers that are gone, in the tombstone
+	 * directory used for the entries of <code>dir</code>, for deletion
+	 */
+	public void recover(Path dir) throws IOException {
+		Path tombstoneDir = getTombstoneDir(dir.toAbsolutePath());
+		if (Files.isDirectory(tombstoneDir)) {
+			recoverGraveyards(tombstoneDir);
+		}
+	}
+
+	/**
+	 * Stops the reaper thread, abandoning the tombstones not yet deleted (they
+	 * are recovered by the next reaper to use their tombstone directory)
+	 */
+	public void shutdown() {
+		executor.shutdownNow();
+		synchronized (this) {
+			for (Graveyard graveyard : graveyards.values()) {
+				graveyard.unlock();
+			}
+			graveyards.clear();
+		}
+	}
+
+	/**
+	 * Returns the tombstone directory for the entries of the directory
+	 */
+	private Path getTombstoneDir(Path dir) {
+		return (tombstoneDir != null) ? tombstoneDir : dir.resolve(TOMBSTONE_DIR_NAME);
+	}
+
+	/**
+	 * Returns the graveyard of this reaper in the tombstone directory,
+	 * creating it (and recovering the graveyards of reapers that are gone) if
+	 * there is none. Each call must be matched by a call to
+	 * {@link #release(Graveyard)}.
+	 */
+	private synchronized Graveyard open(Path tombstoneDir) throws IOException {
+		Graveyard graveyard = graveyards.get(tombstoneDir);
+		if (graveyard == null) {
+			graveyard = Graveyard.create(tombstoneDir);
+			graveyards.put(tombstoneDir, graveyard);
+			try {
+				recoverGraveyards(tombstoneDir);
+			} catch (IOException e) {
+				LOGGER.log(Level.WARNING, String.format("Failed to recover tombstones in [%s]", tombstoneDir), e);
+			}
+		}
+		graveyard.pending++;
+		return graveyard;
+	}
+
+	/**
+	 * Removes the graveyard once it holds no more tombstones
+	 */
+	private synchronized void release(Graveyard graveyard) {
+		if (--graveyard.pending > 0 || graveyards.get(graveyard.tombstoneDir) != graveyard) {
+			return;
+		}
+		graveyards.remove(graveyard.tombstoneDir);
+		// A tombstone directory provided by the caller is kept
+		graveyard.close(tombstoneDir == null);
+	}
+
+	/**
+	 * Queues the graveyards in the tombstone directory whose lock files are
+	 * not locked for deletion
+	 */
+	private void recoverGraveyards(Path tombstoneDir) throws IOException {
+		List<Path> lockFiles = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(tombstoneDir, GRAVEYARD_PREFIX + "*" + LOCK_SUFFIX)) {
+			for (Path lockFile : stream) {
+				lockFiles.add(lockFile);
+			}
+		}
+		for (final Path lockFile : lockFiles) {
+			executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws IOException {
+					try {
+						recoverGraveyard(lockFile);
+					} catch (IOException | RuntimeException e) {
+						LOGGER.log(Level.WARNING, String.format("Failed to recover tombstones of [%s]", lockFile), e);
+						throw e;
+					}
+					return null;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Deletes the graveyard of the lock file, unless its reaper still holds
+	 * the lock
+	 */
+	private static void recoverGraveyard(Path lockFile) throws IOException {
+		FileChannel channel;
+		synchronized (OWNED_LOCK_FILES) {
+			if (OWNED_LOCK_FILES.contains(lockFile)) {
+				// Held by a reaper of this process
+				return;
+			}
+			try {
+				channel = FileChannel.open(lockFile, StandardOpenOption.WRITE);
+			} catch (NoSuchFileException e) {
+				// Already recovered, or removed by its reaper
+				return;
+			}
+			FileLock lock = null;
+			try {
+				// Null if held by a reaper of another process
+				lock = channel.tryLock();
+			} catch (OverlappingFileLockException e) {
+				// Held by this process, outside of a reaper
+			} finally {
+				if (lock == null) {
+					channel.close();
+				}
+			}
+			if (lock == null) {
+				return;
+			}
+		}
+		try {
+			Path dir = Graveyard.getDir(lockFile);
+			if (Files.exists(dir, LinkOption.NOFOLLOW_LINKS)) {
+				DirUtils.I.delete(dir);
+			}
+			Files.deleteIfExists(lockFile);
+		} finally {
+			channel.close();
+		}
+	}
+
+	private Future<?> reap(final Graveyard graveyard, final Path tombstone) {
+		try {
+			return executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws IOException {
+					try {
+						deleteTree(tombstone, Files.isDirectory(tombstone, LinkOption.NOFOLLOW_LINKS));
+					} catch (IOException | RuntimeException e) {
+						LOGGER.log(Level.WARNING, String.format("Failed to delete tombstone [%s]", tombstone), e);
+						throw e;
+					} finally {
+						release(graveyard);
+					}
+					return null;
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			release(graveyard);
+			throw e;
+		}
+	}
+
+	private static void deleteTree(Path path, boolean directory) throws IOException {
+		if (directory) {
+			DirUtils.I.delete(path);
+		} else {
+			Files.deleteIfExists(path);
+		}
+	}
+
+	/**
+	 * The directory of a reaper inside a tombstone directory, with the lock
+	 * file that marks it as in use
+	 */
+	private static class Graveyard {
+		final Path tombstoneDir;
+		final Path dir;
+		final Path lockFile;
+		final FileChannel lockChannel;
+		/**
+		 * The number of tombstones being buried or reaped, guarded by the
+		 * reaper
+		 */
+		int pending;
+
+		private Graveyard(Path tombstoneDir, Path lockFile, FileChannel lockChannel) {
+			this.tombstoneDir = tombstoneDir;
+			this.dir = getDir(lockFile);
+			this.lockFile = lockFile;
+			this.lockChannel = lockChannel;
+		}
+
+		static Path getDir(Path lockFile) {
+			String name = lockFile.getFileName().toString();
+			return lockFile.resolveSibling(name.substring(0, name.length() - LOCK_SUFFIX.length()));
+		}
+
+		/**
+		 * Creates and locks a new lock file in the tombstone directory, then
+		 * creates its graveyard
+		 */
+		static Graveyard create(Path tombstoneDir) throws IOException {
+			while (true) {
+				Files.createDirectories(tombstoneDir);
+				Path lockFile = tombstoneDir.resolve(GRAVEYARD_PREFIX + UUID.randomUUID() + LOCK_SUFFIX);
+				FileChannel channel;
+				// Created, locked and owned at once, so recovery in this
+				// process never opens it
+				synchronized (OWNED_LOCK_FILES) {
+					try {
+						channel = FileChannel.open(lockFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+					} catch (NoSuchFileException | FileAlreadyExistsException e) {
+						// The tombstone directory was emptied and removed by
+						// another reaper
+						continue;
+					}
+					try {
+						channel.lock();
+					} catch (IOException | RuntimeException e) {
+						channel.close();
+						Files.deleteIfExists(lockFile);
+						throw e;
+					}
+					OWNED_LOCK_FILES.add(lockFile);
+				}
+				boolean created = false;
+				try {
+					// A reaper of another process recovering the lock file
+					// before it was locked deletes it
+					if (Files.exists(lockFile)) {
+						Graveyard graveyard = new Graveyard(tombstoneDir, lockFile, channel);
+						Files.createDirectory(graveyard.dir);
+						created = true;
+						return graveyard;
+					}
+				} finally {
+					if (!created) {
+						disown(lockFile, channel);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Removes the (empty) graveyard, its lock file, and optionally the
+		 * tombstone directory if it is left empty
+		 */
+		void close(boolean removeTombstoneDir) {
+			try {
+				Files.deleteIfExists(dir);
+				Files.deleteIfExists(lockFile);
+			} catch (IOException e) {
+				// Left for recovery (e.g. a tombstone that failed to delete)
+				LOGGER.log(Level.FINE, String.format("Failed to remove [%s]", dir), e);
+			}
+			unlock();
+			if (!removeTombstoneDir) {
+				return;
+			}
+			try {
+				Files.deleteIfExists(tombstoneDir);
+			} catch (DirectoryNotEmptyException e) {
+				// In use by another reaper
+			} catch (IOException e) {
+				LOGGER.log(Level.FINE, String.format("Failed to remove [%s]", tombstoneDir), e);
+			}
+		}
+
+		/**
+		 * Releases the lock, leaving the graveyard to be recovered
+		 */
+		void unlock() {
+			try {
+				disown(lockFile, lockChannel);
+			} catch (IOException e) {
+				LOGGER.log(Level.FINE, String.format("Failed to unlock [%s]", lockFile), e);
+			}
+		}
+
+		/**
+		 * Releases the lock on a lock file owned by this process
+		 */
+		private static void disown(Path lockFile, FileChannel channel) throws IOException {
+			synchronized (OWNED_LOCK_FILES) {
+				OWNED_LOCK_FILES.remove(lockFile);
+				channel.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,206 @@
+package jacle.common.io.dir.util;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import com.google.common.base.Predicate;
+
+/**
+ * A glob compiled for walking a directory tree, so that sub-trees that cannot
+ * contain a match are never listed.
+ * <p>
+ * Patterns containing a separator (e.g. <code>src/main/**&#47;*.java</code>)
+ * are matched against the path relative to the start of the walk. Their
+ * leading literal directories (<code>src/main</code>) and the depth they can
+ * match at (unlimited once a segment contains <code>**</code>) are worked out
+ * up front, and {@link #canMatchBelow(Path)} uses them, along with the
+ * per-segment wildcards before any <code>**</code>, to rule out directories.
+ * <p>
+ * Patterns without a separator (e.g. <code>*.java</code>) keep the meaning
+ * they have in {@link FilterBuilder#buildGlobFilter(String)}: they are matched
+ * against the file name at any depth, so nothing can be pruned. Neither can
+ * patterns with a separator inside a group (e.g. <code>{a/b,c}/*</code>).
+ */
+public class GlobPattern {
+
+	private final String pattern;
+	private final PathMatcher matcher;
+	private final boolean nameOnly;
+	/**
+	 * The matchers of the segments before the first one containing
+	 * <code>**</code>, or null where a segment is literal
+	 */
+	private final List<PathMatcher> segmentMatchers = new ArrayList<>();
+	private final List<String> segments = new ArrayList<>();
+	private final int literalCount;
+	/**
+	 * The number of names a match has, or -1 if unlimited
+	 */
+	private final int depth;
+
+	private GlobPattern(String pattern) {
+		this.pattern = Objects.requireNonNull(pattern);
+		this.matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+		this.nameOnly = pattern.indexOf('/') < 0;
+		int literals = 0;
+		int matchDepth = -1;
+		if (!nameOnly && !hasSeparatorInGroup(pattern)) {
+			String[] parts = pattern.split("/+");
+			matchDepth = parts.length;
+			boolean literal = true;
+			for (String part : parts) {
+				if (part.contains("**")) {
+					matchDepth = -1;
+					break;
+				}
+				boolean wildcard = isWildcard(part);
+				literal &= !wildcard;
+				if (literal) {
+					literals++;
+				}
+				segments.add(part);
+				segmentMatchers.add(wildcard ? FileSystems.getDefault().getPathMatcher("glob:" + part) : null);
+			}
+		}
+		this.literalCount = literals;
+		this.depth = matchDepth;
+	}
+
+	/**
+	 * Compiles a glob, with the syntax of
+	 * {@link java.nio.file.FileSystem#getPathMatcher(String)}
+	 */
+	public static GlobPattern compile(String pattern) {
+		return new GlobPattern(pattern);
+	}
+
+	/**
+	 * Returns the directories every match is below (e.g.
+	 * <code>src/main</code>), or an empty path
+	 */
+	public Path getLiteralPrefix() {
+		Path prefix = Paths.get("");
+		for (int i = 0; i < literalCount; i++) {
+			if (depth < 0 || i < depth - 1) {
+				prefix = prefix.resolve(segments.get(i));
+			}
+		}
+		return prefix;
+	}
+
+	/**
+	 * Returns the number of names (relative to the start of the walk) a match
+	 * has, or -1 if matches may be at any depth
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * Returns whether the file matches
+	 *
+	 * @param relativePath
+	 *            The path of the file, relative to the start of the walk
+	 */
+	public boolean matches(Path relativePath) {
+		if (nameOnly) {
+			Path name = relativePath.getFileName();
+			return name != null && matcher.matches(name);
+		}
+		return matcher.matches(relativePath);
+	}
+
+	/**
+	 * Returns whether anything below the directory may match. When false, the
+	 * directory's sub-tree can be skipped.
+	 *
+	 * @param relativeDir
+	 *            The path of the directory, relative to the start of the walk
+	 */
+	public boolean canMatchBelow(Path relativeDir) {
+		if (nameOnly || relativeDir.toString().isEmpty()) {
+			return true;
+		}
+		int count = relativeDir.getNameCount();
+		if (depth >= 0 && count >= depth) {
+			return false;
+		}
+		for (int i = 0; i < count && i < segments.size(); i++) {
+			PathMatcher segmentMatcher = segmentMatchers.get(i);
+			Path name = relativeDir.getName(i);
+			if (segmentMatcher == null ? !segments.get(i).equals(name.toString()) : !segmentMatcher.matches(name)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns a predicate for {@link #canMatchBelow(Path)}, taking paths below
+	 * <code>start</code>
+	 */
+	public Predicate<Path> toDirectoryPredicate(final Path start) {
+		return new Predicate<Path>() {
+			@Override
+			public boolean apply(Path dir) {
+				return canMatchBelow(start.relativize(dir));
+			}
+		};
+	}
+
+	/**
+	 * Returns a predicate for {@link #matches(Path)}, taking paths below
+	 * <code>start</code>
+	 */
+	public Predicate<Path> toFilePredicate(final Path start) {
+		return new Predicate<Path>() {
+			@Override
+			public boolean apply(Path file) {
+				return matches(start.relativize(file));
+			}
+		};
+	}
+
+	@Override
+	public String toString() {
+		return pattern;
+	}
+
+	private static boolean isWildcard(String segment) {
+		for (int i = 0; i < segment.length(); i++) {
+			switch (segment.charAt(i)) {
+			case '*':
+			case '?':
+			case '[':
+			case '{':
+			case '\\':
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns whether a separator appears within [...] or {...}, in which case
+	 * the pattern cannot be split into segments
+	 */
+	private static boolean hasSeparatorInGroup(String pattern) {
+		int nesting = 0;
+		for (int i = 0; i < pattern.length(); i++) {
+			char c = pattern.charAt(i);
+			if (c == '[' || c == '{') {
+				nesting++;
+			} else if ((c == ']' || c == '}') && nesting > 0) {
+				nesting--;
+			} else if (c == '/' && nesting > 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,56 @@
+package jacle.common.io.dir.util;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Creates destination directories while remembering which ones are known to
+ * exist, so that writing many files into the same directories does not cost
+ * a stat (a network round trip on NFS) per file. Unlike
+ * {@link Files#createDirectories}, existence is never checked up front: the
+ * directory is simply created, and an existing one is recognized by
+ * {@link FileAlreadyExistsException}. Thread safe.
+ */
+public class KnownDirectories {
+
+	private final Set<Path> known = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Creates the directory (if not known to exist) and any missing parents
+	 */
+	public void create(Path dir) throws IOException {
+		if (known.contains(dir)) {
+			return;
+		}
+		try {
+			Files.createDirectory(dir);
+		} catch (FileAlreadyExistsException e) {
+			// Not necessarily a directory, but then writing into it will say so
+		} catch (NoSuchFileException e) {
+			Path parent = dir.getParent();
+			if (parent == null) {
+				throw e;
+			}
+			create(parent);
+			try {
+				Files.createDirectory(dir);
+			} catch (FileAlreadyExistsException e2) {
+				// Created concurrently
+			}
+		}
+		known.add(dir);
+	}
+
+	/**
+	 * Records that the directory exists (e.g. because it was just created by
+	 * other means)
+	 */
+	public void add(Path dir) {
+		known.add(dir);
+	}
+}
@@ -0,0 +1,108 @@
+package jacle.common.io.dir.visitors;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Function;
+
+/**
+ * Hands each file to an executor, which applies the function, while the walk
+ * moves on. At most <code>maxInFlight</code> files are queued or running at
+ * once; beyond that the walking thread blocks until one finishes. The future
+ * returned by {@link #getFuture()} completes once the walk has ended (see
+ * {@link #walkFinished(Throwable)}) and every function call has returned.
+ * <p>
+ * The function returning {@link FileVisitResult#TERMINATE}, or throwing,
+ * stops the walk; other results are ignored, as the walk has already moved
+ * on. Cancelling the future also stops the walk.
+ */
+public class AsyncFunctionVisitor extends SimpleFileVisitor<Path> {
+
+	private final Function<Path, FileVisitResult> function;
+	private final Executor executor;
+	private final Semaphore inFlight;
+	private final CompletableFuture<Void> future = new CompletableFuture<>();
+	/**
+	 * One count for the walk itself, plus one per submitted file
+	 */
+	private final AtomicInteger pending = new AtomicInteger(1);
+	private volatile boolean terminated;
+
+	public AsyncFunctionVisitor(Function<Path, FileVisitResult> function, Executor executor, int maxInFlight) {
+		if (maxInFlight < 1) {
+			throw new IllegalArgumentException(String.format("Max in-flight must be positive [%d]", maxInFlight));
+		}
+		this.function = function;
+		this.executor = executor;
+		this.inFlight = new Semaphore(maxInFlight);
+	}
+
+	public CompletableFuture<Void> getFuture() {
+		return future;
+	}
+
+	@Override
+	public FileVisitResult visitFile(final Path file, BasicFileAttributes attrs) throws IOException {
+		try {
+			inFlight.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(String.format("Interrupted while waiting to process [%s]", file));
+		}
+		if (terminated || future.isDone()) {
+			inFlight.release();
+			return FileVisitResult.TERMINATE;
+		}
+		pending.incrementAndGet();
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						if (!terminated && !future.isDone() && function.apply(file) == FileVisitResult.TERMINATE) {
+							terminated = true;
+						}
+					} catch (RuntimeException | Error e) {
+						terminated = true;
+						future.completeExceptionally(e);
+					} finally {
+						inFlight.release();
+						finishOne();
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			inFlight.release();
+			finishOne();
+			throw e;
+		}
+		return FileVisitResult.CONTINUE;
+	}
+
+	/**
+	 * Must be called once the walk has returned (or failed, in which case the
+	 * future completes with the failure)
+	 */
+	public void walkFinished(Throwable failure) {
+		if (failure != null) {
+			terminated = true;
+			future.completeExceptionally(failure);
+		}
+		finishOne();
+	}
+
+	private void finishOne() {
+		if (pending.decrementAndGet() == 0) {
+			future.complete(null);
+		}
+	}
+}
@@ -1,16 +1,29 @@
 package jacle.common.io.dir.visitors;
 
+import jacle.common.io.dir.walkers.SecureFileTreeWalker;
+
 import java.io.IOException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.SecureDirectoryStream;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 
+/**
+ * Deletes the files of the tree, leaving the directories. Under a
+ * {@link SecureFileTreeWalker}, files are deleted relative to the open handle
+ * of their directory.
+ */
 public class CleanDirVisitor extends SimpleFileVisitor<Path> {
     @Override
     public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-            Files.delete(file);
+            SecureDirectoryStream<Path> parent = SecureFileTreeWalker.getParentStream(file);
+            if (parent != null) {
+                parent.deleteFile(file.getFileName());
+            } else {
+                Files.delete(file);
+            }
             return FileVisitResult.CONTINUE;
     }
 }
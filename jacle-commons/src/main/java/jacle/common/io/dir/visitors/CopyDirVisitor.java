@@ -1,6 +1,9 @@
 package jacle.common.io.dir.visitors;
 
+import jacle.common.io.dir.copy.FileCopyStrategy;
+
 import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -10,14 +13,18 @@ import java.nio.file.attribute.BasicFileAttributes;
 
 public class CopyDirVisitor extends SimpleFileVisitor<Path> {
 
-	private Path fromPath;
-	private Path toPath;
+	private TargetResolver targets;
 	private StandardCopyOption copyOption;
+	private FileCopyStrategy copyStrategy;
 
-	public CopyDirVisitor(Path fromPath, Path toPath, StandardCopyOption copyOption) {
-		this.fromPath = fromPath;
-		this.toPath = toPath;
+	public CopyDirVisitor(Path fromPath, Path toPath, StandardCopyOption copyOption, FileCopyStrategy copyStrategy) {
+		this.targets = new TargetResolver(fromPath, toPath);
 		this.copyOption = copyOption;
+		this.copyStrategy = copyStrategy;
+	}
+
+	public CopyDirVisitor(Path fromPath, Path toPath, StandardCopyOption copyOption) {
+		this(fromPath, toPath, copyOption, FileCopyStrategy.DEFAULT);
 	}
 
 	public CopyDirVisitor(Path fromPath, Path toPath) {
@@ -26,16 +33,25 @@ public class CopyDirVisitor extends SimpleFileVisitor<Path> {
 
 	@Override
 	public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
-		Path targetPath = toPath.resolve(fromPath.relativize(dir));
-		if (!Files.exists(targetPath)) {
+		Path targetPath = targets.resolve(dir);
+		try {
 			Files.createDirectory(targetPath);
+		} catch (FileAlreadyExistsException e) {
+			// Copying into an existing tree
 		}
+		targets.enterDirectory(dir, targetPath);
 		return FileVisitResult.CONTINUE;
 	}
 
 	@Override
 	public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-		Files.copy(file, toPath.resolve(fromPath.relativize(file)), copyOption);
+		copyStrategy.copy(file, targets.resolve(file), attrs, copyOption);
 		return FileVisitResult.CONTINUE;
 	}
+
+	@Override
+	public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+		targets.exitDirectory(dir);
+		return super.postVisitDirectory(dir, exc);
+	}
 }
@@ -1,6 +1,9 @@
 package jacle.common.io.dir.visitors;
 
+import jacle.common.io.dir.copy.FileCopyStrategy;
+
 import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -8,27 +11,49 @@ import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 
 import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
 
 public class CopyPredicateVisitor extends SimpleFileVisitor<Path> {
 
-	private Path fromPath;
-	private Path toPath;
+	private TargetResolver targets;
 	private Predicate<Path> copyPredicate;
+	private Predicate<Path> filePredicate;
+	private FileCopyStrategy copyStrategy;
 
+	/**
+	 * @param copyPredicate
+	 *            Decides which directories are copied (and walked)
+	 * @param filePredicate
+	 *            Decides which files of the copied directories are copied
+	 */
 	public CopyPredicateVisitor(Path fromPath, Path toPath,
-			Predicate<Path> copyPredicate) {
-		this.fromPath = fromPath;
-		this.toPath = toPath;
+			Predicate<Path> copyPredicate, Predicate<Path> filePredicate, FileCopyStrategy copyStrategy) {
+		this.targets = new TargetResolver(fromPath, toPath);
 		this.copyPredicate = copyPredicate;
+		this.filePredicate = filePredicate;
+		this.copyStrategy = copyStrategy;
+	}
+
+	public CopyPredicateVisitor(Path fromPath, Path toPath,
+			Predicate<Path> copyPredicate, FileCopyStrategy copyStrategy) {
+		this(fromPath, toPath, copyPredicate, Predicates.<Path>alwaysTrue(), copyStrategy);
+	}
+
+	public CopyPredicateVisitor(Path fromPath, Path toPath,
+			Predicate<Path> copyPredicate) {
+		this(fromPath, toPath, copyPredicate, FileCopyStrategy.DEFAULT);
 	}
 
 	@Override
 	public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
 		if (copyPredicate.apply(dir)) {
-			Path targetPath = toPath.resolve(fromPath.relativize(dir));
-			if (!Files.exists(targetPath)) {
+			Path targetPath = targets.resolve(dir);
+			try {
 				Files.createDirectory(targetPath);
+			} catch (FileAlreadyExistsException e) {
+				// Copying into an existing tree
 			}
+			targets.enterDirectory(dir, targetPath);
 			return FileVisitResult.CONTINUE;
 		}
 		return FileVisitResult.SKIP_SUBTREE;
@@ -36,7 +61,15 @@ public class CopyPredicateVisitor extends SimpleFileVisitor<Path> {
 
 	@Override
 	public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-		Files.copy(file, toPath.resolve(fromPath.relativize(file)));
+		if (filePredicate.apply(file)) {
+			copyStrategy.copy(file, targets.resolve(file), attrs);
+		}
 		return FileVisitResult.CONTINUE;
 	}
+
+	@Override
+	public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+		targets.exitDirectory(dir);
+		return super.postVisitDirectory(dir, exc);
+	}
 }
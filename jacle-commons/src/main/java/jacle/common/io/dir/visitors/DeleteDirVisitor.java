@@ -1,24 +1,42 @@
 package jacle.common.io.dir.visitors;
 
+import jacle.common.io.dir.walkers.SecureFileTreeWalker;
+
 import java.io.IOException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.SecureDirectoryStream;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 
-public class DeleteDirVisitor  extends SimpleFileVisitor<Path> {
+/**
+ * Deletes every entry of the tree, each directory after its contents. Under a
+ * {@link SecureFileTreeWalker}, entries are deleted relative to the open
+ * handle of their directory.
+ */
+public class DeleteDirVisitor extends SimpleFileVisitor<Path> {
 
     @Override
     public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-        Files.delete(file);
+        SecureDirectoryStream<Path> parent = SecureFileTreeWalker.getParentStream(file);
+        if (parent != null) {
+            parent.deleteFile(file.getFileName());
+        } else {
+            Files.delete(file);
+        }
         return FileVisitResult.CONTINUE;
     }
 
     @Override
     public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
         if(exc == null){
-            Files.delete(dir);
+            SecureDirectoryStream<Path> parent = SecureFileTreeWalker.getParentStream(dir);
+            if (parent != null) {
+                parent.deleteDirectory(dir.getFileName());
+            } else {
+                Files.delete(dir);
+            }
             return FileVisitResult.CONTINUE;
         }
         throw exc;
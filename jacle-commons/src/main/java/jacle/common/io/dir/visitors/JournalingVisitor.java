@@ -0,0 +1,111 @@
+package jacle.common.io.dir.visitors;
+
+import jacle.common.io.dir.copy.CopyJournal;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.FileVisitor;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Wraps a copy visitor, skipping whatever a {@link CopyJournal} says an
+ * earlier run already completed, and recording what this run completes.
+ * Directories whose whole sub-tree is done are skipped without being listed,
+ * so nothing below them is checked for changes; only files outside of them
+ * are compared (by size and modification time) to what was copied.
+ * A directory is only recorded as done if nothing below it failed, which
+ * matters for parallel walks, where failures do not stop the walk. Thread
+ * safe if the wrapped visitor is.
+ */
+public class JournalingVisitor implements FileVisitor<Path> {
+
+	private final Path fromPath;
+	private final FileVisitor<Path> visitor;
+	private final CopyJournal journal;
+	/**
+	 * Directories with a failure somewhere below them
+	 */
+	private final Set<Path> failedDirectories = ConcurrentHashMap.newKeySet();
+
+	public JournalingVisitor(Path fromPath, FileVisitor<Path> visitor, CopyJournal journal) {
+		this.fromPath = fromPath;
+		this.visitor = visitor;
+		this.journal = journal;
+	}
+
+	@Override
+	public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+		if (!dir.equals(fromPath) && journal.isDirectoryDone(relative(dir))) {
+			return FileVisitResult.SKIP_SUBTREE;
+		}
+		try {
+			return visitor.preVisitDirectory(dir, attrs);
+		} catch (IOException | RuntimeException e) {
+			failed(dir);
+			throw e;
+		}
+	}
+
+	@Override
+	public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+		String relativePath = relative(file);
+		long modified = attrs.lastModifiedTime().toMillis();
+		if (journal.isFileDone(relativePath, attrs.size(), modified)) {
+			return FileVisitResult.CONTINUE;
+		}
+		FileVisitResult result;
+		try {
+			result = visitor.visitFile(file, attrs);
+		} catch (IOException | RuntimeException e) {
+			failed(file);
+			throw e;
+		}
+		journal.fileDone(relativePath, attrs.size(), modified);
+		return result;
+	}
+
+	@Override
+	public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+		try {
+			return visitor.visitFileFailed(file, exc);
+		} catch (IOException | RuntimeException e) {
+			failed(file);
+			throw e;
+		}
+	}
+
+	@Override
+	public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+		FileVisitResult result;
+		try {
+			result = visitor.postVisitDirectory(dir, exc);
+		} catch (IOException | RuntimeException e) {
+			failedDirectories.remove(dir);
+			failed(dir);
+			throw e;
+		}
+		if (failedDirectories.remove(dir)) {
+			failed(dir);
+		} else if (!dir.equals(fromPath)) {
+			journal.directoryDone(relative(dir));
+		}
+		return result;
+	}
+
+	/**
+	 * Marks the parent of a failed entry, which keeps it from being recorded
+	 * as done. Its own parent is marked when it is post-visited.
+	 */
+	private void failed(Path path) {
+		if (!path.equals(fromPath)) {
+			failedDirectories.add(path.getParent());
+		}
+	}
+
+	private String relative(Path path) {
+		return fromPath.relativize(path).toString();
+	}
+}
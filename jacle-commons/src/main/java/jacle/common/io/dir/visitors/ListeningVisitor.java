@@ -0,0 +1,85 @@
+package jacle.common.io.dir.visitors;
+
+import jacle.common.io.dir.metrics.DirListener;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.FileVisitor;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Wraps another visitor, reporting each entry it processes to a
+ * {@link DirListener}. Thread safe if the wrapped visitor and listener are.
+ */
+public class ListeningVisitor implements FileVisitor<Path> {
+
+	private final FileVisitor<Path> visitor;
+	private final DirListener listener;
+	private final boolean reportFiles;
+
+	public ListeningVisitor(FileVisitor<Path> visitor, DirListener listener) {
+		this(visitor, listener, true);
+	}
+
+	/**
+	 * @param reportFiles
+	 *            Whether files are reported once visited, or left to be
+	 *            reported by the wrapped visitor (e.g. once an asynchronous
+	 *            copy completes). Failures to visit them are reported either
+	 *            way.
+	 */
+	public ListeningVisitor(FileVisitor<Path> visitor, DirListener listener, boolean reportFiles) {
+		this.visitor = visitor;
+		this.listener = listener;
+		this.reportFiles = reportFiles;
+	}
+
+	@Override
+	public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+		try {
+			return visitor.preVisitDirectory(dir, attrs);
+		} catch (IOException e) {
+			listener.onError(dir, e);
+			throw e;
+		}
+	}
+
+	@Override
+	public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+		FileVisitResult result;
+		try {
+			result = visitor.visitFile(file, attrs);
+		} catch (IOException e) {
+			listener.onError(file, e);
+			throw e;
+		}
+		if (reportFiles) {
+			listener.onFile(file, attrs.size());
+		}
+		return result;
+	}
+
+	@Override
+	public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+		try {
+			return visitor.visitFileFailed(file, exc);
+		} catch (IOException e) {
+			listener.onError(file, e);
+			throw e;
+		}
+	}
+
+	@Override
+	public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+		FileVisitResult result;
+		try {
+			result = visitor.postVisitDirectory(dir, exc);
+		} catch (IOException e) {
+			listener.onError(dir, e);
+			throw e;
+		}
+		listener.onDirectory(dir);
+		return result;
+	}
+}
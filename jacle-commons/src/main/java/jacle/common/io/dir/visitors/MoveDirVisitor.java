@@ -0,0 +1,91 @@
+package jacle.common.io.dir.visitors;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Moves a directory tree into another (possibly existing) directory. Each
+ * sub-directory that does not exist in the destination is renamed in a single
+ * step when the file system allows it. Otherwise (e.g. a move between devices)
+ * the walk descends, moving file by file, so each file is copied and then
+ * deleted before the next one is started. Source directories are deleted once
+ * emptied.
+ */
+public class MoveDirVisitor extends SimpleFileVisitor<Path> {
+
+	private final Path fromPath;
+	private final TargetResolver targets;
+	private volatile boolean renameSupported = true;
+
+	public MoveDirVisitor(Path fromPath, Path toPath) {
+		this.fromPath = fromPath;
+		this.targets = new TargetResolver(fromPath, toPath);
+	}
+
+	@Override
+	public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+		Path targetPath = targets.resolve(dir);
+		BasicFileAttributes targetAttrs = readAttributes(targetPath);
+		if (targetAttrs != null) {
+			if (!targetAttrs.isDirectory()) {
+				throw new FileAlreadyExistsException(targetPath.toString(), null, "Not a directory");
+			}
+			targets.enterDirectory(dir, targetPath);
+			return FileVisitResult.CONTINUE;
+		}
+		if (renameSupported && !dir.equals(fromPath)) {
+			try {
+				Files.move(dir, targetPath, StandardCopyOption.ATOMIC_MOVE);
+				return FileVisitResult.SKIP_SUBTREE;
+			} catch (AtomicMoveNotSupportedException e) {
+				// Different file store; stop trying and move file by file
+				renameSupported = false;
+			}
+		}
+		Files.createDirectory(targetPath);
+		targets.enterDirectory(dir, targetPath);
+		return FileVisitResult.CONTINUE;
+	}
+
+	@Override
+	public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+		Files.move(file, targets.resolve(file), StandardCopyOption.REPLACE_EXISTING);
+		return FileVisitResult.CONTINUE;
+	}
+
+	@Override
+	public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+		targets.exitDirectory(dir);
+		if (exc != null) {
+			throw exc;
+		}
+		Files.delete(dir);
+		return FileVisitResult.CONTINUE;
+	}
+
+	/**
+	 * Returns the attributes of the target (following a link to a directory
+	 * to merge into), or null if there is nothing there
+	 */
+	private static BasicFileAttributes readAttributes(Path targetPath) throws IOException {
+		BasicFileAttributes attrs;
+		try {
+			attrs = Files.readAttributes(targetPath, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+		if (attrs.isSymbolicLink() && Files.isDirectory(targetPath)) {
+			return Files.readAttributes(targetPath, BasicFileAttributes.class);
+		}
+		return attrs;
+	}
+}
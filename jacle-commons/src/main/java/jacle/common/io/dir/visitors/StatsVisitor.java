@@ -0,0 +1,34 @@
+package jacle.common.io.dir.visitors;
+
+import jacle.common.io.dir.DirStats;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Adds the size of every file to a {@link DirStats}, using the attributes the
+ * walker has already read. Thread safe.
+ */
+public class StatsVisitor extends SimpleFileVisitor<Path> {
+
+	private final DirStats stats;
+
+	public StatsVisitor(DirStats stats) {
+		this.stats = stats;
+	}
+
+	@Override
+	public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+		stats.addDirectory();
+		return FileVisitResult.CONTINUE;
+	}
+
+	@Override
+	public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+		stats.addFile(file, attrs.size());
+		return FileVisitResult.CONTINUE;
+	}
+}
@@ -0,0 +1,171 @@
+package jacle.common.io.dir.visitors;
+
+import jacle.common.io.dir.SyncResult;
+import jacle.common.io.dir.copy.FileCopyStrategy;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Copies only the files that are missing or differ in the destination, and
+ * optionally deletes destination entries that no longer exist in the source.
+ * Files are considered unchanged when their size and modification time
+ * (to the millisecond, since file systems store times at different
+ * precisions) match, or, when comparing contents, when their bytes match.
+ * Copied files keep the source attributes so that the next sync can skip them.
+ * <p>
+ * Thread safe, so it may be used with a parallel walk.
+ */
+public class SyncDirVisitor extends SimpleFileVisitor<Path> {
+
+	private static final int COMPARE_BUFFER_SIZE = 64 * 1024;
+
+	private final Path fromPath;
+	private final Path toPath;
+	private final FileCopyStrategy copyStrategy;
+	private final boolean compareContents;
+	private final boolean deleteExtraneous;
+	private final SyncResult result;
+
+	public SyncDirVisitor(Path fromPath, Path toPath, FileCopyStrategy copyStrategy,
+			boolean compareContents, boolean deleteExtraneous, SyncResult result) {
+		this.fromPath = fromPath;
+		this.toPath = toPath;
+		this.copyStrategy = copyStrategy;
+		this.compareContents = compareContents;
+		this.deleteExtraneous = deleteExtraneous;
+		this.result = result;
+	}
+
+	@Override
+	public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+		Path relativePath = fromPath.relativize(dir);
+		Path targetPath = toPath.resolve(relativePath);
+		BasicFileAttributes targetAttrs = readTargetAttributes(targetPath);
+		if (targetAttrs != null && !targetAttrs.isDirectory()) {
+			Files.delete(targetPath);
+			result.addDeleted(relativePath);
+			targetAttrs = null;
+		}
+		if (targetAttrs == null) {
+			Files.createDirectory(targetPath);
+		}
+		return FileVisitResult.CONTINUE;
+	}
+
+	@Override
+	public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+		Path relativePath = fromPath.relativize(file);
+		Path targetPath = toPath.resolve(relativePath);
+		BasicFileAttributes targetAttrs = readTargetAttributes(targetPath);
+		if (targetAttrs != null) {
+			if (isUnchanged(file, attrs, targetPath, targetAttrs)) {
+				result.addSkipped();
+				return FileVisitResult.CONTINUE;
+			}
+			if (targetAttrs.isDirectory()) {
+				Files.walkFileTree(targetPath, new DeleteDirVisitor());
+				result.addDeleted(relativePath);
+			}
+		}
+		copyStrategy.copy(file, targetPath, attrs,
+				StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+		result.addCopied(relativePath, attrs.size());
+		return FileVisitResult.CONTINUE;
+	}
+
+	@Override
+	public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+		if (exc != null) {
+			throw exc;
+		}
+		if (deleteExtraneous) {
+			Path targetDir = toPath.resolve(fromPath.relativize(dir));
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(targetDir)) {
+				for (Path targetEntry : stream) {
+					Path sourceEntry = dir.resolve(targetEntry.getFileName().toString());
+					if (!Files.exists(sourceEntry, LinkOption.NOFOLLOW_LINKS)) {
+						deleteEntry(targetEntry);
+						result.addDeleted(toPath.relativize(targetEntry));
+					}
+				}
+			}
+		}
+		return FileVisitResult.CONTINUE;
+	}
+
+	private boolean isUnchanged(Path source, BasicFileAttributes sourceAttrs,
+			Path target, BasicFileAttributes targetAttrs) throws IOException {
+		if (!targetAttrs.isRegularFile() || sourceAttrs.size() != targetAttrs.size()) {
+			return false;
+		}
+		if (compareContents) {
+			return contentsEqual(source, target);
+		}
+		return sourceAttrs.lastModifiedTime().toMillis() == targetAttrs.lastModifiedTime().toMillis();
+	}
+
+	/**
+	 * Compares the files byte by byte, stopping at the first difference
+	 */
+	private static boolean contentsEqual(Path a, Path b) throws IOException {
+		try (InputStream inA = new BufferedInputStream(Files.newInputStream(a), COMPARE_BUFFER_SIZE);
+				InputStream inB = new BufferedInputStream(Files.newInputStream(b), COMPARE_BUFFER_SIZE)) {
+			byte[] bufferA = new byte[COMPARE_BUFFER_SIZE];
+			byte[] bufferB = new byte[COMPARE_BUFFER_SIZE];
+			while (true) {
+				int readA = readFully(inA, bufferA);
+				int readB = readFully(inB, bufferB);
+				if (readA != readB) {
+					return false;
+				}
+				for (int i = 0; i < readA; i++) {
+					if (bufferA[i] != bufferB[i]) {
+						return false;
+					}
+				}
+				if (readA < bufferA.length) {
+					return true;
+				}
+			}
+		}
+	}
+
+	private static int readFully(InputStream in, byte[] buffer) throws IOException {
+		int total = 0;
+		while (total < buffer.length) {
+			int read = in.read(buffer, total, buffer.length - total);
+			if (read < 0) {
+				break;
+			}
+			total += read;
+		}
+		return total;
+	}
+
+	private static BasicFileAttributes readTargetAttributes(Path target) throws IOException {
+		try {
+			return Files.readAttributes(target, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+	}
+
+	private static void deleteEntry(Path target) throws IOException {
+		if (Files.isDirectory(target, LinkOption.NOFOLLOW_LINKS)) {
+			Files.walkFileTree(target, new DeleteDirVisitor());
+		} else {
+			Files.delete(target);
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package jacle.common.io.dir.visitors;
+
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Maps the entries of a source tree to their targets below another directory.
+ * Each target directory is resolved once, when its source directory is
+ * entered, and the targets of its entries are built by appending their file
+ * names, rather than relativizing and resolving the full path of every entry.
+ * <p>
+ * Thread safe, so it may be used with a parallel walk, where a directory is
+ * always entered before its entries and exited after them. Directories are
+ * forgotten once exited, so only the directories being walked are held.
+ */
+class TargetResolver {
+
+	private final Path fromPath;
+	private final Path toPath;
+	private final ConcurrentMap<Path, Path> targetDirs = new ConcurrentHashMap<>();
+
+	TargetResolver(Path fromPath, Path toPath) {
+		this.fromPath = fromPath;
+		this.toPath = toPath;
+	}
+
+	/**
+	 * Returns the target of the entry
+	 */
+	Path resolve(Path entry) {
+		Path parent = entry.getParent();
+		Path targetDir = (parent == null) ? null : targetDirs.get(parent);
+		if (targetDir != null) {
+			return targetDir.resolve(entry.getFileName());
+		}
+		// The start of the walk, or an entry of a directory never entered
+		return toPath.resolve(fromPath.relativize(entry));
+	}
+
+	/**
+	 * Remembers the target of the directory (see {@link #resolve(Path)}) for
+	 * its entries, until {@link #exitDirectory(Path)}
+	 */
+	void enterDirectory(Path dir, Path targetDir) {
+		targetDirs.put(dir, targetDir);
+	}
+
+	void exitDirectory(Path dir) {
+		targetDirs.remove(dir);
+	}
+}
@@ -0,0 +1,54 @@
+package jacle.common.io.dir.visitors;
+
+import jacle.common.io.dir.throttle.DirThrottle;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.FileVisitor;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Wraps another visitor, waiting on a {@link DirThrottle} before each file
+ * and directory is handed to it. Thread safe if the wrapped visitor is.
+ */
+public class ThrottlingVisitor implements FileVisitor<Path> {
+
+	private final FileVisitor<Path> visitor;
+	private final DirThrottle throttle;
+	private final boolean countBytes;
+
+	/**
+	 * @param countBytes
+	 *            Whether the size of each file counts against the byte limit
+	 *            (i.e. the visitor copies files), or only against the
+	 *            operation limit
+	 */
+	public ThrottlingVisitor(FileVisitor<Path> visitor, DirThrottle throttle, boolean countBytes) {
+		this.visitor = visitor;
+		this.throttle = throttle;
+		this.countBytes = countBytes;
+	}
+
+	@Override
+	public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+		throttle.acquire(0, 1);
+		return visitor.preVisitDirectory(dir, attrs);
+	}
+
+	@Override
+	public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+		throttle.acquire(countBytes ? attrs.size() : 0, 1);
+		return visitor.visitFile(file, attrs);
+	}
+
+	@Override
+	public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+		return visitor.visitFileFailed(file, exc);
+	}
+
+	@Override
+	public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+		return visitor.postVisitDirectory(dir, exc);
+	}
+}
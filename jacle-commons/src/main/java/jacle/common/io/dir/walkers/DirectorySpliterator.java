@@ -0,0 +1,154 @@
+package jacle.common.io.dir.walkers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+
+/**
+ * A {@link Spliterator} over the entries below a directory, for streams of
+ * directory trees (see
+ * {@link jacle.common.io.dir.DirUtils#walkStream(Path, jacle.common.io.dir.DirOptions)}).
+ * It splits at sub-directory boundaries: the directories discovered but not
+ * yet listed are handed out to the other half, and a single large directory
+ * is split by its entries, so a parallel stream lists and processes sibling
+ * sub-trees on all of its threads.
+ * <p>
+ * Each directory is read completely when it is listed, so no directory stays
+ * open and the stream need not be closed. Entries are reported in no
+ * particular order, and symbolic links are not followed. I/O failures are
+ * thrown as {@link UncheckedIOException}, as with
+ * {@link Files#walk(Path, java.nio.file.FileVisitOption...)}.
+ */
+public class DirectorySpliterator implements Spliterator<Path> {
+
+	/**
+	 * The number of remaining entries of a directory below which they are not
+	 * split
+	 */
+	static final int MIN_SPLIT_ENTRIES = 64;
+
+	private final boolean includeDirectories;
+	private final Predicate<Path> descend;
+	private final ArrayDeque<Path> pendingDirs;
+	private List<Path> entries;
+	private int index;
+
+	/**
+	 * @param start
+	 *            The directory whose entries (recursively) are reported. Not
+	 *            reported itself.
+	 * @param includeDirectories
+	 *            Whether directories are reported, or only the other entries
+	 * @param descend
+	 *            Decides which sub-directories are listed
+	 */
+	public DirectorySpliterator(Path start, boolean includeDirectories, Predicate<Path> descend) {
+		this(includeDirectories, descend, new ArrayDeque<Path>(), new ArrayList<Path>(0));
+		pendingDirs.add(start);
+	}
+
+	/**
+	 * Reports every entry below <code>start</code>
+	 */
+	public DirectorySpliterator(Path start) {
+		this(start, true, Predicates.<Path>alwaysTrue());
+	}
+
+	private DirectorySpliterator(boolean includeDirectories, Predicate<Path> descend,
+			ArrayDeque<Path> pendingDirs, List<Path> entries) {
+		this.includeDirectories = includeDirectories;
+		this.descend = descend;
+		this.pendingDirs = pendingDirs;
+		this.entries = entries;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super Path> action) {
+		while (index >= entries.size()) {
+			if (pendingDirs.isEmpty()) {
+				return false;
+			}
+			listNext();
+		}
+		action.accept(entries.get(index++));
+		return true;
+	}
+
+	@Override
+	public Spliterator<Path> trySplit() {
+		if (index >= entries.size() && pendingDirs.size() == 1) {
+			// Nothing to share yet; list the directory to find out
+			listNext();
+		}
+		int pending = pendingDirs.size();
+		if (pending > 1 || (pending == 1 && index < entries.size())) {
+			ArrayDeque<Path> split = new ArrayDeque<>();
+			for (int i = 0, count = Math.max(1, pending / 2); i < count; i++) {
+				split.add(pendingDirs.pollLast());
+			}
+			return new DirectorySpliterator(includeDirectories, descend, split, new ArrayList<Path>(0));
+		}
+		int remaining = entries.size() - index;
+		if (remaining >= MIN_SPLIT_ENTRIES) {
+			int mid = index + remaining / 2;
+			List<Path> split = new ArrayList<>(entries.subList(mid, entries.size()));
+			entries = entries.subList(index, mid);
+			index = 0;
+			return new DirectorySpliterator(includeDirectories, descend, new ArrayDeque<Path>(), split);
+		}
+		return null;
+	}
+
+	@Override
+	public long estimateSize() {
+		return Long.MAX_VALUE;
+	}
+
+	@Override
+	public int characteristics() {
+		return DISTINCT | NONNULL;
+	}
+
+	/**
+	 * Reads the entries of the next pending directory, queueing its
+	 * sub-directories to be listed in turn
+	 */
+	private void listNext() {
+		Path dir = pendingDirs.poll();
+		List<Path> listed = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+			for (Path entry : stream) {
+				BasicFileAttributes attrs = Files.readAttributes(entry, BasicFileAttributes.class,
+						LinkOption.NOFOLLOW_LINKS);
+				if (attrs.isDirectory()) {
+					if (descend.apply(entry)) {
+						pendingDirs.add(entry);
+					}
+					if (!includeDirectories) {
+						continue;
+					}
+				}
+				listed.add(entry);
+			}
+		} catch (DirectoryIteratorException e) {
+			throw new UncheckedIOException(e.getCause());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		entries = listed;
+		index = 0;
+	}
+}
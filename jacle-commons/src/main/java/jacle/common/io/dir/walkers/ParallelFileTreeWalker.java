@@ -0,0 +1,373 @@
+package jacle.common.io.dir.walkers;
+
+import jacle.common.io.dir.DirWalkException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.FileVisitor;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A multi-threaded alternative to
+ * {@link Files#walkFileTree(Path, java.util.Set, int, FileVisitor)}.
+ * <p>
+ * Each directory is listed by its own task on the provided executor, so
+ * sibling sub-trees are walked concurrently. Large directories are further
+ * split into batches of entries. The visitor sees the same ordering guarantees
+ * per directory as with the JDK walker:
+ * <ul>
+ * <li>{@link FileVisitor#preVisitDirectory} is called before any entry of the
+ * directory is visited</li>
+ * <li>{@link FileVisitor#postVisitDirectory} is called after every entry of
+ * the directory (including whole sub-trees) has been visited</li>
+ * </ul>
+ * Beyond that, calls for different directories happen concurrently, so the
+ * visitor must be thread safe.
+ * <p>
+ * Unlike the JDK walker, an {@link IOException} thrown by the visitor does not
+ * stop the walk. It is recorded against the entry, and all such failures are
+ * thrown together as a {@link DirWalkException} once the walk completes. A
+ * failed {@link FileVisitor#preVisitDirectory} skips that sub-tree.
+ * {@link FileVisitResult#TERMINATE} stops the walk as soon as the running
+ * tasks notice, and {@link FileVisitResult#SKIP_SIBLINGS} stops the listing of
+ * the parent directory (sub-trees already started are still completed).
+ * <p>
+ * Tasks never block waiting on each other, so any {@link ExecutorService} may
+ * be used, although a work-stealing pool (see
+ * {@link jacle.common.thread.ExecutorsExt#newWorkStealingPool(int, String)})
+ * gives the best throughput.
+ */
+public class ParallelFileTreeWalker {
+
+	/**
+	 * The number of entries of a single directory handled by one task
+	 */
+	static final int BATCH_SIZE = 256;
+
+	private final ExecutorService executor;
+	private final boolean followLinks;
+
+	/**
+	 * @param executor
+	 *            Runs the listing/visiting tasks. Not shut down by this class.
+	 * @param followLinks
+	 *            Whether symbolic links are followed (equivalent to
+	 *            {@link java.nio.file.FileVisitOption#FOLLOW_LINKS})
+	 */
+	public ParallelFileTreeWalker(ExecutorService executor, boolean followLinks) {
+		this.executor = executor;
+		this.followLinks = followLinks;
+	}
+
+	/**
+	 * Walks the tree rooted at <code>start</code>, blocking until every entry
+	 * has been visited
+	 *
+	 * @throws DirWalkException
+	 *             If the visitor failed for one or more entries
+	 * @throws IOException
+	 *             If the start path cannot be read
+	 */
+	public void walk(Path start, FileVisitor<? super Path> visitor) throws IOException {
+		new Walk(start, visitor).run();
+	}
+
+	/**
+	 * A directory whose entries are still being visited
+	 */
+	private static class Node {
+		final Node parent;
+		final Path dir;
+		final Object key;
+		/**
+		 * One count for the listing itself, plus one per outstanding batch or
+		 * sub-directory
+		 */
+		final AtomicInteger pending = new AtomicInteger(1);
+		volatile IOException listFailure;
+		volatile boolean skipSiblings;
+
+		Node(Node parent, Path dir, Object key) {
+			this.parent = parent;
+			this.dir = dir;
+			this.key = key;
+		}
+	}
+
+	/**
+	 * The state of a single call to {@link ParallelFileTreeWalker#walk}
+	 */
+	private class Walk {
+
+		private final Path start;
+		private final FileVisitor<? super Path> visitor;
+		private final CountDownLatch done = new CountDownLatch(1);
+		private final Map<Path, IOException> failures =
+				Collections.synchronizedMap(new LinkedHashMap<Path, IOException>());
+		private final AtomicReference<Throwable> unexpected = new AtomicReference<>();
+		private volatile boolean terminated;
+
+		Walk(Path start, FileVisitor<? super Path> visitor) {
+			this.start = start;
+			this.visitor = visitor;
+		}
+
+		void run() throws IOException {
+			BasicFileAttributes attrs;
+			try {
+				attrs = readAttributes(start);
+			} catch (IOException e) {
+				visitor.visitFileFailed(start, e);
+				return;
+			}
+			if (!attrs.isDirectory()) {
+				visitor.visitFile(start, attrs);
+				return;
+			}
+			if (visitor.preVisitDirectory(start, attrs) != FileVisitResult.CONTINUE) {
+				return;
+			}
+			final Node root = new Node(null, start, attrs.fileKey());
+			submit(new Runnable() {
+				@Override
+				public void run() {
+					list(root);
+				}
+			});
+			try {
+				done.await();
+			} catch (InterruptedException e) {
+				terminated = true;
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException(String.format("Interrupted while walking [%s]", start));
+			}
+			Throwable t = unexpected.get();
+			if (t instanceof Error) {
+				throw (Error) t;
+			}
+			if (t instanceof RuntimeException) {
+				throw (RuntimeException) t;
+			}
+			if (!failures.isEmpty()) {
+				throw new DirWalkException(start, failures);
+			}
+		}
+
+		/**
+		 * Lists a directory (that has already been pre-visited), handing off
+		 * full batches of entries to other tasks
+		 */
+		private void list(final Node node) {
+			try {
+				List<Path> batch = new ArrayList<>();
+				try (DirectoryStream<Path> stream = Files.newDirectoryStream(node.dir)) {
+					for (Path entry : stream) {
+						if (terminated || node.skipSiblings) {
+							break;
+						}
+						batch.add(entry);
+						if (batch.size() >= BATCH_SIZE) {
+							final List<Path> fullBatch = batch;
+							batch = new ArrayList<>();
+							node.pending.incrementAndGet();
+							submit(new Runnable() {
+								@Override
+								public void run() {
+									try {
+										visitEntries(node, fullBatch);
+									} finally {
+										complete(node);
+									}
+								}
+							});
+						}
+					}
+				} catch (DirectoryIteratorException e) {
+					node.listFailure = e.getCause();
+				} catch (IOException e) {
+					node.listFailure = e;
+				}
+				visitEntries(node, batch);
+			} finally {
+				complete(node);
+			}
+		}
+
+		private void visitEntries(Node node, List<Path> entries) {
+			for (Path entry : entries) {
+				if (terminated || node.skipSiblings) {
+					return;
+				}
+				visitEntry(node, entry);
+			}
+		}
+
+		private void visitEntry(final Node parent, final Path entry) {
+			final BasicFileAttributes attrs;
+			try {
+				attrs = readAttributes(entry);
+			} catch (final IOException e) {
+				handle(parent, entry, new VisitorCall() {
+					@Override
+					public FileVisitResult call() throws IOException {
+						return visitor.visitFileFailed(entry, e);
+					}
+				});
+				return;
+			}
+			if (!attrs.isDirectory()) {
+				handle(parent, entry, new VisitorCall() {
+					@Override
+					public FileVisitResult call() throws IOException {
+						return visitor.visitFile(entry, attrs);
+					}
+				});
+				return;
+			}
+			if (followLinks && isLoop(parent, entry, attrs)) {
+				handle(parent, entry, new VisitorCall() {
+					@Override
+					public FileVisitResult call() throws IOException {
+						return visitor.visitFileFailed(entry, new FileSystemLoopException(entry.toString()));
+					}
+				});
+				return;
+			}
+			parent.pending.incrementAndGet();
+			submit(new Runnable() {
+				@Override
+				public void run() {
+					FileVisitResult result = handle(parent, entry, new VisitorCall() {
+						@Override
+						public FileVisitResult call() throws IOException {
+							return visitor.preVisitDirectory(entry, attrs);
+						}
+					});
+					if (result == FileVisitResult.CONTINUE) {
+						list(new Node(parent, entry, attrs.fileKey()));
+					} else {
+						complete(parent);
+					}
+				}
+			});
+		}
+
+		/**
+		 * Marks one unit of work on the node as finished. The last one
+		 * post-visits the directory and propagates completion to the parent.
+		 */
+		private void complete(Node node) {
+			while (node != null && node.pending.decrementAndGet() == 0) {
+				if (!terminated) {
+					final Node finished = node;
+					handle(finished.parent, finished.dir, new VisitorCall() {
+						@Override
+						public FileVisitResult call() throws IOException {
+							return visitor.postVisitDirectory(finished.dir, finished.listFailure);
+						}
+					});
+				}
+				if (node.parent == null) {
+					done.countDown();
+				}
+				node = node.parent;
+			}
+		}
+
+		/**
+		 * Invokes the visitor, recording failures and applying the result to
+		 * the walk. Returns null if the call failed.
+		 */
+		private FileVisitResult handle(Node parent, Path path, VisitorCall call) {
+			FileVisitResult result;
+			try {
+				result = call.call();
+			} catch (IOException e) {
+				failures.put(path, e);
+				return null;
+			} catch (RuntimeException | Error e) {
+				unexpected.compareAndSet(null, e);
+				terminated = true;
+				return null;
+			}
+			if (result == FileVisitResult.TERMINATE) {
+				terminated = true;
+			} else if (result == FileVisitResult.SKIP_SIBLINGS && parent != null) {
+				parent.skipSiblings = true;
+			}
+			return result;
+		}
+
+		private void submit(Runnable task) {
+			try {
+				executor.execute(task);
+			} catch (RejectedExecutionException e) {
+				// Stop the walk, but still run the task so the completion counts unwind
+				unexpected.compareAndSet(null, e);
+				terminated = true;
+				task.run();
+			}
+		}
+
+		private boolean isLoop(Node parent, Path dir, BasicFileAttributes attrs) {
+			Object key = attrs.fileKey();
+			for (Node ancestor = parent; ancestor != null; ancestor = ancestor.parent) {
+				if (key != null && ancestor.key != null) {
+					if (key.equals(ancestor.key)) {
+						return true;
+					}
+				} else {
+					try {
+						if (Files.isSameFile(dir, ancestor.dir)) {
+							return true;
+						}
+					} catch (IOException e) {
+						// Cannot be compared; assume it is not a loop
+					}
+				}
+			}
+			return false;
+		}
+	}
+
+	private interface VisitorCall {
+		FileVisitResult call() throws IOException;
+	}
+
+	/**
+	 * Reads attributes the same way the JDK walker does: broken links are
+	 * reported as links when following links.
+	 */
+	private BasicFileAttributes readAttributes(Path path) throws IOException {
+		if (!followLinks) {
+			return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+		}
+		try {
+			return Files.readAttributes(path, BasicFileAttributes.class);
+		} catch (IOException e) {
+			try {
+				return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+			} catch (IOException e2) {
+				e.addSuppressed(e2);
+				throw e;
+			}
+		}
+	}
+}
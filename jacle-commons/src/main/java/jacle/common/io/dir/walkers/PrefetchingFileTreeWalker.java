@@ -0,0 +1,300 @@
+package jacle.common.io.dir.walkers;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.FileVisitor;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * An alternative to {@link Files#walkFileTree(Path, FileVisitor)} that calls
+ * the visitor on the calling thread, in the same order as the JDK walker, but
+ * lists directories (and reads the attributes of their entries) ahead of time
+ * on the provided executor. While the visitor works through one directory,
+ * the sub-directories it will reach next are already being listed
+ * concurrently, so a walk of a wide tree is not limited to the rate of
+ * directory reads a single thread can make.
+ * <p>
+ * Unlike the JDK walker, a directory that cannot be opened is pre-visited, and
+ * the failure is passed to {@link FileVisitor#postVisitDirectory}. Symbolic
+ * links are not followed. Use a {@link ParallelFileTreeWalker} instead when
+ * the visitor does not need the order of a sequential walk.
+ */
+public class PrefetchingFileTreeWalker {
+
+	/**
+	 * The default number of directory listings held or in progress ahead of
+	 * the visitor
+	 */
+	public static final int DEFAULT_PREFETCH = 64;
+
+	private final ExecutorService executor;
+	private final int maxPrefetch;
+
+	/**
+	 * @param executor
+	 *            Lists directories. Not shut down by this class.
+	 * @param maxPrefetch
+	 *            The number of directory listings that may be held or in
+	 *            progress ahead of the visitor
+	 */
+	public PrefetchingFileTreeWalker(ExecutorService executor, int maxPrefetch) {
+		if (maxPrefetch < 1) {
+			throw new IllegalArgumentException(String.format("Prefetch must be positive [%d]", maxPrefetch));
+		}
+		this.executor = executor;
+		this.maxPrefetch = maxPrefetch;
+	}
+
+	/**
+	 * Prefetches up to {@link #DEFAULT_PREFETCH} listings
+	 *
+	 * @param executor
+	 *            Lists directories. Not shut down by this class.
+	 */
+	public PrefetchingFileTreeWalker(ExecutorService executor) {
+		this(executor, DEFAULT_PREFETCH);
+	}
+
+	/**
+	 * Walks the tree rooted at <code>start</code>, blocking until every entry
+	 * has been visited
+	 */
+	public void walk(Path start, FileVisitor<? super Path> visitor) throws IOException {
+		BasicFileAttributes attrs;
+		try {
+			attrs = Files.readAttributes(start, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+		} catch (IOException e) {
+			visitor.visitFileFailed(start, e);
+			return;
+		}
+		if (!attrs.isDirectory()) {
+			visitor.visitFile(start, attrs);
+			return;
+		}
+		new Walk(visitor).walkDirectory(start, attrs, null);
+	}
+
+	/**
+	 * The entries of a directory, with their attributes
+	 */
+	private static class Listing {
+		final List<Path> entries = new ArrayList<>();
+		final List<BasicFileAttributes> attrs = new ArrayList<>();
+		final List<IOException> failures = new ArrayList<>();
+		IOException failure;
+	}
+
+	private static Listing list(Path dir) {
+		Listing listing = new Listing();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+			for (Path entry : stream) {
+				listing.entries.add(entry);
+				try {
+					listing.attrs.add(Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS));
+					listing.failures.add(null);
+				} catch (IOException e) {
+					listing.attrs.add(null);
+					listing.failures.add(e);
+				}
+			}
+		} catch (DirectoryIteratorException e) {
+			listing.failure = e.getCause();
+		} catch (IOException e) {
+			listing.failure = e;
+		}
+		return listing;
+	}
+
+	/**
+	 * A directory being visited, with the listings of its sub-directories
+	 * that were started ahead of time
+	 */
+	private static class Frame {
+		final Listing listing;
+		final List<Future<Listing>> subListings;
+		/**
+		 * The index of the next entry that may be prefetched
+		 */
+		int nextPrefetch;
+
+		Frame(Listing listing) {
+			this.listing = listing;
+			this.subListings = new ArrayList<>(listing.entries.size());
+			for (int i = 0; i < listing.entries.size(); i++) {
+				subListings.add(null);
+			}
+		}
+	}
+
+	/**
+	 * The state of a single call to {@link PrefetchingFileTreeWalker#walk}.
+	 * Only used by the visitor thread.
+	 */
+	private class Walk {
+
+		private final FileVisitor<? super Path> visitor;
+		private final Semaphore prefetchPermits = new Semaphore(maxPrefetch);
+		/**
+		 * The directories being visited, deepest first
+		 */
+		private final Deque<Frame> frames = new ArrayDeque<>();
+		private boolean terminated;
+
+		Walk(FileVisitor<? super Path> visitor) {
+			this.visitor = visitor;
+		}
+
+		/**
+		 * Visits a directory, using its prefetched listing if there is one.
+		 * Returns the result to apply to the parent's listing.
+		 */
+		private FileVisitResult walkDirectory(Path dir, BasicFileAttributes attrs, Future<Listing> prefetched)
+				throws IOException {
+			FileVisitResult result;
+			try {
+				result = visitor.preVisitDirectory(dir, attrs);
+			} catch (IOException | RuntimeException e) {
+				release(prefetched);
+				throw e;
+			}
+			if (result != FileVisitResult.CONTINUE) {
+				release(prefetched);
+				if (result == FileVisitResult.TERMINATE) {
+					terminated = true;
+				} else {
+					prefetchAhead();
+				}
+				return result;
+			}
+			Listing listing = (prefetched == null) ? list(dir) : take(dir, prefetched);
+
+			Frame frame = new Frame(listing);
+			frames.push(frame);
+			try {
+				prefetchAhead();
+				for (int i = 0; i < listing.entries.size(); i++) {
+					Path entry = listing.entries.get(i);
+					BasicFileAttributes entryAttrs = listing.attrs.get(i);
+					// Too late to prefetch this entry once it is visited
+					frame.nextPrefetch = Math.max(frame.nextPrefetch, i + 1);
+					Future<Listing> subListing = frame.subListings.set(i, null);
+					if (entryAttrs == null) {
+						result = visitor.visitFileFailed(entry, listing.failures.get(i));
+					} else if (entryAttrs.isDirectory()) {
+						result = walkDirectory(entry, entryAttrs, subListing);
+					} else {
+						result = visitor.visitFile(entry, entryAttrs);
+					}
+					if (result == FileVisitResult.TERMINATE) {
+						terminated = true;
+					}
+					if (terminated) {
+						return FileVisitResult.TERMINATE;
+					}
+					if (result == FileVisitResult.SKIP_SIBLINGS) {
+						break;
+					}
+				}
+			} finally {
+				frames.pop();
+				for (Future<Listing> subListing : frame.subListings) {
+					release(subListing);
+				}
+			}
+			result = visitor.postVisitDirectory(dir, listing.failure);
+			if (result == FileVisitResult.TERMINATE) {
+				terminated = true;
+			}
+			return result;
+		}
+
+		/**
+		 * Starts listing the unvisited sub-directories nearest to the visitor
+		 * (those of the deepest directories first), while the prefetch limit
+		 * allows. Called whenever a listing is taken, so the prefetched
+		 * listings form a window that slides along with the visitor.
+		 */
+		private void prefetchAhead() {
+			for (Frame frame : frames) {
+				List<Path> entries = frame.listing.entries;
+				for (; frame.nextPrefetch < entries.size(); frame.nextPrefetch++) {
+					BasicFileAttributes entryAttrs = frame.listing.attrs.get(frame.nextPrefetch);
+					if (entryAttrs == null || !entryAttrs.isDirectory()) {
+						continue;
+					}
+					Future<Listing> subListing = prefetch(entries.get(frame.nextPrefetch));
+					if (subListing == null) {
+						return;
+					}
+					frame.subListings.set(frame.nextPrefetch, subListing);
+				}
+			}
+		}
+
+		/**
+		 * Starts listing the directory, if the prefetch limit allows. Returns
+		 * null otherwise.
+		 */
+		private Future<Listing> prefetch(final Path dir) {
+			if (!prefetchPermits.tryAcquire()) {
+				return null;
+			}
+			try {
+				return executor.submit(new Callable<Listing>() {
+					@Override
+					public Listing call() {
+						return list(dir);
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				prefetchPermits.release();
+				return null;
+			}
+		}
+
+		private Listing take(Path dir, Future<Listing> prefetched) throws IOException {
+			try {
+				return prefetched.get();
+			} catch (InterruptedException e) {
+				prefetched.cancel(true);
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException(String.format("Interrupted while listing [%s]", dir));
+			} catch (ExecutionException e) {
+				// Listing catches I/O failures, so this is a bug or an Error
+				Throwable cause = e.getCause();
+				if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				throw new IllegalStateException(String.format("Failed to list [%s]", dir), cause);
+			} finally {
+				prefetchPermits.release();
+			}
+		}
+
+		/**
+		 * Drops a prefetched listing that will not be used
+		 */
+		private void release(Future<Listing> prefetched) {
+			if (prefetched != null) {
+				prefetched.cancel(false);
+				prefetchPermits.release();
+			}
+		}
+	}
+}
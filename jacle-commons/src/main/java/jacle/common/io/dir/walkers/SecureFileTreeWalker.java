@@ -0,0 +1,195 @@
+package jacle.common.io.dir.walkers;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.FileVisitor;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SecureDirectoryStream;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * A single-threaded alternative to
+ * {@link Files#walkFileTree(Path, FileVisitor)} that works relative to open
+ * directory handles where the platform offers {@link SecureDirectoryStream}
+ * (e.g. Linux). Each directory is opened relative to its parent's handle,
+ * without following links, and entry attributes are read relative to it, so
+ * long paths are not resolved again for every entry, and a directory swapped
+ * for a symbolic link during the walk is never walked into.
+ * <p>
+ * Visitors that operate on the entries (e.g.
+ * {@link jacle.common.io.dir.visitors.DeleteDirVisitor}) can do the same by
+ * asking {@link #getParentStream(Path)} for the open handle of an entry's
+ * directory. Elsewhere, the walk falls back to
+ * {@link Files#walkFileTree(Path, FileVisitor)}, and
+ * {@link #getParentStream(Path)} returns null.
+ * <p>
+ * Symbolic links are never followed. The visitor sees the same calls, in the
+ * same order, as with the JDK walker. An instance runs one walk at a time.
+ */
+public class SecureFileTreeWalker {
+
+	/**
+	 * The directory being listed by the walk running on the current thread
+	 */
+	private static final ThreadLocal<Frame> CURRENT = new ThreadLocal<>();
+
+	/**
+	 * An open directory of the running walk
+	 */
+	private static class Frame {
+		final Path dir;
+		final SecureDirectoryStream<Path> stream;
+
+		Frame(Path dir, SecureDirectoryStream<Path> stream) {
+			this.dir = dir;
+			this.stream = stream;
+		}
+	}
+
+	private boolean terminated;
+
+	/**
+	 * Returns whether walks of the directory can work relative to open
+	 * directory handles (rather than fall back to the JDK walker)
+	 */
+	public static boolean isSupported(Path dir) throws IOException {
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+			return (stream instanceof SecureDirectoryStream);
+		}
+	}
+
+	/**
+	 * Returns the open handle of the directory containing
+	 * <code>entry</code>, if called by a visitor of a walk that works relative
+	 * to open directory handles, and the entry is in the directory being
+	 * walked. Otherwise returns null, and the entry should be accessed by its
+	 * path.
+	 */
+	public static SecureDirectoryStream<Path> getParentStream(Path entry) {
+		Frame frame = CURRENT.get();
+		if (frame == null || !frame.dir.equals(entry.getParent())) {
+			return null;
+		}
+		return frame.stream;
+	}
+
+	/**
+	 * Walks the tree rooted at <code>start</code>
+	 */
+	public void walk(Path start, FileVisitor<? super Path> visitor) throws IOException {
+		terminated = false;
+		BasicFileAttributes attrs;
+		try {
+			attrs = Files.readAttributes(start, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+		} catch (IOException e) {
+			visitor.visitFileFailed(start, e);
+			return;
+		}
+		if (!attrs.isDirectory()) {
+			visitor.visitFile(start, attrs);
+			return;
+		}
+		DirectoryStream<Path> stream;
+		try {
+			stream = Files.newDirectoryStream(start);
+		} catch (IOException e) {
+			visitor.visitFileFailed(start, e);
+			return;
+		}
+		if (!(stream instanceof SecureDirectoryStream)) {
+			stream.close();
+			Files.walkFileTree(start, visitor);
+			return;
+		}
+		Frame saved = CURRENT.get();
+		try {
+			walkDirectory(null, start, (SecureDirectoryStream<Path>) stream, attrs, visitor);
+		} finally {
+			CURRENT.set(saved);
+		}
+	}
+
+	/**
+	 * Visits an opened directory, closing it before it is post-visited.
+	 * Returns the result to apply to the parent's listing.
+	 */
+	private FileVisitResult walkDirectory(Frame parent, Path dir, SecureDirectoryStream<Path> stream,
+			BasicFileAttributes attrs, FileVisitor<? super Path> visitor) throws IOException {
+		IOException failure = null;
+		try {
+			CURRENT.set(parent);
+			FileVisitResult result = visitor.preVisitDirectory(dir, attrs);
+			if (result != FileVisitResult.CONTINUE) {
+				if (result == FileVisitResult.TERMINATE) {
+					terminated = true;
+				}
+				return result;
+			}
+			Frame frame = new Frame(dir, stream);
+			try {
+				for (Path entry : stream) {
+					result = visitEntry(frame, entry, visitor);
+					if (terminated) {
+						return FileVisitResult.TERMINATE;
+					}
+					if (result == FileVisitResult.SKIP_SIBLINGS) {
+						break;
+					}
+				}
+			} catch (DirectoryIteratorException e) {
+				failure = e.getCause();
+			}
+		} finally {
+			try {
+				stream.close();
+			} catch (IOException e) {
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+		CURRENT.set(parent);
+		FileVisitResult result = visitor.postVisitDirectory(dir, failure);
+		if (result == FileVisitResult.TERMINATE) {
+			terminated = true;
+		}
+		return result;
+	}
+
+	private FileVisitResult visitEntry(Frame frame, Path entry, FileVisitor<? super Path> visitor)
+			throws IOException {
+		Path name = entry.getFileName();
+		BasicFileAttributes attrs;
+		SecureDirectoryStream<Path> child = null;
+		IOException failure = null;
+		try {
+			attrs = frame.stream.getFileAttributeView(name, BasicFileAttributeView.class,
+					LinkOption.NOFOLLOW_LINKS).readAttributes();
+			if (attrs.isDirectory()) {
+				child = frame.stream.newDirectoryStream(name, LinkOption.NOFOLLOW_LINKS);
+			}
+		} catch (IOException e) {
+			attrs = null;
+			failure = e;
+		}
+		FileVisitResult result;
+		if (child != null) {
+			return walkDirectory(frame, entry, child, attrs, visitor);
+		}
+		CURRENT.set(frame);
+		if (failure != null) {
+			result = visitor.visitFileFailed(entry, failure);
+		} else {
+			result = visitor.visitFile(entry, attrs);
+		}
+		if (result == FileVisitResult.TERMINATE) {
+			terminated = true;
+		}
+		return result;
+	}
+}
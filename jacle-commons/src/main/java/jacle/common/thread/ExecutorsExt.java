@@ -2,6 +2,7 @@ package jacle.common.thread;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ScheduledExecutorService;
 
 /**
@@ -39,4 +40,22 @@ public class ExecutorsExt {
     public ExecutorService newCachedThreadPool(String threadNamePrefix) {
         return Executors.newCachedThreadPool(new NamedThreadFactory(threadNamePrefix));
     }
+
+    /**
+     * Identical to {@link #newCachedThreadPool(String)}, except that the
+     * threads are daemon threads, which do not keep the JVM from exiting.
+     */
+    public ExecutorService newCachedDaemonThreadPool(String threadNamePrefix) {
+        return Executors.newCachedThreadPool(new NamedThreadFactory(threadNamePrefix, true));
+    }
+
+    /**
+     * Similar to {@link Executors#newWorkStealingPool(int)} with the addition
+     * of prepending the provided string to the thread names. The pool runs in
+     * FIFO ("async") mode, which suits tasks that are submitted but never
+     * joined.
+     */
+    public ExecutorService newWorkStealingPool(int parallelism, String threadNamePrefix) {
+        return new ForkJoinPool(parallelism, new NamedForkJoinWorkerThreadFactory(threadNamePrefix), null, true);
+    }
 }
@@ -0,0 +1,28 @@
+package jacle.common.thread;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@link ForkJoinPool} equivalent of {@link NamedThreadFactory}. Worker
+ * threads are named using the same pattern as {@link NamedThreadFactory}.
+ */
+public class NamedForkJoinWorkerThreadFactory implements ForkJoinWorkerThreadFactory {
+
+	private static final AtomicInteger POOL_NUMBER = new AtomicInteger(1);
+	private final AtomicInteger threadNumber = new AtomicInteger(1);
+	private final String namePrefix;
+
+	public NamedForkJoinWorkerThreadFactory(String namePrefix) {
+		this.namePrefix = namePrefix + "(forkjoin" + POOL_NUMBER.getAndIncrement() + "-thread-";
+	}
+
+	@Override
+	public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+		ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+		t.setName(this.namePrefix + this.threadNumber.getAndIncrement() + ")");
+		return t;
+	}
+}
@@ -17,21 +17,32 @@ public class NamedThreadFactory implements ThreadFactory {
 	private final ThreadGroup group;
 	private final AtomicInteger threadNumber = new AtomicInteger(1);
 	private final String namePrefix;
+	private final boolean daemon;
 
 	public NamedThreadFactory() {
 		this("ThreadPool(" + POOL_NUMBER.getAndIncrement() + "-thread-");
 	}
 
 	public NamedThreadFactory(String namePrefix) {
+		this(namePrefix, false);
+	}
+
+	/**
+	 * @param daemon
+	 *            Whether the threads are daemon threads, which do not keep the
+	 *            JVM from exiting
+	 */
+	public NamedThreadFactory(String namePrefix, boolean daemon) {
 		SecurityManager s = System.getSecurityManager();
 		this.group = (s != null) ? s.getThreadGroup() : Thread.currentThread().getThreadGroup();
 		this.namePrefix = namePrefix + "(pool" + POOL_NUMBER.getAndIncrement() + "-thread-";
+		this.daemon = daemon;
 	}
 
 	public Thread newThread(Runnable r) {
 		Thread t = new Thread(this.group, r, this.namePrefix+this.threadNumber.getAndIncrement() + ")", 0L);
-		if (t.isDaemon()) {
-			t.setDaemon(false);
+		if (t.isDaemon() != daemon) {
+			t.setDaemon(daemon);
 		}
 		if (t.getPriority() != Thread.NORM_PRIORITY) {
 			t.setPriority(Thread.NORM_PRIORITY);